@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.capricoin.capricoin_android_wallet.util.FullTextSearch;
+
+/**
+ * In-memory SQLite database with the schema of the address book provider, filled with synthetic entries. The provider itself needs
+ * an Android runtime, so its statements are mirrored here and run through the desktop SQLite driver.
+ *
+ * @author Andreas Schildbach
+ */
+public final class AddressBookDatabase
+{
+	private static final String BASE58 = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+	private static final String[] WORDS = { "shop", "coffee", "rent", "alice", "bob", "exchange", "mining", "pool", "savings", "donation",
+			"market", "friend", "work", "invoice", "refund" };
+
+	public final Connection connection;
+	public final List<String> addresses;
+	public final List<String> labels;
+
+	public AddressBookDatabase(final int numEntries, final boolean indexed, final long seed) throws SQLException
+	{
+		this(numEntries, indexed, false, seed);
+	}
+
+	public AddressBookDatabase(final int numEntries, final boolean indexed, final boolean fullText, final long seed) throws SQLException
+	{
+		connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+		final Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE address_book (_id INTEGER PRIMARY KEY AUTOINCREMENT, address TEXT NOT NULL, label TEXT NULL);");
+		if (indexed)
+			statement.execute("CREATE UNIQUE INDEX address_book_address ON address_book (address);");
+		if (fullText)
+			statement.execute("CREATE VIRTUAL TABLE address_book_fts USING fts3(address, label);");
+		statement.close();
+
+		final Random random = new Random(seed);
+		addresses = new ArrayList<String>(numEntries);
+		labels = new ArrayList<String>(numEntries);
+
+		connection.setAutoCommit(false);
+		final PreparedStatement insert = connection.prepareStatement("INSERT INTO address_book (address, label) VALUES (?, ?);");
+		final PreparedStatement insertFullText = fullText ? connection
+				.prepareStatement("INSERT INTO address_book_fts (docid, address, label) VALUES (last_insert_rowid(), ?, ?);") : null;
+		for (int i = 0; i < numEntries; i++)
+		{
+			final String address = randomAddress(random);
+			final String label = WORDS[random.nextInt(WORDS.length)] + ' ' + WORDS[random.nextInt(WORDS.length)] + ' ' + i;
+
+			insert.setString(1, address);
+			insert.setString(2, label);
+			insert.executeUpdate();
+
+			if (fullText)
+			{
+				insertFullText.setString(1, FullTextSearch.normalize(address));
+				insertFullText.setString(2, FullTextSearch.normalize(label));
+				insertFullText.executeUpdate();
+			}
+
+			addresses.add(address);
+			labels.add(label);
+		}
+		insert.close();
+		if (insertFullText != null)
+			insertFullText.close();
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+
+	public void close() throws SQLException
+	{
+		connection.close();
+	}
+
+	private static String randomAddress(final Random random)
+	{
+		final StringBuilder address = new StringBuilder(34);
+		address.append('P');
+		for (int i = 1; i < 34; i++)
+			address.append(BASE58.charAt(random.nextInt(BASE58.length())));
+		return address.toString();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Label lookup by address, as done by AddressBookProvider.resolveLabel() for every transaction row, with and without the unique index
+ * on address.
+ *
+ * @author Andreas Schildbach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddressBookLookupBenchmark
+{
+	@Param({ "10000" })
+	public int numEntries;
+
+	@Param({ "false", "true" })
+	public boolean indexed;
+
+	private AddressBookDatabase database;
+	private PreparedStatement lookup;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws SQLException
+	{
+		database = new AddressBookDatabase(numEntries, indexed, 42);
+		lookup = database.connection.prepareStatement("SELECT label FROM address_book WHERE address = ?;");
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException
+	{
+		lookup.close();
+		database.close();
+	}
+
+	@Benchmark
+	public String lookupLabel() throws SQLException
+	{
+		// stride through the entries, so that consecutive lookups do not hit neighbouring rows
+		next = (next + 7919) % numEntries;
+		lookup.setString(1, database.addresses.get(next));
+
+		final ResultSet result = lookup.executeQuery();
+		try
+		{
+			return result.next() ? result.getString(1) : null;
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capricoin.capricoin_android_wallet.util.FullTextSearch;
+
+/**
+ * Address book search as typed into the send coins address field: the previous substring search with LIKE against the prefix search
+ * through the full-text table, including the ranking the provider adds.
+ *
+ * @author Andreas Schildbach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddressBookSearchBenchmark
+{
+	@Param({ "1000", "10000", "50000" })
+	public int numEntries;
+
+	@Param({ "cof", "alice sav" })
+	public String query;
+
+	private AddressBookDatabase database;
+	private PreparedStatement like;
+	private PreparedStatement fullText;
+	private String likeArg;
+	private String matchArg;
+	private String rankArg;
+
+	@Setup
+	public void setup() throws SQLException
+	{
+		database = new AddressBookDatabase(numEntries, true, true, 42);
+
+		like = database.connection.prepareStatement("SELECT _id, address, label FROM address_book WHERE address LIKE ? OR label LIKE ?;");
+		likeArg = '%' + query.trim() + '%';
+
+		fullText = database.connection.prepareStatement("SELECT _id, address, label FROM address_book WHERE _id IN "
+				+ "(SELECT docid FROM address_book_fts WHERE address_book_fts MATCH ?) "
+				+ "ORDER BY CASE WHEN label LIKE ? THEN 0 WHEN address LIKE ? THEN 1 ELSE 2 END;");
+		final String[] tokens = FullTextSearch.tokenize(query);
+		matchArg = FullTextSearch.matchExpression(tokens, "label", "address");
+		rankArg = tokens[0] + '%';
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException
+	{
+		like.close();
+		fullText.close();
+		database.close();
+	}
+
+	@Benchmark
+	public int likeSearch() throws SQLException
+	{
+		like.setString(1, likeArg);
+		like.setString(2, likeArg);
+
+		return count(like.executeQuery());
+	}
+
+	@Benchmark
+	public int fullTextSearch() throws SQLException
+	{
+		fullText.setString(1, matchArg);
+		fullText.setString(2, rankArg);
+		fullText.setString(3, rankArg);
+
+		return count(fullText.executeQuery());
+	}
+
+	private static int count(final ResultSet result) throws SQLException
+	{
+		int count = 0;
+		try
+		{
+			while (result.next())
+				count++;
+		}
+		finally
+		{
+			result.close();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capricoin.capricoin_android_wallet.util.Crypto;
+
+/**
+ * @author Andreas Schildbach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CryptoBenchmark
+{
+	private static final char[] PASSWORD = "benchmark password".toCharArray();
+
+	/** a small key backup and a large wallet backup */
+	@Param({ "4096", "1048576" })
+	public int size;
+
+	private byte[] plainBytes;
+	private String encrypted;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		plainBytes = new byte[size];
+		new Random(size).nextBytes(plainBytes);
+		encrypted = Crypto.encrypt(plainBytes, PASSWORD);
+	}
+
+	@Benchmark
+	public String encrypt() throws IOException
+	{
+		return Crypto.encrypt(plainBytes, PASSWORD);
+	}
+
+	@Benchmark
+	public byte[] decrypt() throws IOException
+	{
+		return Crypto.decryptBytes(encrypted, PASSWORD);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capricoin.capricoin_android_wallet.util.Iso8601Format;
+
+/**
+ * Key backups carry one timestamp per key, so these run once per key on restore.
+ *
+ * @author Andreas Schildbach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Iso8601FormatBenchmark
+{
+	private final Date date = new Date(1400000000000l);
+	private final String dateTimeT = Iso8601Format.formatDateTimeT(date);
+	private final String dateTime = Iso8601Format.formatDateTime(date);
+
+	@Benchmark
+	public String formatDateTimeT()
+	{
+		return Iso8601Format.formatDateTimeT(date);
+	}
+
+	@Benchmark
+	public Date parseDateTimeT() throws ParseException
+	{
+		return Iso8601Format.parseDateTimeT(dateTimeT);
+	}
+
+	@Benchmark
+	public Date parseDateTime() throws ParseException
+	{
+		return Iso8601Format.parseDateTime(dateTime);
+	}
+}
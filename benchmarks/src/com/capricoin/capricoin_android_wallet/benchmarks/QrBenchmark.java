@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capricoin.capricoin_android_wallet.util.Qr;
+
+/**
+ * @author Andreas Schildbach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QrBenchmark
+{
+	/** random bytes do not compress, like a signed transaction; repetitive ones do, like a payment request with certificates */
+	@Param({ "random", "repetitive" })
+	public String content;
+
+	private byte[] bytes;
+	private String encoded;
+
+	@Setup
+	public void setup()
+	{
+		bytes = new byte[1000];
+
+		if ("random".equals(content))
+		{
+			new Random(0).nextBytes(bytes);
+		}
+		else
+		{
+			final byte[] pattern = "capricoin:PNY8FPHRY8NM8VG77TXZ4R3WY7QJ25ATG6?amount=1.5".getBytes();
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = pattern[i % pattern.length];
+		}
+
+		encoded = Qr.encodeCompressBinary(bytes);
+	}
+
+	@Benchmark
+	public String encodeCompressBinary()
+	{
+		return Qr.encodeCompressBinary(bytes);
+	}
+
+	@Benchmark
+	public byte[] decodeDecompressBinary() throws IOException
+	{
+		return Qr.decodeDecompressBinary(encoded);
+	}
+}
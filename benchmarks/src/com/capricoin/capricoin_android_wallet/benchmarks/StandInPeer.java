@@ -0,0 +1,454 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.io.CountingOutputStream;
+
+import com.capricoinj.core.BitcoinSerializer;
+import com.capricoinj.core.Block;
+import com.capricoinj.core.BloomFilter;
+import com.capricoinj.core.FilteredBlock;
+import com.capricoinj.core.GetBlocksMessage;
+import com.capricoinj.core.GetDataMessage;
+import com.capricoinj.core.GetHeadersMessage;
+import com.capricoinj.core.HeadersMessage;
+import com.capricoinj.core.InventoryItem;
+import com.capricoinj.core.InventoryMessage;
+import com.capricoinj.core.Message;
+import com.capricoinj.core.NetworkParameters;
+import com.capricoinj.core.NotFoundMessage;
+import com.capricoinj.core.Ping;
+import com.capricoinj.core.Pong;
+import com.capricoinj.core.ProtocolException;
+import com.capricoinj.core.Sha256Hash;
+import com.capricoinj.core.Transaction;
+import com.capricoinj.core.VersionAck;
+import com.capricoinj.core.VersionMessage;
+import com.capricoinj.utils.BlockFileLoader;
+
+import com.capricoin.capricoin_android_wallet.Constants;
+
+/**
+ * A stand-in for a full node that serves a recorded chain segment, so that syncing can be measured without a network. It answers
+ * version, ping, getheaders, getblocks, filterload and getdata (full and filtered blocks), which is what an SPV wallet uses. Point the
+ * wallet at it with the trusted peer setting and "trusted peer only".
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.capricoin.capricoin_android_wallet.benchmarks.StandInPeer \
+ *     --start-height 123456 --blocks blk00042.dat [--blocks ...] [--fork fork.dat --reorg-after 60] [--port 9903]
+ * </pre>
+ *
+ * Block files are in the format of the reference client (magic, length, block). The segment has to start at or before the checkpoint the
+ * wallet syncs from, because locators pointing before the segment cannot be served. With a fork segment, the best chain switches to the
+ * tip of the fork after the given number of seconds and the new tip is announced to all connected wallets, to exercise reorgs.
+ *
+ * @author Andreas Schildbach
+ */
+public final class StandInPeer
+{
+	private static final int MAX_HEADERS = 2000;
+	private static final int MAX_BLOCKS_INV = 500;
+	private static final int HEADER_LENGTH = 4 + 12 + 4 + 4;
+
+	private final NetworkParameters params;
+	private final Map<Sha256Hash, Block> blocks;
+	private final int startHeight;
+	private final BitcoinSerializer serializer;
+	private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+	private volatile Chain chain;
+
+	/** the best chain, indexed both ways */
+	private static final class Chain
+	{
+		final List<Block> blocks;
+		final Map<Sha256Hash, Integer> indexes;
+
+		Chain(final List<Block> blocks)
+		{
+			this.blocks = blocks;
+			this.indexes = new HashMap<Sha256Hash, Integer>(blocks.size());
+			for (int i = 0; i < blocks.size(); i++)
+				indexes.put(blocks.get(i).getHash(), i);
+		}
+	}
+
+	public StandInPeer(@Nonnull final NetworkParameters params, @Nonnull final Map<Sha256Hash, Block> blocks, @Nonnull final Sha256Hash tip,
+			final int startHeight)
+	{
+		this.params = params;
+		this.blocks = blocks;
+		this.startHeight = startHeight;
+		this.serializer = new BitcoinSerializer(params);
+
+		switchTip(tip);
+	}
+
+	/** makes the chain ending in the given block the best chain */
+	public void switchTip(@Nonnull final Sha256Hash tip)
+	{
+		final List<Block> chainBlocks = new ArrayList<Block>();
+		for (Block block = blocks.get(tip); block != null; block = blocks.get(block.getPrevBlockHash()))
+			chainBlocks.add(block);
+		Collections.reverse(chainBlocks);
+
+		final boolean isSwitch = chain != null;
+		chain = new Chain(chainBlocks);
+
+		log("best chain now " + chainBlocks.size() + " blocks, tip " + tip + " at height " + (startHeight + chainBlocks.size() - 1));
+
+		if (isSwitch)
+		{
+			final InventoryMessage inv = new InventoryMessage(params);
+			inv.addBlock(chainBlocks.get(chainBlocks.size() - 1));
+			for (final Connection connection : connections)
+				connection.sendQuietly(inv);
+		}
+	}
+
+	public void listen(final int port) throws IOException
+	{
+		final ServerSocket serverSocket = new ServerSocket(port);
+		log("listening on port " + port);
+
+		while (true)
+		{
+			final Socket socket = serverSocket.accept();
+			socket.setTcpNoDelay(true);
+
+			final Connection connection = new Connection(socket);
+			final Thread thread = new Thread(connection, "stand-in peer " + socket.getRemoteSocketAddress());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private final class Connection implements Runnable
+	{
+		private final Socket socket;
+		private final CountingOutputStream os;
+		private final long connectedAt = System.currentTimeMillis();
+
+		@Nullable
+		private BloomFilter filter;
+		private int numFilterLoads = 0;
+		private int numBlocksServed = 0;
+		private int numTransactionsMatched = 0;
+
+		public Connection(final Socket socket) throws IOException
+		{
+			this.socket = socket;
+			this.os = new CountingOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		@Override
+		public void run()
+		{
+			log(socket.getRemoteSocketAddress() + " connected");
+			connections.add(this);
+
+			try
+			{
+				final DataInputStream is = new DataInputStream(socket.getInputStream());
+
+				while (true)
+				{
+					final Message message = read(is);
+					if (message != null)
+						handle(message);
+				}
+			}
+			catch (final EOFException x)
+			{
+				// peer hung up
+			}
+			catch (final IOException x)
+			{
+				log(socket.getRemoteSocketAddress() + " " + x);
+			}
+			finally
+			{
+				connections.remove(this);
+
+				try
+				{
+					socket.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+
+				final long duration = Math.max(System.currentTimeMillis() - connectedAt, 1);
+				log(String.format("%s disconnected after %d ms: %d blocks (%.1f/s), %d kB (%.1f kB/s), %d filter loads, %d transactions matched",
+						socket.getRemoteSocketAddress(), duration, numBlocksServed, numBlocksServed * 1000.0 / duration, os.getCount() / 1024,
+						os.getCount() / 1.024 / duration, numFilterLoads, numTransactionsMatched));
+			}
+		}
+
+		@Nullable
+		private Message read(final DataInputStream is) throws IOException
+		{
+			final byte[] header = new byte[HEADER_LENGTH];
+			is.readFully(header);
+
+			final int payloadLength = (header[16] & 0xff) | (header[17] & 0xff) << 8 | (header[18] & 0xff) << 16 | (header[19] & 0xff) << 24;
+			if (payloadLength < 0 || payloadLength > Message.MAX_SIZE)
+				throw new IOException("message too large: " + payloadLength);
+
+			final byte[] bytes = new byte[HEADER_LENGTH + payloadLength];
+			System.arraycopy(header, 0, bytes, 0, HEADER_LENGTH);
+			is.readFully(bytes, HEADER_LENGTH, payloadLength);
+
+			try
+			{
+				return serializer.deserialize(ByteBuffer.wrap(bytes));
+			}
+			catch (final ProtocolException x)
+			{
+				log(socket.getRemoteSocketAddress() + " sent unparseable message: " + x.getMessage());
+				return null;
+			}
+		}
+
+		private void handle(final Message message) throws IOException
+		{
+			final Chain chain = StandInPeer.this.chain;
+
+			if (message instanceof VersionMessage)
+			{
+				final VersionMessage version = new VersionMessage(params, startHeight + chain.blocks.size() - 1);
+				version.localServices = VersionMessage.NODE_NETWORK;
+				version.subVer = "/StandInPeer/";
+				send(version);
+				send(new VersionAck());
+			}
+			else if (message instanceof Ping)
+			{
+				final Ping ping = (Ping) message;
+				if (ping.hasNonce())
+					send(new Pong(ping.getNonce()));
+			}
+			else if (message instanceof GetHeadersMessage)
+			{
+				// must be checked before GetBlocksMessage, which it extends
+				final GetHeadersMessage getHeaders = (GetHeadersMessage) message;
+				final List<Block> headers = new ArrayList<Block>();
+				for (int i = locate(chain, getHeaders.getLocator()); i < chain.blocks.size() && headers.size() < MAX_HEADERS; i++)
+				{
+					final Block block = chain.blocks.get(i);
+					headers.add(block.cloneAsHeader());
+					if (block.getHash().equals(getHeaders.getStopHash()))
+						break;
+				}
+				send(new HeadersMessage(params, headers));
+			}
+			else if (message instanceof GetBlocksMessage)
+			{
+				final GetBlocksMessage getBlocks = (GetBlocksMessage) message;
+				final InventoryMessage inv = new InventoryMessage(params);
+				int numItems = 0;
+				for (int i = locate(chain, getBlocks.getLocator()); i < chain.blocks.size() && numItems < MAX_BLOCKS_INV; i++)
+				{
+					final Block block = chain.blocks.get(i);
+					inv.addBlock(block);
+					numItems++;
+					if (block.getHash().equals(getBlocks.getStopHash()))
+						break;
+				}
+				if (numItems > 0)
+					send(inv);
+			}
+			else if (message instanceof BloomFilter)
+			{
+				filter = (BloomFilter) message;
+				numFilterLoads++;
+			}
+			else if (message instanceof GetDataMessage)
+			{
+				final List<InventoryItem> notFound = new ArrayList<InventoryItem>();
+
+				for (final InventoryItem item : ((GetDataMessage) message).getItems())
+				{
+					final Block block = blocks.get(item.hash);
+
+					if (block != null && item.type == InventoryItem.Type.FilteredBlock && filter != null)
+						sendFilteredBlock(block);
+					else if (block != null && item.type == InventoryItem.Type.Block)
+						send(block);
+					else
+						notFound.add(item);
+
+					if (block != null)
+						numBlocksServed++;
+				}
+
+				if (!notFound.isEmpty())
+					send(new NotFoundMessage(params, notFound));
+			}
+		}
+
+		private void sendFilteredBlock(final Block block) throws IOException
+		{
+			final FilteredBlock filteredBlock = filter.applyAndUpdate(block);
+			send(filteredBlock);
+
+			// matched transactions follow their merkleblock, in block order
+			final List<Sha256Hash> matched = filteredBlock.getTransactionHashes();
+			for (final Transaction tx : block.getTransactions())
+			{
+				if (matched.contains(tx.getHash()))
+				{
+					send(tx);
+					numTransactionsMatched++;
+				}
+			}
+		}
+
+		private synchronized void send(final Message message) throws IOException
+		{
+			serializer.serialize(message, os);
+			os.flush();
+		}
+
+		public void sendQuietly(final Message message)
+		{
+			try
+			{
+				send(message);
+			}
+			catch (final IOException x)
+			{
+				log(socket.getRemoteSocketAddress() + " " + x);
+			}
+		}
+	}
+
+	/** @return index of the first block after the first locator hash that is part of the best chain */
+	private static int locate(final Chain chain, final List<Sha256Hash> locator)
+	{
+		for (final Sha256Hash hash : locator)
+		{
+			final Integer index = chain.indexes.get(hash);
+			if (index != null)
+				return index + 1;
+		}
+
+		// locators only containing blocks before the segment can only be continued from its start
+		return 0;
+	}
+
+	private static void log(final String message)
+	{
+		System.out.println(String.format("%tT %s", System.currentTimeMillis(), message));
+	}
+
+	public static void main(final String[] args) throws Exception
+	{
+		final List<File> blockFiles = new ArrayList<File>();
+		final List<File> forkFiles = new ArrayList<File>();
+		int startHeight = 0;
+		int port = Constants.NETWORK_PARAMETERS.getPort();
+		int reorgAfterSecs = 60;
+
+		for (int i = 0; i < args.length; i += 2)
+		{
+			final String option = args[i];
+			final String value = args[i + 1];
+
+			if ("--blocks".equals(option))
+				blockFiles.add(new File(value));
+			else if ("--fork".equals(option))
+				forkFiles.add(new File(value));
+			else if ("--start-height".equals(option))
+				startHeight = Integer.parseInt(value);
+			else if ("--port".equals(option))
+				port = Integer.parseInt(value);
+			else if ("--reorg-after".equals(option))
+				reorgAfterSecs = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("unknown option: " + option);
+		}
+
+		if (blockFiles.isEmpty())
+			throw new IllegalArgumentException("need at least one --blocks file");
+
+		final NetworkParameters params = Constants.NETWORK_PARAMETERS;
+		final Map<Sha256Hash, Block> blocks = new HashMap<Sha256Hash, Block>();
+		final Sha256Hash tip = load(params, blockFiles, blocks);
+		final Sha256Hash forkTip = !forkFiles.isEmpty() ? load(params, forkFiles, blocks) : null;
+
+		final StandInPeer peer = new StandInPeer(params, blocks, tip, startHeight);
+
+		if (forkTip != null)
+		{
+			final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+			scheduler.schedule(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					peer.switchTip(forkTip);
+				}
+			}, reorgAfterSecs, TimeUnit.SECONDS);
+		}
+
+		peer.listen(port);
+	}
+
+	/** @return hash of the last block loaded */
+	private static Sha256Hash load(final NetworkParameters params, final List<File> files, final Map<Sha256Hash, Block> blocks)
+	{
+		Sha256Hash last = null;
+
+		for (final Block block : new BlockFileLoader(params, files))
+		{
+			blocks.put(block.getHash(), block);
+			last = block.getHash();
+		}
+
+		if (last == null)
+			throw new IllegalArgumentException("no blocks in " + files);
+
+		log("loaded " + blocks.size() + " blocks from " + files);
+
+		return last;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.capricoinj.core.Address;
+import com.capricoinj.core.Coin;
+import com.capricoinj.core.ECKey;
+import com.capricoinj.core.NetworkParameters;
+import com.capricoinj.core.Sha256Hash;
+import com.capricoinj.core.Transaction;
+import com.capricoinj.core.TransactionConfidence.ConfidenceType;
+import com.capricoinj.core.TransactionInput;
+import com.capricoinj.core.TransactionOutPoint;
+import com.capricoinj.core.TransactionOutput;
+import com.capricoinj.core.Wallet;
+import com.capricoinj.wallet.KeyChainGroup;
+import com.capricoinj.wallet.WalletTransaction;
+import com.capricoinj.wallet.WalletTransaction.Pool;
+
+/**
+ * Builds wallets of merchant size, with made up but internally consistent transactions: received ones pay to keys of the wallet, sent ones
+ * spend earlier received outputs to foreign addresses. Nothing is signed, so these wallets are only good for measuring, never for the
+ * network.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SyntheticWallet
+{
+	public static final class Spec
+	{
+		public int numKeys = 1000;
+		public int numTransactions = 10000;
+		public int pendingPercent = 1;
+		public int deadPercent = 1;
+		public int sentPercent = 30;
+		public long seed = 0;
+
+		@Override
+		public String toString()
+		{
+			return numKeys + " keys, " + numTransactions + " txs (" + sentPercent + "% sent, " + pendingPercent + "% pending, " + deadPercent
+					+ "% dead), seed " + seed;
+		}
+	}
+
+	private static final long TIME_SPAN_MS = 2 * 365 * 24 * 60 * 60 * 1000l;
+	private static final int BLOCKS_PER_DAY = 24 * 60;
+
+	public static Wallet generate(@Nonnull final NetworkParameters params, @Nonnull final Spec spec)
+	{
+		final Random random = new Random(spec.seed);
+		final long now = System.currentTimeMillis();
+
+		final List<ECKey> keys = new ArrayList<ECKey>(spec.numKeys);
+		final List<Address> addresses = new ArrayList<Address>(spec.numKeys);
+		for (int i = 0; i < spec.numKeys; i++)
+		{
+			final ECKey key = new ECKey();
+			key.setCreationTimeSeconds((now - TIME_SPAN_MS) / 1000 + i);
+			keys.add(key);
+			addresses.add(key.toAddress(params));
+		}
+
+		final KeyChainGroup group = new KeyChainGroup(params);
+		group.importKeys(keys);
+		final Wallet wallet = new Wallet(params, group);
+
+		final int chainHeight = (int) (TIME_SPAN_MS / (24 * 60 * 60 * 1000l) * BLOCKS_PER_DAY);
+		final List<Transaction> spendable = new ArrayList<Transaction>();
+		final List<WalletTransaction> walletTransactions = new ArrayList<WalletTransaction>(spec.numTransactions);
+		final Set<Transaction> spent = new HashSet<Transaction>();
+
+		for (int i = 0; i < spec.numTransactions; i++)
+		{
+			final long time = now - TIME_SPAN_MS + TIME_SPAN_MS * i / spec.numTransactions;
+			final int height = (int) ((long) chainHeight * i / spec.numTransactions);
+			final int roll = random.nextInt(100);
+			final boolean pending = roll < spec.pendingPercent;
+			final boolean dead = !pending && roll < spec.pendingPercent + spec.deadPercent;
+			final boolean send = !dead && random.nextInt(100) < spec.sentPercent && !spendable.isEmpty();
+
+			final Transaction tx = new Transaction(params);
+
+			if (send)
+			{
+				final Transaction from = spendable.remove(random.nextInt(spendable.size()));
+				final TransactionOutput output = from.getOutput(0);
+				final TransactionInput input = new TransactionInput(params, tx, new byte[0], new TransactionOutPoint(params, 0, from));
+				tx.addInput(input);
+				output.markAsSpent(input);
+				spent.add(from);
+				tx.addOutput(output.getValue().divide(2), new Address(params, randomBytes(random, 20)));
+			}
+			else
+			{
+				tx.addInput(new TransactionInput(params, tx, new byte[0], new TransactionOutPoint(params, 0, new Sha256Hash(randomBytes(
+						random, 32)))));
+				tx.addOutput(Coin.valueOf(1 + random.nextInt(100000000)), addresses.get(random.nextInt(addresses.size())));
+			}
+
+			tx.setUpdateTime(new Date(time));
+
+			final Pool pool;
+			if (pending)
+			{
+				tx.getConfidence().setConfidenceType(ConfidenceType.PENDING);
+				pool = Pool.PENDING;
+			}
+			else if (dead)
+			{
+				tx.getConfidence().setConfidenceType(ConfidenceType.DEAD);
+				pool = Pool.DEAD;
+			}
+			else
+			{
+				tx.getConfidence().setAppearedAtChainHeight(height);
+				tx.getConfidence().setDepthInBlocks(chainHeight - height + 1);
+				tx.addBlockAppearance(new Sha256Hash(randomBytes(random, 32)), 0);
+				pool = send ? Pool.SPENT : Pool.UNSPENT;
+
+				if (!send)
+					spendable.add(tx);
+			}
+
+			walletTransactions.add(new WalletTransaction(pool, tx));
+		}
+
+		// pools can only be decided once it is known which outputs got spent later on
+		for (final WalletTransaction wtx : walletTransactions)
+		{
+			final Transaction tx = wtx.getTransaction();
+			if (wtx.getPool() == Pool.UNSPENT && spent.contains(tx))
+				wallet.addWalletTransaction(new WalletTransaction(Pool.SPENT, tx));
+			else
+				wallet.addWalletTransaction(wtx);
+		}
+
+		wallet.setLastBlockSeenHeight(chainHeight);
+		wallet.setLastBlockSeenTimeSecs(now / 1000);
+
+		return wallet;
+	}
+
+	private static byte[] randomBytes(final Random random, final int length)
+	{
+		final byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private SyntheticWallet()
+	{
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.capricoinj.core.Wallet;
+import com.capricoinj.store.UnreadableWalletException;
+import com.capricoinj.store.WalletProtobufSerializer;
+
+import com.capricoin.capricoin_android_wallet.Constants;
+import com.capricoin.capricoin_android_wallet.util.WalletTransactions;
+
+/**
+ * Times what the app does with a wallet (load, list filtering and sorting, balance, save) against synthetic wallets of configurable size.
+ * The list work is the very code the loaders of the transaction, block and address lists run.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.capricoin.capricoin_android_wallet.benchmarks.WalletScalabilityHarness \
+ *     [--keys 1000] [--txs 10000] [--sent 30] [--pending 1] [--dead 1] [--seed 0] [--runs 5] [--wallet file]
+ * </pre>
+ *
+ * If the wallet file exists it is used as is, otherwise a wallet is generated and written to it, so generated wallets can be kept around
+ * and compared across builds.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletScalabilityHarness
+{
+	private interface Step
+	{
+		Object run(Wallet wallet) throws Exception;
+	}
+
+	public static void main(final String[] args) throws Exception
+	{
+		final SyntheticWallet.Spec spec = new SyntheticWallet.Spec();
+		int numRuns = 5;
+		File walletFile = null;
+
+		for (int i = 0; i < args.length; i += 2)
+		{
+			final String option = args[i];
+			final String value = args[i + 1];
+
+			if ("--keys".equals(option))
+				spec.numKeys = Integer.parseInt(value);
+			else if ("--txs".equals(option))
+				spec.numTransactions = Integer.parseInt(value);
+			else if ("--sent".equals(option))
+				spec.sentPercent = Integer.parseInt(value);
+			else if ("--pending".equals(option))
+				spec.pendingPercent = Integer.parseInt(value);
+			else if ("--dead".equals(option))
+				spec.deadPercent = Integer.parseInt(value);
+			else if ("--seed".equals(option))
+				spec.seed = Long.parseLong(value);
+			else if ("--runs".equals(option))
+				numRuns = Integer.parseInt(value);
+			else if ("--wallet".equals(option))
+				walletFile = new File(value);
+			else
+				throw new IllegalArgumentException("unknown option: " + option);
+		}
+
+		if (walletFile == null)
+		{
+			walletFile = File.createTempFile("synthetic-wallet", ".protobuf");
+			walletFile.deleteOnExit();
+			walletFile.delete();
+		}
+
+		if (!walletFile.exists())
+		{
+			System.out.println("generating wallet: " + spec);
+			final long start = System.currentTimeMillis();
+			save(SyntheticWallet.generate(Constants.NETWORK_PARAMETERS, spec), walletFile);
+			System.out.println("generated " + walletFile + " (" + walletFile.length() / 1024 + " kB), took "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		else
+		{
+			System.out.println("using existing wallet " + walletFile + " (" + walletFile.length() / 1024 + " kB)");
+		}
+
+		final File saveFile = new File(walletFile.getPath() + ".saved");
+		saveFile.deleteOnExit();
+		final Wallet wallet = load(walletFile);
+		System.out.println(wallet.getTransactions(true).size() + " transactions, " + wallet.getImportedKeys().size() + " keys");
+
+		final Map<String, Step> steps = new LinkedHashMap<String, Step>();
+		final File loadFile = walletFile;
+		steps.put("load", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet) throws Exception
+			{
+				return load(loadFile);
+			}
+		});
+		steps.put("filter+sort all", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return WalletTransactions.filterAndSort(wallet, true, true);
+			}
+		});
+		steps.put("filter+sort received", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return WalletTransactions.filterAndSort(wallet, true, false);
+			}
+		});
+		steps.put("filter+sort sent", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return WalletTransactions.filterAndSort(wallet, false, true);
+			}
+		});
+		steps.put("transactions in blocks", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return WalletTransactions.inBlocks(wallet);
+			}
+		});
+		steps.put("sort keys", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return WalletTransactions.sortedImportedKeys(wallet);
+			}
+		});
+		steps.put("balance estimated", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return wallet.getBalance(Wallet.BalanceType.ESTIMATED);
+			}
+		});
+		steps.put("balance available", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet)
+			{
+				return wallet.getBalance(Wallet.BalanceType.AVAILABLE);
+			}
+		});
+		steps.put("save", new Step()
+		{
+			@Override
+			public Object run(final Wallet wallet) throws Exception
+			{
+				save(wallet, saveFile);
+				return saveFile;
+			}
+		});
+
+		System.out.println();
+		System.out.println(String.format("%-24s %10s %10s %10s", "step", "min ms", "median ms", "max ms"));
+
+		for (final Map.Entry<String, Step> entry : steps.entrySet())
+		{
+			final long[] times = new long[numRuns];
+
+			// one warmup run, so that the first step does not pay for class loading
+			entry.getValue().run(wallet);
+
+			for (int i = 0; i < numRuns; i++)
+			{
+				final long start = System.nanoTime();
+				entry.getValue().run(wallet);
+				times[i] = System.nanoTime() - start;
+			}
+
+			Arrays.sort(times);
+			System.out.println(String.format("%-24s %10.1f %10.1f %10.1f", entry.getKey(), times[0] / 1e6, times[numRuns / 2] / 1e6,
+					times[numRuns - 1] / 1e6));
+		}
+	}
+
+	private static Wallet load(final File file) throws IOException, UnreadableWalletException
+	{
+		final InputStream is = new BufferedInputStream(new FileInputStream(file));
+		try
+		{
+			return new WalletProtobufSerializer().readWallet(is);
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	private static void save(final Wallet wallet, final File file) throws IOException
+	{
+		final OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+		try
+		{
+			new WalletProtobufSerializer().writeWallet(wallet, os);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	private WalletScalabilityHarness()
+	{
+	}
+}
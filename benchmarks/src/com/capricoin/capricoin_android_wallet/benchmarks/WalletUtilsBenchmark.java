@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capricoinj.core.ECKey;
+import com.capricoinj.core.Sha256Hash;
+
+import com.capricoin.capricoin_android_wallet.util.WalletUtils;
+
+/**
+ * @author Andreas Schildbach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WalletUtilsBenchmark
+{
+	@Param({ "10", "1000" })
+	public int numKeys;
+
+	private String keysBackup;
+	private Sha256Hash hash;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		final List<ECKey> keys = new ArrayList<ECKey>(numKeys);
+		for (int i = 0; i < numKeys; i++)
+			keys.add(new ECKey());
+
+		final StringWriter writer = new StringWriter();
+		WalletUtils.writeKeys(writer, keys);
+		keysBackup = writer.toString();
+
+		hash = Sha256Hash.create(keysBackup.getBytes());
+	}
+
+	@Benchmark
+	public List<ECKey> readKeys() throws IOException
+	{
+		return WalletUtils.readKeys(new BufferedReader(new StringReader(keysBackup)));
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long longHash()
+	{
+		return WalletUtils.longHash(hash);
+	}
+}
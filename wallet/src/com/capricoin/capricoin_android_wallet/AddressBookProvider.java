@@ -17,25 +17,37 @@
 
 package com.capricoin.capricoin_android_wallet;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import com.capricoin.capricoin_android_wallet.util.FullTextSearch;
+
 /**
  * @author Andreas Schildbach
  */
 public class AddressBookProvider extends ContentProvider
 {
 	private static final String DATABASE_TABLE = "address_book";
+	private static final String FTS_TABLE = DATABASE_TABLE + "_fts";
 
 	public static final String KEY_ROWID = "_id";
 	public static final String KEY_ADDRESS = "address";
@@ -68,8 +80,47 @@ public class AddressBookProvider extends ContentProvider
 		return label;
 	}
 
+	/**
+	 * Looks up the labels of several addresses in one query.
+	 * 
+	 * @return labels by address, for the addresses that have one
+	 */
+	public static Map<String, String> resolveLabels(final Context context, @Nonnull final Collection<String> addresses)
+	{
+		final Map<String, String> labels = new HashMap<String, String>(addresses.size());
+		if (addresses.isEmpty())
+			return labels;
+
+		final StringBuilder in = new StringBuilder();
+		for (final String address : addresses)
+		{
+			if (in.length() > 0)
+				in.append(',');
+			in.append(address);
+		}
+
+		final Cursor cursor = context.getContentResolver().query(contentUri(context.getPackageName()), null, SELECTION_IN,
+				new String[] { in.toString() }, null);
+
+		if (cursor != null)
+		{
+			final int addressIndex = cursor.getColumnIndexOrThrow(KEY_ADDRESS);
+			final int labelIndex = cursor.getColumnIndexOrThrow(KEY_LABEL);
+
+			while (cursor.moveToNext())
+				labels.put(cursor.getString(addressIndex), cursor.getString(labelIndex));
+
+			cursor.close();
+		}
+
+		return labels;
+	}
+
 	private Helper helper;
 
+	// set while applyBatch() runs, so that the single operations do not notify on their own
+	private final ThreadLocal<Boolean> applyingBatch = new ThreadLocal<Boolean>();
+
 	@Override
 	public boolean onCreate()
 	{
@@ -92,15 +143,99 @@ public class AddressBookProvider extends ContentProvider
 		final String address = uri.getLastPathSegment();
 		values.put(KEY_ADDRESS, address);
 
-		long rowId = helper.getWritableDatabase().insertOrThrow(DATABASE_TABLE, null, values);
+		final SQLiteDatabase db = helper.getWritableDatabase();
+		final long rowId;
+
+		db.beginTransaction();
+		try
+		{
+			rowId = db.insertOrThrow(DATABASE_TABLE, null, values);
+			indexFullText(db, rowId, address, values.getAsString(KEY_LABEL));
+
+			db.setTransactionSuccessful();
+		}
+		finally
+		{
+			db.endTransaction();
+		}
 
 		final Uri rowUri = contentUri(getContext().getPackageName()).buildUpon().appendPath(address).appendPath(Long.toString(rowId)).build();
 
-		getContext().getContentResolver().notifyChange(rowUri, null);
+		if (!isApplyingBatch())
+			getContext().getContentResolver().notifyChange(rowUri, null);
 
 		return rowUri;
 	}
 
+	@Override
+	public int bulkInsert(final Uri uri, final ContentValues[] values)
+	{
+		if (uri.getPathSegments().size() != 0)
+			throw new IllegalArgumentException(uri.toString());
+
+		final SQLiteDatabase db = helper.getWritableDatabase();
+		int count = 0;
+
+		db.beginTransaction();
+		try
+		{
+			for (final ContentValues value : values)
+			{
+				if (!value.containsKey(KEY_ADDRESS))
+					throw new IllegalArgumentException("missing " + KEY_ADDRESS);
+
+				// addresses already in the address book are skipped
+				final long rowId = db.insertWithOnConflict(DATABASE_TABLE, null, value, SQLiteDatabase.CONFLICT_IGNORE);
+				if (rowId != -1)
+				{
+					indexFullText(db, rowId, value.getAsString(KEY_ADDRESS), value.getAsString(KEY_LABEL));
+					count++;
+				}
+			}
+
+			db.setTransactionSuccessful();
+		}
+		finally
+		{
+			db.endTransaction();
+		}
+
+		if (count > 0)
+			getContext().getContentResolver().notifyChange(uri, null);
+
+		return count;
+	}
+
+	@Override
+	public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations) throws OperationApplicationException
+	{
+		final SQLiteDatabase db = helper.getWritableDatabase();
+		final ContentProviderResult[] results;
+
+		applyingBatch.set(Boolean.TRUE);
+		db.beginTransaction();
+		try
+		{
+			results = super.applyBatch(operations);
+
+			db.setTransactionSuccessful();
+		}
+		finally
+		{
+			db.endTransaction();
+			applyingBatch.remove();
+		}
+
+		getContext().getContentResolver().notifyChange(contentUri(getContext().getPackageName()), null);
+
+		return results;
+	}
+
+	private boolean isApplyingBatch()
+	{
+		return applyingBatch.get() != null;
+	}
+
 	@Override
 	public int update(final Uri uri, final ContentValues values, final String selection, final String[] selectionArgs)
 	{
@@ -109,9 +244,27 @@ public class AddressBookProvider extends ContentProvider
 
 		final String address = uri.getLastPathSegment();
 
-		final int count = helper.getWritableDatabase().update(DATABASE_TABLE, values, KEY_ADDRESS + "=?", new String[] { address });
+		final SQLiteDatabase db = helper.getWritableDatabase();
+		final int count;
 
-		if (count > 0)
+		db.beginTransaction();
+		try
+		{
+			count = db.update(DATABASE_TABLE, values, KEY_ADDRESS + "=?", new String[] { address });
+			if (count > 0)
+			{
+				final String newAddress = values.containsKey(KEY_ADDRESS) ? values.getAsString(KEY_ADDRESS) : address;
+				reindexFullText(db, KEY_ADDRESS + "=?", new String[] { newAddress });
+			}
+
+			db.setTransactionSuccessful();
+		}
+		finally
+		{
+			db.endTransaction();
+		}
+
+		if (count > 0 && !isApplyingBatch())
 			getContext().getContentResolver().notifyChange(uri, null);
 
 		return count;
@@ -128,7 +281,7 @@ public class AddressBookProvider extends ContentProvider
 
 		final int count = helper.getWritableDatabase().delete(DATABASE_TABLE, KEY_ADDRESS + "=?", new String[] { address });
 
-		if (count > 0)
+		if (count > 0 && !isApplyingBatch())
 			getContext().getContentResolver().notifyChange(uri, null);
 
 		return count;
@@ -136,7 +289,7 @@ public class AddressBookProvider extends ContentProvider
 
 	@Override
 	public Cursor query(final Uri uri, final String[] projection, final String originalSelection, final String[] originalSelectionArgs,
-			final String sortOrder)
+			String sortOrder)
 	{
 		final SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
 		qb.setTables(DATABASE_TABLE);
@@ -173,9 +326,21 @@ public class AddressBookProvider extends ContentProvider
 		}
 		else if (SELECTION_QUERY.equals(originalSelection))
 		{
-			final String query = '%' + originalSelectionArgs[0].trim() + '%';
-			selection = KEY_ADDRESS + " LIKE ? OR " + KEY_LABEL + " LIKE ?";
-			selectionArgs = new String[] { query, query };
+			final String[] tokens = FullTextSearch.tokenize(originalSelectionArgs[0]);
+			final String match = FullTextSearch.matchExpression(tokens, KEY_LABEL, KEY_ADDRESS);
+
+			if (match != null)
+			{
+				qb.appendWhere(KEY_ROWID + " IN (SELECT docid FROM " + FTS_TABLE + " WHERE " + FTS_TABLE + " MATCH ");
+				qb.appendWhereEscapeString(match);
+				qb.appendWhere(")");
+
+				// rank label prefix matches before address prefix matches before matches on later words
+				final String prefix = DatabaseUtils.sqlEscapeString(tokens[0] + '%');
+				final String rank = "CASE WHEN " + KEY_LABEL + " LIKE " + prefix + " THEN 0 WHEN " + KEY_ADDRESS + " LIKE " + prefix
+						+ " THEN 1 ELSE 2 END";
+				sortOrder = sortOrder != null ? rank + ", " + sortOrder : rank;
+			}
 		}
 
 		final Cursor cursor = qb.query(helper.getReadableDatabase(), projection, selection, selectionArgs, null, null, sortOrder);
@@ -185,6 +350,34 @@ public class AddressBookProvider extends ContentProvider
 		return cursor;
 	}
 
+	private static void indexFullText(@Nonnull final SQLiteDatabase db, final long rowId, @Nonnull final String address,
+			@CheckForNull final String label)
+	{
+		db.delete(FTS_TABLE, "docid=?", new String[] { Long.toString(rowId) });
+
+		final ContentValues values = new ContentValues();
+		values.put("docid", rowId);
+		values.put(KEY_ADDRESS, FullTextSearch.normalize(address));
+		values.put(KEY_LABEL, FullTextSearch.normalize(label));
+		db.insertOrThrow(FTS_TABLE, null, values);
+	}
+
+	private static void reindexFullText(@Nonnull final SQLiteDatabase db, @CheckForNull final String selection,
+			@CheckForNull final String[] selectionArgs)
+	{
+		final Cursor cursor = db.query(DATABASE_TABLE, new String[] { KEY_ROWID, KEY_ADDRESS, KEY_LABEL }, selection, selectionArgs, null,
+				null, null);
+		try
+		{
+			while (cursor.moveToNext())
+				indexFullText(db, cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+		}
+		finally
+		{
+			cursor.close();
+		}
+	}
+
 	private static void appendAddresses(@Nonnull final SQLiteQueryBuilder qb, @Nonnull final String[] addresses)
 	{
 		for (final String address : addresses)
@@ -198,13 +391,29 @@ public class AddressBookProvider extends ContentProvider
 	private static class Helper extends SQLiteOpenHelper
 	{
 		private static final String DATABASE_NAME = "address_book";
-		private static final int DATABASE_VERSION = 1;
+		private static final int DATABASE_VERSION = 3;
 
 		private static final String DATABASE_CREATE = "CREATE TABLE " + DATABASE_TABLE + " (" //
 				+ KEY_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, " //
 				+ KEY_ADDRESS + " TEXT NOT NULL, " //
 				+ KEY_LABEL + " TEXT NULL);";
 
+		private static final String INDEX_ADDRESS_CREATE = "CREATE UNIQUE INDEX " + DATABASE_TABLE + "_" + KEY_ADDRESS + " ON " + DATABASE_TABLE
+				+ " (" + KEY_ADDRESS + ");";
+
+		private static final String FTS_CREATE = "CREATE VIRTUAL TABLE " + FTS_TABLE + " USING fts3(" + KEY_ADDRESS + ", " + KEY_LABEL
+				+ ");";
+
+		// rows are written to the full-text table in normalized form by the provider, only deletes can be left to a trigger
+		private static final String FTS_TRIGGER_DELETE_CREATE = "CREATE TRIGGER " + DATABASE_TABLE + "_ad AFTER DELETE ON " + DATABASE_TABLE
+				+ " BEGIN DELETE FROM " + FTS_TABLE + " WHERE docid = old." + KEY_ROWID + "; END;";
+
+		private static void createFullTextSearch(final SQLiteDatabase db)
+		{
+			db.execSQL(FTS_CREATE);
+			db.execSQL(FTS_TRIGGER_DELETE_CREATE);
+		}
+
 		public Helper(final Context context)
 		{
 			super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -214,6 +423,8 @@ public class AddressBookProvider extends ContentProvider
 		public void onCreate(final SQLiteDatabase db)
 		{
 			db.execSQL(DATABASE_CREATE);
+			db.execSQL(INDEX_ADDRESS_CREATE);
+			createFullTextSearch(db);
 		}
 
 		@Override
@@ -236,6 +447,18 @@ public class AddressBookProvider extends ContentProvider
 		private void upgrade(final SQLiteDatabase db, final int oldVersion)
 		{
 			if (oldVersion == 1)
+			{
+				// drop duplicate addresses, keeping the latest entry
+				db.execSQL("DELETE FROM " + DATABASE_TABLE + " WHERE " + KEY_ROWID + " NOT IN (SELECT MAX(" + KEY_ROWID + ") FROM "
+						+ DATABASE_TABLE + " GROUP BY " + KEY_ADDRESS + ");");
+				db.execSQL(INDEX_ADDRESS_CREATE);
+			}
+			else if (oldVersion == 2)
+			{
+				createFullTextSearch(db);
+				reindexFullText(db, null, null);
+			}
+			else if (oldVersion == 3)
 			{
 				// future
 			}
@@ -48,10 +48,13 @@ public class Configuration
 	public static final String PREFS_KEY_TRUSTED_PEER_ONLY = "trusted_peer_only";
 	public static final String PREFS_KEY_DISCLAIMER = "disclaimer";
 	private static final String PREFS_KEY_LABS_QR_PAYMENT_REQUEST = "labs_qr_payment_request";
+	public static final String PREFS_KEY_LABS_ENCRYPTION_KEY_CACHE = "labs_encryption_key_cache";
+	public static final String PREFS_KEY_LABS_MERCHANT_MODE = "labs_merchant_mode";
 
 	private static final String PREFS_KEY_LAST_VERSION = "last_version";
 	private static final String PREFS_KEY_LAST_USED = "last_used";
 	private static final String PREFS_KEY_BEST_CHAIN_HEIGHT_EVER = "best_chain_height_ever";
+	private static final String PREFS_KEY_PENDING_RESCAN_TIME = "pending_rescan_time";
 	private static final String PREFS_KEY_CACHED_EXCHANGE_CURRENCY = "cached_exchange_currency";
 	private static final String PREFS_KEY_CACHED_EXCHANGE_RATE_COIN = "cached_exchange_rate_coin";
 	private static final String PREFS_KEY_CACHED_EXCHANGE_RATE_FIAT = "cached_exchange_rate_fiat";
@@ -164,6 +167,16 @@ public class Configuration
 		return prefs.getBoolean(PREFS_KEY_LABS_QR_PAYMENT_REQUEST, false);
 	}
 
+	public boolean getEncryptionKeyCacheEnabled()
+	{
+		return prefs.getBoolean(PREFS_KEY_LABS_ENCRYPTION_KEY_CACHE, false);
+	}
+
+	public boolean getMerchantModeEnabled()
+	{
+		return prefs.getBoolean(PREFS_KEY_LABS_MERCHANT_MODE, false);
+	}
+
 	public boolean versionCodeCrossed(final int currentVersionCode, final int triggeringVersionCode)
 	{
 		final boolean wasBelow = lastVersionCode < triggeringVersionCode;
@@ -210,6 +223,26 @@ public class Configuration
 			prefs.edit().putInt(PREFS_KEY_BEST_CHAIN_HEIGHT_EVER, bestChainHeightEver).commit();
 	}
 
+	public boolean hasPendingRescan()
+	{
+		return prefs.contains(PREFS_KEY_PENDING_RESCAN_TIME);
+	}
+
+	public long getPendingRescanTime()
+	{
+		return prefs.getLong(PREFS_KEY_PENDING_RESCAN_TIME, 0);
+	}
+
+	public void setPendingRescanTime(final long rescanTimeSecs)
+	{
+		prefs.edit().putLong(PREFS_KEY_PENDING_RESCAN_TIME, rescanTimeSecs).commit();
+	}
+
+	public void clearPendingRescan()
+	{
+		prefs.edit().remove(PREFS_KEY_PENDING_RESCAN_TIME).commit();
+	}
+
 	public ExchangeRatesProvider.WalletExchangeRate getCachedExchangeRate()
 	{
 		if (prefs.contains(PREFS_KEY_CACHED_EXCHANGE_CURRENCY) && prefs.contains(PREFS_KEY_CACHED_EXCHANGE_RATE_COIN)
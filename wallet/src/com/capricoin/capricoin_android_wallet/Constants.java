@@ -66,6 +66,15 @@ public final class Constants
 
         public static final String VALID_HASHES_FILENAME = "validhashes";
         public static final String PEERS_FILENAME = "peers";
+
+		/** Filename of the per-peer connect, ping and block statistics, kept next to the peer DB. */
+		public static final String PEER_STATS_FILENAME = "peer_stats";
+
+		/** Filename of the last resolutions of the DNS seeds. */
+		public static final String SEED_CACHE_FILENAME = "seed_cache";
+
+		/** Filename of the queue of transactions waiting to be broadcast. */
+		public static final String BROADCAST_QUEUE_FILENAME = "broadcast_queue";
 	}
 
 	/** Maximum size of backups. Files larger will be rejected. */
@@ -136,6 +145,18 @@ public final class Constants
 
 	public static final int MEMORY_CLASS_LOWEND = 48;
 
+	/** Maximum time a derived spending key is kept in memory, if caching is enabled. */
+	public static final long ENCRYPTION_KEY_CACHE_TIMEOUT_MS = 5 * DateUtils.MINUTE_IN_MILLIS;
+
+	/** Maximum number of times a derived spending key is reused, if caching is enabled. */
+	public static final int ENCRYPTION_KEY_CACHE_MAX_USES = 10;
+
+	/** Number of receive addresses kept derived in advance, if merchant mode is enabled. */
+	public static final int INVOICE_POOL_SIZE = 8;
+
+	/** Number of log events that can be waiting to be written to the log file. */
+	public static final int LOG_QUEUE_SIZE = 1024;
+
 	public static final String CHECKPOINTS_FILENAME = "checkpoints";
 
 }
@@ -61,6 +61,7 @@ import com.google.common.base.Charsets;
 
 import com.capricoin.capricoin_android_wallet.util.GenericUtils;
 import com.capricoin.capricoin_android_wallet.util.Io;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
 
 /**
  * @author Andreas Schildbach
@@ -414,6 +415,8 @@ public class ExchangeRatesProvider extends ContentProvider
 					}
 				}
 
+				Metrics.histogram("exchange_rates.fetch_ms").recordSince(start);
+
 				log.info("fetched exchange rates from {}, took {} ms", BITCOINAVERAGE_URL, (System.currentTimeMillis() - start));
 
 				//Add Bitcoin information
@@ -436,11 +439,15 @@ public class ExchangeRatesProvider extends ContentProvider
 			}
 			else
 			{
+				Metrics.counter("exchange_rates.fetch_failures").inc();
+
 				log.warn("http status {} when fetching {}", responseCode, BITCOINAVERAGE_URL);
 			}
 		}
 		catch (final Exception x)
 		{
+			Metrics.counter("exchange_rates.fetch_failures").inc();
+
 			log.warn("problem fetching exchange rates from " + BITCOINAVERAGE_URL, x);
 		}
 		finally
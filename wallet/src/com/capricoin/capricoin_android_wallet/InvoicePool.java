@@ -0,0 +1,338 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.capricoinj.core.AbstractWalletEventListener;
+import com.capricoinj.core.Address;
+import com.capricoinj.core.Coin;
+import com.capricoinj.core.ScriptException;
+import com.capricoinj.core.Transaction;
+import com.capricoinj.core.TransactionOutput;
+import com.capricoinj.core.Wallet;
+import com.capricoinj.uri.PeercoinURI;
+import com.capricoinj.utils.Threading;
+
+import com.capricoin.capricoin_android_wallet.util.Qr;
+
+/**
+ * Keeps a few fresh receive addresses derived and their request QR codes rendered ahead of time, so that a merchant can hand out one
+ * invoice after the other without waiting. Incoming payments are matched to open invoices by address. Addresses that were derived but
+ * never handed out are returned on shutdown, so that the next pool for the same wallet can use them before deriving new ones.
+ *
+ * @author Andreas Schildbach
+ */
+public final class InvoicePool
+{
+	public static final class Invoice
+	{
+		public final Address address;
+
+		/** QR code of the request without amount, rendered in advance */
+		public final Bitmap qrCodeBitmap;
+
+		@CheckForNull
+		private Coin amount;
+		private Coin received = Coin.ZERO;
+
+		private Invoice(@Nonnull final Address address, @Nonnull final Bitmap qrCodeBitmap)
+		{
+			this.address = address;
+			this.qrCodeBitmap = qrCodeBitmap;
+		}
+
+		public synchronized void setAmount(@Nullable final Coin amount)
+		{
+			this.amount = amount;
+		}
+
+		@CheckForNull
+		public synchronized Coin getAmount()
+		{
+			return amount;
+		}
+
+		public synchronized Coin getReceived()
+		{
+			return received;
+		}
+
+		/** @return true if the invoice is settled by this payment */
+		private synchronized boolean credit(@Nonnull final Coin value)
+		{
+			received = received.add(value);
+
+			return amount == null || received.compareTo(amount) >= 0;
+		}
+	}
+
+	public interface Listener
+	{
+		/** will be called back on the main thread */
+		void onInvoicePaid(@Nonnull Invoice invoice, @Nonnull Transaction tx);
+	}
+
+	private final Wallet wallet;
+	private final int poolSize;
+	private final int qrSize;
+
+	private final BlockingQueue<Invoice> pool = new LinkedBlockingQueue<Invoice>();
+	// guarded by pool
+	private final LinkedList<Address> unusedAddresses;
+	// guarded by pool, address whose QR code the refill is rendering
+	@CheckForNull
+	private Address renderingAddress = null;
+	private boolean isShutdown = false;
+	private final Map<Address, Invoice> openInvoices = new ConcurrentHashMap<Address, Invoice>();
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	private final HandlerThread backgroundThread;
+	private final Handler backgroundHandler;
+	private final Handler callbackHandler = new Handler(Looper.getMainLooper());
+
+	private static final Logger log = LoggerFactory.getLogger(InvoicePool.class);
+
+	/**
+	 * @param unusedAddresses
+	 *            addresses of the wallet that have been derived but never handed out, as returned by {@link #shutdown()}
+	 */
+	public InvoicePool(@Nonnull final Wallet wallet, final int poolSize, final int qrSize, @Nonnull final Collection<Address> unusedAddresses)
+	{
+		this.wallet = wallet;
+		this.poolSize = poolSize;
+		this.qrSize = qrSize;
+		this.unusedAddresses = new LinkedList<Address>(unusedAddresses);
+
+		backgroundThread = new HandlerThread("invoicePoolThread", Process.THREAD_PRIORITY_BACKGROUND);
+		backgroundThread.start();
+		backgroundHandler = new Handler(backgroundThread.getLooper());
+
+		wallet.addEventListener(walletEventListener, Threading.SAME_THREAD);
+
+		backgroundHandler.post(refillRunnable);
+	}
+
+	/**
+	 * @return addresses that have been derived but never handed out, for the next pool of the same wallet
+	 */
+	public List<Address> shutdown()
+	{
+		wallet.removeEventListener(walletEventListener);
+		backgroundThread.getLooper().quit();
+
+		final List<Address> unused;
+		synchronized (pool)
+		{
+			isShutdown = true;
+
+			unused = new ArrayList<Address>(pool.size() + unusedAddresses.size());
+			for (final Invoice invoice : pool)
+				unused.add(invoice.address);
+			unused.addAll(unusedAddresses);
+			if (renderingAddress != null)
+				unused.add(renderingAddress);
+
+			pool.clear();
+			unusedAddresses.clear();
+		}
+
+		openInvoices.clear();
+		listeners.clear();
+
+		if (!unused.isEmpty())
+			log.info("returning {} unused invoice addresses", unused.size());
+
+		return unused;
+	}
+
+	public void addListener(@Nonnull final Listener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(@Nonnull final Listener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Takes the next invoice from the pool and opens it. Only derives an address on the calling thread if the pool has run dry.
+	 */
+	public Invoice issue(@Nullable final Coin amount)
+	{
+		Invoice invoice = pool.poll();
+		if (invoice == null)
+		{
+			log.info("invoice pool exhausted, deriving on demand");
+			invoice = derive();
+		}
+
+		invoice.setAmount(amount);
+		openInvoices.put(invoice.address, invoice);
+
+		backgroundHandler.post(refillRunnable);
+
+		return invoice;
+	}
+
+	/**
+	 * Stops watching for payments to this invoice. Its address is not reused.
+	 */
+	public void cancel(@Nonnull final Invoice invoice)
+	{
+		openInvoices.remove(invoice.address);
+	}
+
+	@CheckForNull
+	public Invoice getOpenInvoice(@Nonnull final Address address)
+	{
+		return openInvoices.get(address);
+	}
+
+	public int getNumOpenInvoices()
+	{
+		return openInvoices.size();
+	}
+
+	private Invoice derive()
+	{
+		final Address address;
+		synchronized (pool)
+		{
+			address = nextAddress();
+		}
+
+		return invoice(address);
+	}
+
+	// must hold lock on pool
+	private Address nextAddress()
+	{
+		final Address address = unusedAddresses.poll();
+		return address != null ? address : wallet.freshReceiveAddress();
+	}
+
+	private Invoice invoice(@Nonnull final Address address)
+	{
+		final Bitmap qrCodeBitmap = Qr.bitmap(PeercoinURI.convertToPeercoinURI(address, null, null, null), qrSize);
+
+		return new Invoice(address, qrCodeBitmap);
+	}
+
+	private final Runnable refillRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final long start = System.currentTimeMillis();
+			int numDerived = 0;
+
+			while (true)
+			{
+				// no address is taken once shut down, and the one being rendered is returned by shutdown()
+				final Address address;
+				synchronized (pool)
+				{
+					if (isShutdown || pool.size() >= poolSize)
+						break;
+
+					address = nextAddress();
+					renderingAddress = address;
+				}
+
+				final Invoice invoice = invoice(address);
+
+				synchronized (pool)
+				{
+					renderingAddress = null;
+					if (isShutdown)
+						break;
+
+					pool.add(invoice);
+				}
+				numDerived++;
+			}
+
+			if (numDerived > 0)
+				log.info("refilled invoice pool with {} invoices, took {} ms", numDerived, System.currentTimeMillis() - start);
+		}
+	};
+
+	private final AbstractWalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance, final Coin newBalance)
+		{
+			if (openInvoices.isEmpty())
+				return;
+
+			for (final TransactionOutput output : tx.getOutputs())
+			{
+				final Address address;
+				try
+				{
+					address = output.getScriptPubKey().getToAddress(Constants.NETWORK_PARAMETERS);
+				}
+				catch (final ScriptException x)
+				{
+					continue;
+				}
+
+				final Invoice invoice = openInvoices.get(address);
+				if (invoice != null && invoice.credit(output.getValue()))
+				{
+					openInvoices.remove(address);
+
+					log.info("invoice for {} paid by {}", address, tx.getHashAsString());
+
+					callbackHandler.post(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							for (final Listener listener : listeners)
+								listener.onInvoicePaid(invoice, tx);
+						}
+					});
+				}
+			}
+		}
+	};
+}
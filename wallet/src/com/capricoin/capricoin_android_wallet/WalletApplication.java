@@ -24,8 +24,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
@@ -35,12 +38,18 @@ import android.app.ActivityManager;
 import android.app.AlarmManager;
 import android.app.Application;
 import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
 import android.preference.PreferenceManager;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.format.DateUtils;
 import android.widget.Toast;
 import ch.qos.logback.classic.Level;
@@ -51,6 +60,7 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 
+import com.capricoinj.core.Address;
 import com.capricoinj.core.Transaction;
 import com.capricoinj.core.VerificationException;
 import com.capricoinj.core.VersionMessage;
@@ -62,10 +72,19 @@ import com.capricoinj.utils.Threading;
 import com.capricoinj.wallet.Protos;
 import com.capricoinj.wallet.WalletFiles;
 import com.capricoin.capricoin_android_wallet.service.BlockchainService;
+import com.capricoin.capricoin_android_wallet.service.BroadcastQueue;
 import com.capricoin.capricoin_android_wallet.service.BlockchainServiceImpl;
+import com.capricoin.capricoin_android_wallet.service.BlockchainState;
+import com.capricoin.capricoin_android_wallet.service.RescanPlanner;
+import com.capricoin.capricoin_android_wallet.service.SyncScheduler;
+import com.capricoin.capricoin_android_wallet.util.AsyncLogAppender;
 import com.capricoin.capricoin_android_wallet.util.CrashReporter;
+import com.capricoin.capricoin_android_wallet.util.EncryptionKeyCache;
 import com.capricoin.capricoin_android_wallet.util.Io;
 import com.capricoin.capricoin_android_wallet.util.LinuxSecureRandom;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
+import com.capricoin.capricoin_android_wallet.util.WalletEventHub;
 
 import static junit.framework.Assert.assertTrue;
 
@@ -85,7 +104,18 @@ public class WalletApplication extends Application
 	private Wallet wallet;
 	private PackageInfo packageInfo;
 
-	public static final String ACTION_WALLET_CHANGED = WalletApplication.class.getPackage().getName() + ".wallet_changed";
+	private final EncryptionKeyCache encryptionKeyCache = new EncryptionKeyCache(Constants.ENCRYPTION_KEY_CACHE_TIMEOUT_MS,
+			Constants.ENCRYPTION_KEY_CACHE_MAX_USES);
+	@CheckForNull
+	private InvoicePool invoicePool;
+	private List<Address> unusedInvoiceAddresses = Collections.emptyList();
+	private final AsyncLogAppender asyncLogAppender = new AsyncLogAppender();
+	private final SyncScheduler syncScheduler = new SyncScheduler(SyncScheduler.SYSTEM_CLOCK, SyncScheduler.DEFAULT_POLICY);
+	private BroadcastQueue broadcastQueue;
+	private final ObservableState<BlockchainState> blockchainState = new ObservableState<BlockchainState>();
+	private final ObservableState<Integer> peerState = new ObservableState<Integer>();
+	private final ObservableState<Wallet> walletState = new ObservableState<Wallet>();
+	private final WalletEventHub walletEventHub = new WalletEventHub();
 
 	private static final Logger log = LoggerFactory.getLogger(WalletApplication.class);
 	
@@ -118,6 +148,8 @@ public class WalletApplication extends Application
 		initMnemonicCode();
 
 		config = new Configuration(PreferenceManager.getDefaultSharedPreferences(this));
+		encryptionKeyCache.setEnabled(config.getEncryptionKeyCacheEnabled());
+		config.registerOnSharedPreferenceChangeListener(preferenceChangeListener);
 		walletFile = getFileStreamPath(Constants.Files.WALLET_FILENAME_PROTOBUF);
 
 		// Rename old wallets
@@ -170,6 +202,8 @@ public class WalletApplication extends Application
 				BlockchainServiceImpl.class);
 	    blockchainServiceResetBlockchainIntent = new Intent(BlockchainService.ACTION_RESET_BLOCKCHAIN, null, this, BlockchainServiceImpl.class);
 
+	    registerReceiver(screenOffReceiver, new IntentFilter(Intent.ACTION_SCREEN_OFF));
+
 	    // Do not use main thread!
 	    new Thread(new Runnable() {
 
@@ -182,9 +216,40 @@ public class WalletApplication extends Application
 		
 	}
 	
+	@Override
+	public void onTrimMemory(final int level)
+	{
+		super.onTrimMemory(level);
+
+		encryptionKeyCache.wipe();
+		asyncLogAppender.flush();
+	}
+
+	private final BroadcastReceiver screenOffReceiver = new BroadcastReceiver()
+	{
+		@Override
+		public void onReceive(final Context context, final Intent intent)
+		{
+			encryptionKeyCache.wipe();
+		}
+	};
+
+	private final OnSharedPreferenceChangeListener preferenceChangeListener = new OnSharedPreferenceChangeListener()
+	{
+		@Override
+		public void onSharedPreferenceChanged(final SharedPreferences sharedPreferences, final String key)
+		{
+			if (Configuration.PREFS_KEY_LABS_ENCRYPTION_KEY_CACHE.equals(key))
+				encryptionKeyCache.setEnabled(config.getEncryptionKeyCacheEnabled());
+			else if (Configuration.PREFS_KEY_LABS_MERCHANT_MODE.equals(key) && !config.getMerchantModeEnabled())
+				shutdownInvoicePool();
+		}
+	};
+
 	private void afterLoadWallet()
 	{
 		wallet.autosaveToFile(walletFile, 10, TimeUnit.SECONDS, new WalletAutosaveEventListener());
+		walletEventHub.attach(wallet);
 
 		// clean up spam
 		wallet.cleanup();
@@ -219,6 +284,14 @@ public class WalletApplication extends Application
 		fileAppender.setRollingPolicy(rollingPolicy);
 		fileAppender.start();
 
+		// keep file I/O off the logging threads, some of which are network threads
+		asyncLogAppender.setContext(context);
+		asyncLogAppender.setName("asyncFile");
+		asyncLogAppender.setDelegate(fileAppender);
+		asyncLogAppender.setQueueSize(Constants.LOG_QUEUE_SIZE);
+		asyncLogAppender.setDropLevel(Level.INFO);
+		asyncLogAppender.start();
+
 		final PatternLayoutEncoder logcatTagPattern = new PatternLayoutEncoder();
 		logcatTagPattern.setContext(context);
 		logcatTagPattern.setPattern("%logger{0}");
@@ -236,7 +309,7 @@ public class WalletApplication extends Application
 		logcatAppender.start();
 
 		final ch.qos.logback.classic.Logger log = context.getLogger(Logger.ROOT_LOGGER_NAME);
-		log.addAppender(fileAppender);
+		log.addAppender(asyncLogAppender);
 		log.addAppender(logcatAppender);
 		log.setLevel(Level.INFO);
 	}
@@ -283,6 +356,97 @@ public class WalletApplication extends Application
 		return wallet;
 	}
 
+	public AsyncLogAppender getAsyncLogAppender()
+	{
+		return asyncLogAppender;
+	}
+
+	public EncryptionKeyCache getEncryptionKeyCache()
+	{
+		return encryptionKeyCache;
+	}
+
+	/**
+	 * @return pool of prepared invoices for the current wallet, created on first use
+	 */
+	public synchronized InvoicePool getInvoicePool()
+	{
+		if (invoicePool == null)
+		{
+			invoicePool = new InvoicePool(wallet, Constants.INVOICE_POOL_SIZE, getResources().getDimensionPixelSize(R.dimen.bitmap_dialog_qr_size),
+					unusedInvoiceAddresses);
+			unusedInvoiceAddresses = Collections.emptyList();
+		}
+
+		return invoicePool;
+	}
+
+	/**
+	 * @return pool of prepared invoices for the current wallet, or null if none has been created
+	 */
+	@CheckForNull
+	public synchronized InvoicePool peekInvoicePool()
+	{
+		return invoicePool;
+	}
+
+	public SyncScheduler getSyncScheduler()
+	{
+		return syncScheduler;
+	}
+
+	/**
+	 * @return latest state of the chain, as published by the blockchain service
+	 */
+	public ObservableState<BlockchainState> getBlockchainState()
+	{
+		return blockchainState;
+	}
+
+	/**
+	 * @return latest number of connected peers, as published by the blockchain service
+	 */
+	public ObservableState<Integer> getPeerState()
+	{
+		return peerState;
+	}
+
+	/**
+	 * @return the wallet, published again whenever it is replaced or its blockchain is reset
+	 */
+	public ObservableState<Wallet> getWalletState()
+	{
+		return walletState;
+	}
+
+	/**
+	 * @return the single listener on the current wallet, for anything that only needs to know that it changed
+	 */
+	public WalletEventHub getWalletEventHub()
+	{
+		return walletEventHub;
+	}
+
+	/**
+	 * @return queue of transactions waiting for broadcast, shared by the service and the scheduling of its next run
+	 */
+	public synchronized BroadcastQueue getBroadcastQueue()
+	{
+		if (broadcastQueue == null)
+			broadcastQueue = new BroadcastQueue(getFileStreamPath(Constants.Files.BROADCAST_QUEUE_FILENAME));
+
+		return broadcastQueue;
+	}
+
+	private synchronized void shutdownInvoicePool()
+	{
+		if (invoicePool != null)
+		{
+			unusedInvoiceAddresses = invoicePool.shutdown();
+			invoicePool = null;
+		}
+	}
+
 	private void loadWalletFromProtobuf()
 	{
 		if (walletFile.exists())
@@ -300,6 +464,8 @@ public class WalletApplication extends Application
 				if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
 					throw new UnreadableWalletException("bad wallet network parameters: " + wallet.getParams().getId());
 
+				Metrics.histogram("wallet.load_ms").recordSince(start);
+
 				log.info("wallet loaded from: '" + walletFile + "', took " + (System.currentTimeMillis() - start) + "ms");
 			}
 			catch (final FileNotFoundException x)
@@ -419,6 +585,8 @@ public class WalletApplication extends Application
 		if (Constants.TEST)
 			Io.chmod(walletFile, 0777);
 
+		Metrics.histogram("wallet.save_ms").recordSince(start);
+
 		log.debug("wallet saved to: '" + walletFile + "', took " + (System.currentTimeMillis() - start) + "ms");
 	}
 
@@ -507,9 +675,7 @@ public class WalletApplication extends Application
 	{
 		internalResetBlockchain();
 
-		final Intent broadcast = new Intent(ACTION_WALLET_CHANGED);
-		broadcast.setPackage(getPackageName());
-		LocalBroadcastManager.getInstance(this).sendBroadcast(broadcast);
+		walletState.set(wallet);
 	}
 
 	private void internalResetBlockchain()
@@ -521,16 +687,23 @@ public class WalletApplication extends Application
 
 	public void replaceWallet(final Wallet newWallet){
 		
-		internalResetBlockchain(); // implicitly stops blockchain service
+		// only replay from the earliest key, the block store is rewound when the service starts again
+		config.setPendingRescanTime(RescanPlanner.rescanTimeSecs(newWallet));
+		stopBlockchainService();
 		wallet.shutdownAutosaveAndWait();
+		encryptionKeyCache.wipe();
+		shutdownInvoicePool();
+		synchronized (this)
+		{
+			// addresses of the old wallet
+			unusedInvoiceAddresses = Collections.emptyList();
+		}
 
 		wallet = newWallet;
 		config.maybeIncrementBestChainHeightEver(newWallet.getLastBlockSeenHeight());
 		afterLoadWallet();
 
-		final Intent broadcast = new Intent(ACTION_WALLET_CHANGED);
-		broadcast.setPackage(getPackageName());
-		LocalBroadcastManager.getInstance(this).sendBroadcast(broadcast);
+		walletState.set(wallet);
 		
 		config.disarmBackupReminder();
 		
@@ -545,6 +718,37 @@ public class WalletApplication extends Application
 		}
 	}
 
+	/**
+	 * Like {@link #processDirectTransaction(Transaction)}, but for all transactions of one payment at once. Relevant transactions are all
+	 * received before any of them is broadcast. If receiving one of them fails, the ones already received are still broadcast, as they
+	 * are pending in the wallet by then.
+	 */
+	public void processDirectTransactions(@Nonnull final List<Transaction> txs) throws VerificationException
+	{
+		final List<Transaction> relevantTxs = new ArrayList<Transaction>(txs.size());
+
+		try
+		{
+			for (final Transaction tx : txs)
+			{
+				if (wallet.isTransactionRelevant(tx))
+				{
+					wallet.receivePending(tx, null);
+					relevantTxs.add(tx);
+				}
+				else
+				{
+					log.info("tx " + tx.getHashAsString() + " irrelevant");
+				}
+			}
+		}
+		finally
+		{
+			for (final Transaction tx : relevantTxs)
+				broadcastTransaction(tx);
+		}
+	}
+
 	public void broadcastTransaction(@Nonnull final Transaction tx)
 	{
 		final Intent intent = new Intent(BlockchainService.ACTION_BROADCAST_TRANSACTION, null, this, BlockchainServiceImpl.class);
@@ -610,27 +814,27 @@ public class WalletApplication extends Application
 			@Override
 			public void run() {
 				
-				final long lastUsedAgo = config.getLastUsedAgo();
-				
-				// apply some backoff
-				final long alarmInterval;
-				if (lastUsedAgo < Constants.LAST_USAGE_THRESHOLD_JUST_MS)
-					alarmInterval = 30000;//AlarmManager.INTERVAL_FIFTEEN_MINUTES;
-				else if (lastUsedAgo < Constants.LAST_USAGE_THRESHOLD_RECENTLY_MS)
-					alarmInterval = 600000;//AlarmManager.INTERVAL_HALF_DAY;
-				else
-					alarmInterval = 1800000;//AlarmManager.INTERVAL_DAY;
-				
-				log.info("last used {} minutes ago, rescheduling blockchain sync in roughly {} minutes", lastUsedAgo / DateUtils.MINUTE_IN_MILLIS,
-				alarmInterval / DateUtils.MINUTE_IN_MILLIS);
 				assertTrue(config != null);
+				final SyncScheduler.Conditions conditions = new SyncScheduler.Conditions();
+				conditions.lastUsedAgoMs = config.getLastUsedAgo();
+				conditions.numQueuedBroadcasts = getBroadcastQueue().size();
+				synchronized (wa)
+				{
+					conditions.expectingPayment = invoicePool != null && invoicePool.getNumOpenInvoices() > 0;
+				}
+				conditions.charging = isCharging();
+				conditions.unmeteredNetwork = isOnUnmeteredNetwork();
+
+				final SyncScheduler.Decision decision = syncScheduler.schedule(conditions);
+
+				log.info("last used {} minutes ago, rescheduling blockchain sync in roughly {}", conditions.lastUsedAgoMs
+						/ DateUtils.MINUTE_IN_MILLIS, decision);
 				final AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
 				final PendingIntent alarmIntent = PendingIntent.getService(wa, 0, new Intent(wa, BlockchainServiceImpl.class), 0);
 				alarmManager.cancel(alarmIntent);
 				
 				// workaround for no inexact set() before KitKat
-				final long now = System.currentTimeMillis();
-				alarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, now + alarmInterval, AlarmManager.INTERVAL_DAY, alarmIntent);
+				alarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, syncScheduler.nextRunAt(decision), AlarmManager.INTERVAL_DAY, alarmIntent);
 				
 			}
 			
@@ -638,6 +842,24 @@ public class WalletApplication extends Application
 		
 	}
 
+	private boolean isCharging()
+	{
+		// sticky broadcast, so no receiver is needed
+		final Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+	}
+
+	private boolean isOnUnmeteredNetwork()
+	{
+		final ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+		final NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+		if (networkInfo == null || !networkInfo.isConnected())
+			return false;
+
+		final int type = networkInfo.getType();
+		return type == ConnectivityManager.TYPE_WIFI || type == ConnectivityManager.TYPE_ETHERNET;
+	}
+
 	public boolean isLoaded() {
 	    
 	    // Wait for loadedCallbacks to run
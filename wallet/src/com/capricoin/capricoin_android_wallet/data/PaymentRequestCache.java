@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.data;
+
+import java.io.FileNotFoundException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.text.format.DateUtils;
+
+import com.capricoinj.crypto.TrustStoreLoader;
+import com.capricoinj.protocols.payments.PaymentProtocol;
+import com.capricoinj.protocols.payments.PaymentProtocolException;
+import com.capricoinj.protocols.payments.Protos;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Remembers BIP70 payment requests that have passed verification, and certificate chains that have passed X.509 path validation, so
+ * that rescanning the same invoice does not repeat the work. Requests are only ever looked up by their hash, so a request fetched from a
+ * URL is always fetched anew. Entries never outlive the expiry of the payment request or of any certificate in the chain.
+ *
+ * @author Andreas Schildbach
+ */
+public final class PaymentRequestCache
+{
+	private static final int MAX_REQUESTS = 32;
+	private static final int MAX_CHAINS = 16;
+
+	/** for requests without expiry */
+	private static final long MAX_REQUEST_AGE_MS = 10 * DateUtils.MINUTE_IN_MILLIS;
+
+	/** so that changes to the trust store are picked up eventually */
+	private static final long MAX_CHAIN_AGE_MS = DateUtils.HOUR_IN_MILLIS;
+
+	private static final Map<HashCode, RequestEntry> verifiedRequests = lruMap(MAX_REQUESTS);
+	private static final Map<HashCode, VerifiedChain> verifiedChains = lruMap(MAX_CHAINS);
+
+	private static final Logger log = LoggerFactory.getLogger(PaymentRequestCache.class);
+
+	private static final class RequestEntry
+	{
+		public final PaymentIntent paymentIntent;
+		public final long expiresAt;
+
+		public RequestEntry(@Nonnull final PaymentIntent paymentIntent, final long expiresAt)
+		{
+			this.paymentIntent = paymentIntent;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	public static final class VerifiedChain
+	{
+		public final String displayName;
+		public final String rootAuthorityName;
+		public final PublicKey merchantSigningKey;
+		public final long expiresAt;
+
+		private VerifiedChain(@Nonnull final String displayName, @Nullable final String rootAuthorityName,
+				@Nonnull final PublicKey merchantSigningKey, final long expiresAt)
+		{
+			this.displayName = displayName;
+			this.rootAuthorityName = rootAuthorityName;
+			this.merchantSigningKey = merchantSigningKey;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private PaymentRequestCache()
+	{
+	}
+
+	/**
+	 * @return payment intent of an already verified payment request with the given hash, or null if there is none or it has expired
+	 */
+	@CheckForNull
+	public static PaymentIntent getVerifiedRequest(@Nonnull final byte[] paymentRequestHash)
+	{
+		final HashCode key = HashCode.fromBytes(paymentRequestHash);
+
+		synchronized (verifiedRequests)
+		{
+			final RequestEntry entry = verifiedRequests.get(key);
+			if (entry == null)
+				return null;
+
+			if (System.currentTimeMillis() >= entry.expiresAt)
+			{
+				verifiedRequests.remove(key);
+				return null;
+			}
+
+			return entry.paymentIntent;
+		}
+	}
+
+	/**
+	 * @param expires
+	 *            expiry of the payment request, or null if it does not expire
+	 * @param chain
+	 *            chain the request was signed with, or null if it was unsigned
+	 */
+	public static void putVerifiedRequest(@Nonnull final PaymentIntent paymentIntent, @Nullable final Date expires,
+			@Nullable final VerifiedChain chain)
+	{
+		long expiresAt = System.currentTimeMillis() + MAX_REQUEST_AGE_MS;
+		if (expires != null)
+			expiresAt = Math.min(expiresAt, expires.getTime());
+		if (chain != null)
+			expiresAt = Math.min(expiresAt, chain.expiresAt);
+
+		synchronized (verifiedRequests)
+		{
+			verifiedRequests.put(HashCode.fromBytes(paymentIntent.paymentRequestHash), new RequestEntry(paymentIntent, expiresAt));
+		}
+	}
+
+	/**
+	 * Verifies the signature of a payment request. The certificate chain is only validated against the trust store if it has not been
+	 * validated recently; otherwise just the signature is checked, against the cached merchant key.
+	 */
+	public static VerifiedChain verifyPki(@Nonnull final Protos.PaymentRequest paymentRequest) throws PaymentProtocolException
+	{
+		final HashCode fingerprint = Hashing.sha256().newHasher().putBytes(paymentRequest.getPkiTypeBytes().toByteArray())
+				.putBytes(paymentRequest.getPkiData().toByteArray()).hash();
+
+		VerifiedChain chain;
+		synchronized (verifiedChains)
+		{
+			chain = verifiedChains.get(fingerprint);
+			if (chain != null && System.currentTimeMillis() >= chain.expiresAt)
+			{
+				verifiedChains.remove(fingerprint);
+				chain = null;
+			}
+		}
+
+		if (chain != null)
+		{
+			log.info("certificate chain of {} already validated, checking signature only", chain.displayName);
+
+			verifySignature(paymentRequest, chain.merchantSigningKey);
+
+			return chain;
+		}
+
+		final PaymentProtocol.PkiVerificationData verificationData = PaymentProtocol.verifyPaymentRequestPki(paymentRequest, loadKeyStore());
+
+		chain = new VerifiedChain(verificationData.displayName, verificationData.rootAuthorityName, verificationData.merchantSigningKey,
+				Math.min(System.currentTimeMillis() + MAX_CHAIN_AGE_MS, chainNotAfter(paymentRequest)));
+
+		synchronized (verifiedChains)
+		{
+			verifiedChains.put(fingerprint, chain);
+		}
+
+		return chain;
+	}
+
+	private static void verifySignature(@Nonnull final Protos.PaymentRequest paymentRequest, @Nonnull final PublicKey publicKey)
+			throws PaymentProtocolException
+	{
+		final String pkiType = paymentRequest.getPkiType();
+		final String algorithm;
+		if ("x509+sha256".equals(pkiType))
+			algorithm = "SHA256withRSA";
+		else if ("x509+sha1".equals(pkiType))
+			algorithm = "SHA1withRSA";
+		else
+			throw new PaymentProtocolException.InvalidPkiType("unsupported pki type: " + pkiType);
+
+		try
+		{
+			final Signature signature = Signature.getInstance(algorithm);
+			signature.initVerify(publicKey);
+			signature.update(paymentRequest.toBuilder().setSignature(ByteString.EMPTY).build().toByteArray());
+
+			if (!signature.verify(paymentRequest.getSignature().toByteArray()))
+				throw new PaymentProtocolException.PkiVerificationException("invalid signature, this payment request is not valid");
+		}
+		catch (final GeneralSecurityException x)
+		{
+			throw new PaymentProtocolException.PkiVerificationException(x);
+		}
+	}
+
+	private static long chainNotAfter(@Nonnull final Protos.PaymentRequest paymentRequest) throws PaymentProtocolException
+	{
+		try
+		{
+			final Protos.X509Certificates certs = Protos.X509Certificates.parseFrom(paymentRequest.getPkiData());
+			final CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+
+			long notAfter = Long.MAX_VALUE;
+			for (final ByteString cert : certs.getCertificateList())
+				notAfter = Math.min(notAfter, ((X509Certificate) certificateFactory.generateCertificate(cert.newInput())).getNotAfter().getTime());
+
+			return notAfter;
+		}
+		catch (final InvalidProtocolBufferException x)
+		{
+			throw new PaymentProtocolException.InvalidPkiData(x);
+		}
+		catch (final GeneralSecurityException x)
+		{
+			throw new PaymentProtocolException.PkiVerificationException(x);
+		}
+	}
+
+	private static KeyStore loadKeyStore()
+	{
+		try
+		{
+			return new TrustStoreLoader.DefaultTrustStoreLoader().getKeyStore();
+		}
+		catch (final FileNotFoundException x)
+		{
+			throw new RuntimeException(x);
+		}
+		catch (final KeyStoreException x)
+		{
+			throw new RuntimeException(x);
+		}
+	}
+
+	private static <K, V> Map<K, V> lruMap(final int maxEntries)
+	{
+		return new LinkedHashMap<K, V>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+}
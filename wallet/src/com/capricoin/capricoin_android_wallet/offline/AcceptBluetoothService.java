@@ -17,9 +17,10 @@
 
 package com.capricoin.capricoin_android_wallet.offline;
 
+import java.util.List;
+
 import com.capricoinj.core.Transaction;
 import com.capricoinj.core.VerificationException;
-import com.capricoinj.core.Wallet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,7 +44,6 @@ import com.capricoin.capricoin_android_wallet.WalletApplication;
 public final class AcceptBluetoothService extends Service
 {
 	private WalletApplication application;
-	private Wallet wallet;
 	private WakeLock wakeLock;
 	private AcceptBluetoothThread classicThread;
 	private AcceptBluetoothThread paymentProtocolThread;
@@ -80,7 +80,6 @@ public final class AcceptBluetoothService extends Service
 		super.onCreate();
 
 		this.application = (WalletApplication) getApplication();
-		this.wallet = application.getWallet();
 
 		final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
@@ -93,9 +92,9 @@ public final class AcceptBluetoothService extends Service
 		classicThread = new AcceptBluetoothThread.ClassicBluetoothThread(bluetoothAdapter)
 		{
 			@Override
-			public boolean handleTx(final Transaction tx)
+			public boolean handleTxs(final List<Transaction> txs)
 			{
-				return AcceptBluetoothService.this.handleTx(tx);
+				return AcceptBluetoothService.this.handleTxs(txs);
 			}
 		};
 		classicThread.start();
@@ -103,43 +102,28 @@ public final class AcceptBluetoothService extends Service
 		paymentProtocolThread = new AcceptBluetoothThread.PaymentProtocolThread(bluetoothAdapter)
 		{
 			@Override
-			public boolean handleTx(final Transaction tx)
+			public boolean handleTxs(final List<Transaction> txs)
 			{
-				return AcceptBluetoothService.this.handleTx(tx);
+				return AcceptBluetoothService.this.handleTxs(txs);
 			}
 		};
 		paymentProtocolThread.start();
 	}
 
-	private boolean handleTx(final Transaction tx)
+	private boolean handleTxs(final List<Transaction> txs)
 	{
-		log.info("tx " + tx.getHashAsString() + " arrived via blueooth");
+		for (final Transaction tx : txs)
+			log.info("tx " + tx.getHashAsString() + " arrived via blueooth");
 
 		try
 		{
-			if (wallet.isTransactionRelevant(tx))
-			{
-				wallet.receivePending(tx, null);
-
-				handler.post(new Runnable()
-				{
-					@Override
-					public void run()
-					{
-						application.broadcastTransaction(tx);
-					}
-				});
-			}
-			else
-			{
-				log.info("tx " + tx.getHashAsString() + " irrelevant");
-			}
+			application.processDirectTransactions(txs);
 
 			return true;
 		}
 		catch (final VerificationException x)
 		{
-			log.info("cannot verify tx " + tx.getHashAsString() + " received via bluetooth", x);
+			log.info("cannot verify txns received via bluetooth", x);
 		}
 
 		return false;
@@ -20,7 +20,23 @@ package com.capricoin.capricoin_android_wallet.offline;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
@@ -40,116 +56,97 @@ import com.capricoin.capricoin_android_wallet.util.Bluetooth;
 import com.capricoin.capricoin_android_wallet.Constants;
 
 /**
+ * Accepts payment connections on one thread and processes them on a bounded pool of workers, so that a slow or stalled payer does not
+ * block everybody else. Every connection is closed after a deadline, no matter what state it is in.
+ *
  * @author Shahar Livne
  * @author Andreas Schildbach
  */
 public abstract class AcceptBluetoothThread extends Thread
 {
-	protected final BluetoothServerSocket listeningSocket;
+	/** A connected socket, either Bluetooth or TCP. */
+	public interface Connection
+	{
+		InputStream getInputStream() throws IOException;
+
+		OutputStream getOutputStream() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	/** A listening socket, either Bluetooth or TCP. */
+	public interface Acceptor
+	{
+		/** blocks until a connection arrives */
+		Connection accept() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	private static final int MAX_WORKERS = 4;
+	private static final int MAX_QUEUED_CONNECTIONS = 8;
+	private static final long CONNECTION_DEADLINE_MS = 30 * 1000;
+
+	protected final Acceptor listeningSocket;
 	protected final AtomicBoolean running = new AtomicBoolean(true);
 
+	private final ThreadPoolExecutor workers = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 30, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_QUEUED_CONNECTIONS));
+	private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor();
+	private final Set<Connection> activeConnections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
 	protected static final Logger log = LoggerFactory.getLogger(AcceptBluetoothThread.class);
 
-	private AcceptBluetoothThread(final BluetoothServerSocket listeningSocket)
+	private AcceptBluetoothThread(@Nonnull final Acceptor listeningSocket)
 	{
 		this.listeningSocket = listeningSocket;
+
+		workers.allowCoreThreadTimeOut(true);
 	}
 
 	public static abstract class ClassicBluetoothThread extends AcceptBluetoothThread
 	{
 		public ClassicBluetoothThread(@Nonnull final BluetoothAdapter adapter)
 		{
-			super(listen(adapter, Bluetooth.CLASSIC_PAYMENT_PROTOCOL_NAME, Bluetooth.CLASSIC_PAYMENT_PROTOCOL_UUID));
+			this(bluetoothAcceptor(listen(adapter, Bluetooth.CLASSIC_PAYMENT_PROTOCOL_NAME, Bluetooth.CLASSIC_PAYMENT_PROTOCOL_UUID)));
 		}
 
-		@Override
-		public void run()
+		public ClassicBluetoothThread(@Nonnull final Acceptor acceptor)
 		{
-			while (running.get())
-			{
-				BluetoothSocket socket = null;
-				DataInputStream is = null;
-				DataOutputStream os = null;
-
-				try
-				{
-					// start a blocking call, and return only on success or exception
-					socket = listeningSocket.accept();
-
-					log.info("accepted classic bluetooth connection");
+			super(acceptor);
+		}
 
-					is = new DataInputStream(socket.getInputStream());
-					os = new DataOutputStream(socket.getOutputStream());
+		@Override
+		protected void handleConnection(@Nonnull final DataInputStream is, @Nonnull final DataOutputStream os) throws IOException
+		{
+			log.info("accepted classic bluetooth connection");
 
-					boolean ack = true;
+			boolean ack = true;
+			final List<Transaction> txs = new ArrayList<Transaction>();
 
-					final int numMessages = is.readInt();
+			final int numMessages = is.readInt();
 
-					for (int i = 0; i < numMessages; i++)
-					{
-						final int msgLength = is.readInt();
-						final byte[] msg = new byte[msgLength];
-						is.readFully(msg);
-
-						try
-						{
-							final Transaction tx = new Transaction(Constants.NETWORK_PARAMETERS, msg);
-
-							if (!handleTx(tx))
-								ack = false;
-						}
-						catch (final ProtocolException x)
-						{
-							log.info("cannot decode message received via bluetooth", x);
-							ack = false;
-						}
-					}
+			for (int i = 0; i < numMessages; i++)
+			{
+				final int msgLength = is.readInt();
+				final byte[] msg = new byte[msgLength];
+				is.readFully(msg);
 
-					os.writeBoolean(ack);
-				}
-				catch (final IOException x)
+				try
 				{
-					log.info("exception in bluetooth accept loop", x);
+					txs.add(new Transaction(Constants.NETWORK_PARAMETERS, msg));
 				}
-				finally
+				catch (final ProtocolException x)
 				{
-					if (os != null)
-					{
-						try
-						{
-							os.close();
-						}
-						catch (final IOException x)
-						{
-							// swallow
-						}
-					}
-
-					if (is != null)
-					{
-						try
-						{
-							is.close();
-						}
-						catch (final IOException x)
-						{
-							// swallow
-						}
-					}
-
-					if (socket != null)
-					{
-						try
-						{
-							socket.close();
-						}
-						catch (final IOException x)
-						{
-							// swallow
-						}
-					}
+					log.info("cannot decode message received via bluetooth", x);
+					ack = false;
 				}
 			}
+
+			if (!txs.isEmpty() && !handleTxs(txs))
+				ack = false;
+
+			os.writeBoolean(ack);
 		}
 	}
 
@@ -157,90 +154,139 @@ public abstract class AcceptBluetoothThread extends Thread
 	{
 		public PaymentProtocolThread(@Nonnull final BluetoothAdapter adapter)
 		{
-			super(listen(adapter, Bluetooth.BIP70_PAYMENT_PROTOCOL_NAME, Bluetooth.BIP70_PAYMENT_PROTOCOL_UUID));
+			this(bluetoothAcceptor(listen(adapter, Bluetooth.BIP70_PAYMENT_PROTOCOL_NAME, Bluetooth.BIP70_PAYMENT_PROTOCOL_UUID)));
+		}
+
+		public PaymentProtocolThread(@Nonnull final Acceptor acceptor)
+		{
+			super(acceptor);
 		}
 
 		@Override
-		public void run()
+		protected void handleConnection(@Nonnull final DataInputStream is, @Nonnull final DataOutputStream os) throws IOException
 		{
-			while (running.get())
+			log.info("accepted payment protocol bluetooth connection");
+
+			// payers may pipeline several payments on one connection, so keep reading until they hang up
+			Protos.Payment payment;
+			while ((payment = Protos.Payment.parseDelimitedFrom(is)) != null)
 			{
-				BluetoothSocket socket = null;
-				DataInputStream is = null;
-				DataOutputStream os = null;
+				log.debug("got payment message");
 
-				try
-				{
-					// start a blocking call, and return only on success or exception
-					socket = listeningSocket.accept();
+				final List<Transaction> txs = PaymentProtocol.parseTransactionsFromPaymentMessage(Constants.NETWORK_PARAMETERS, payment);
+				final boolean ack = txs.isEmpty() || handleTxs(txs);
 
-					log.info("accepted payment protocol bluetooth connection");
+				final String memo = ack ? "ack" : "nack";
 
-					is = new DataInputStream(socket.getInputStream());
-					os = new DataOutputStream(socket.getOutputStream());
+				log.info("sending {} via bluetooth", memo);
 
-					boolean ack = true;
+				final Protos.PaymentACK paymentAck = PaymentProtocol.createPaymentAck(payment, memo);
+				paymentAck.writeDelimitedTo(os);
+				os.flush();
+			}
+		}
+	}
 
-					final Protos.Payment payment = Protos.Payment.parseDelimitedFrom(is);
+	@Override
+	public void run()
+	{
+		while (running.get())
+		{
+			final Connection connection;
 
-					log.debug("got payment message");
+			try
+			{
+				// start a blocking call, and return only on success or exception
+				connection = listeningSocket.accept();
+			}
+			catch (final IOException x)
+			{
+				if (running.get())
+					log.info("exception in bluetooth accept loop", x);
+
+				continue;
+			}
 
-					for (final Transaction tx : PaymentProtocol.parseTransactionsFromPaymentMessage(Constants.NETWORK_PARAMETERS, payment))
+			try
+			{
+				workers.execute(new Runnable()
+				{
+					@Override
+					public void run()
 					{
-						if (!handleTx(tx))
-							ack = false;
+						process(connection);
 					}
+				});
+			}
+			catch (final RejectedExecutionException x)
+			{
+				log.info("too many pending bluetooth connections, dropping one");
+
+				closeQuietly(connection);
+			}
+		}
+	}
+
+	private void process(@Nonnull final Connection connection)
+	{
+		activeConnections.add(connection);
 
-					final String memo = ack ? "ack" : "nack";
+		// closing the socket is the only reliable way to unblock a stalled read on a bluetooth socket
+		final ScheduledFuture<?> deadline = deadlines.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				log.info("bluetooth connection exceeded deadline of {} ms, closing", CONNECTION_DEADLINE_MS);
+
+				closeQuietly(connection);
+			}
+		}, CONNECTION_DEADLINE_MS, TimeUnit.MILLISECONDS);
+
+		DataInputStream is = null;
+		DataOutputStream os = null;
 
-					log.info("sending {} via bluetooth", memo);
+		try
+		{
+			is = new DataInputStream(connection.getInputStream());
+			os = new DataOutputStream(connection.getOutputStream());
+
+			handleConnection(is, os);
+		}
+		catch (final IOException x)
+		{
+			log.info("exception while processing bluetooth connection", x);
+		}
+		finally
+		{
+			deadline.cancel(false);
+			activeConnections.remove(connection);
 
-					final Protos.PaymentACK paymentAck = PaymentProtocol.createPaymentAck(payment, memo);
-					paymentAck.writeDelimitedTo(os);
+			if (os != null)
+			{
+				try
+				{
+					os.close();
 				}
 				catch (final IOException x)
 				{
-					log.info("exception in bluetooth accept loop", x);
+					// swallow
 				}
-				finally
-				{
-					if (os != null)
-					{
-						try
-						{
-							os.close();
-						}
-						catch (final IOException x)
-						{
-							// swallow
-						}
-					}
-
-					if (is != null)
-					{
-						try
-						{
-							is.close();
-						}
-						catch (final IOException x)
-						{
-							// swallow
-						}
-					}
+			}
 
-					if (socket != null)
-					{
-						try
-						{
-							socket.close();
-						}
-						catch (final IOException x)
-						{
-							// swallow
-						}
-					}
+			if (is != null)
+			{
+				try
+				{
+					is.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
 				}
 			}
+
+			closeQuietly(connection);
 		}
 	}
 
@@ -256,6 +302,24 @@ public abstract class AcceptBluetoothThread extends Thread
 		{
 			// swallow
 		}
+
+		workers.shutdownNow();
+		deadlines.shutdownNow();
+
+		for (final Connection connection : activeConnections)
+			closeQuietly(connection);
+	}
+
+	private static void closeQuietly(@Nonnull final Connection connection)
+	{
+		try
+		{
+			connection.close();
+		}
+		catch (final IOException x)
+		{
+			// swallow
+		}
 	}
 
 	protected static BluetoothServerSocket listen(final BluetoothAdapter adapter, final String serviceName, final UUID serviceUuid)
@@ -270,5 +334,92 @@ public abstract class AcceptBluetoothThread extends Thread
 		}
 	}
 
-	protected abstract boolean handleTx(@Nonnull Transaction tx);
+	public static Acceptor bluetoothAcceptor(@Nonnull final BluetoothServerSocket serverSocket)
+	{
+		return new Acceptor()
+		{
+			@Override
+			public Connection accept() throws IOException
+			{
+				final BluetoothSocket socket = serverSocket.accept();
+
+				return new Connection()
+				{
+					@Override
+					public InputStream getInputStream() throws IOException
+					{
+						return socket.getInputStream();
+					}
+
+					@Override
+					public OutputStream getOutputStream() throws IOException
+					{
+						return socket.getOutputStream();
+					}
+
+					@Override
+					public void close() throws IOException
+					{
+						socket.close();
+					}
+				};
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				serverSocket.close();
+			}
+		};
+	}
+
+	/** For load testing the pipeline over local TCP sockets, without Bluetooth hardware. */
+	public static Acceptor tcpAcceptor(@Nonnull final ServerSocket serverSocket)
+	{
+		return new Acceptor()
+		{
+			@Override
+			public Connection accept() throws IOException
+			{
+				final Socket socket = serverSocket.accept();
+
+				return new Connection()
+				{
+					@Override
+					public InputStream getInputStream() throws IOException
+					{
+						return socket.getInputStream();
+					}
+
+					@Override
+					public OutputStream getOutputStream() throws IOException
+					{
+						return socket.getOutputStream();
+					}
+
+					@Override
+					public void close() throws IOException
+					{
+						socket.close();
+					}
+				};
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				serverSocket.close();
+			}
+		};
+	}
+
+	/** will be called back on a worker thread, once per connection */
+	protected abstract void handleConnection(@Nonnull DataInputStream is, @Nonnull DataOutputStream os) throws IOException;
+
+	/**
+	 * will be called back on a worker thread, with all transactions of one connection
+	 *
+	 * @return true if all transactions were accepted
+	 */
+	protected abstract boolean handleTxs(@Nonnull List<Transaction> txs);
 }
@@ -17,15 +17,13 @@
 
 package com.capricoin.capricoin_android_wallet.offline;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -33,18 +31,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.os.Handler;
 import android.os.Looper;
 
-import com.capricoinj.protocols.payments.PaymentProtocol;
 import com.capricoinj.protocols.payments.Protos;
-import com.capricoin.capricoin_android_wallet.Constants;
-import com.capricoin.capricoin_android_wallet.util.Bluetooth;
 import com.capricoin.capricoin_android_wallet.R;
 
 /**
+ * Sends payments to one merchant. The transport is kept across sends, so that payments queued while another one is on its way go out
+ * together on the same connection, and later ones reuse it. Call {@link #close()} when done with the merchant.
+ *
  * @author Andreas Schildbach
  */
 public abstract class DirectPaymentTask
@@ -53,6 +49,10 @@ public abstract class DirectPaymentTask
 	private final Handler callbackHandler;
 	private final ResultCallback resultCallback;
 
+	private final LinkedList<Protos.Payment> queue = new LinkedList<Protos.Payment>();
+	// only touched on the background thread
+	private PaymentTransport transport = null;
+
 	private static final Logger log = LoggerFactory.getLogger(DirectPaymentTask.class);
 
 	public interface ResultCallback
@@ -72,7 +72,7 @@ public abstract class DirectPaymentTask
 	public final static class HttpPaymentTask extends DirectPaymentTask
 	{
 		private final String url;
-		@CheckForNull
+		@Nullable
 		private final String userAgent;
 
 		public HttpPaymentTask(@Nonnull final Handler backgroundHandler, @Nonnull final ResultCallback resultCallback, @Nonnull final String url,
@@ -85,103 +85,9 @@ public abstract class DirectPaymentTask
 		}
 
 		@Override
-		public void send(@Nonnull final Protos.Payment payment)
+		protected PaymentTransport createTransport()
 		{
-			super.backgroundHandler.post(new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					log.info("trying to send tx to {}", url);
-
-					HttpURLConnection connection = null;
-					OutputStream os = null;
-					InputStream is = null;
-
-					try
-					{
-						connection = (HttpURLConnection) new URL(url).openConnection();
-
-						connection.setInstanceFollowRedirects(false);
-						connection.setConnectTimeout(Constants.HTTP_TIMEOUT_MS);
-						connection.setReadTimeout(Constants.HTTP_TIMEOUT_MS);
-						connection.setUseCaches(false);
-						connection.setDoInput(true);
-						connection.setDoOutput(true);
-
-						connection.setRequestMethod("POST");
-						connection.setRequestProperty("Content-Type", PaymentProtocol.MIMETYPE_PAYMENT);
-						connection.setRequestProperty("Accept", PaymentProtocol.MIMETYPE_PAYMENTACK);
-						connection.setRequestProperty("Content-Length", Integer.toString(payment.getSerializedSize()));
-						if (userAgent != null)
-							connection.addRequestProperty("User-Agent", userAgent);
-						connection.connect();
-
-						os = connection.getOutputStream();
-						payment.writeTo(os);
-						os.flush();
-
-						log.info("tx sent via http");
-
-						final int responseCode = connection.getResponseCode();
-						if (responseCode == HttpURLConnection.HTTP_OK)
-						{
-							is = connection.getInputStream();
-
-							final Protos.PaymentACK paymentAck = Protos.PaymentACK.parseFrom(is);
-
-							final boolean ack = !"nack".equals(PaymentProtocol.parsePaymentAck(paymentAck).getMemo());
-
-							log.info("received {} via http", ack ? "ack" : "nack");
-
-							onResult(ack);
-						}
-						else
-						{
-							final String responseMessage = connection.getResponseMessage();
-
-							log.info("got http error {}: {}", responseCode, responseMessage);
-
-							onFail(R.string.error_http, responseCode, responseMessage);
-						}
-					}
-					catch (final IOException x)
-					{
-						log.info("problem sending", x);
-
-						onFail(R.string.error_io, x.getMessage());
-					}
-					finally
-					{
-						if (os != null)
-						{
-							try
-							{
-								os.close();
-							}
-							catch (final IOException x)
-							{
-								// swallow
-							}
-						}
-
-						if (is != null)
-						{
-							try
-							{
-								is.close();
-							}
-							catch (final IOException x)
-							{
-								// swallow
-							}
-						}
-
-						if (connection != null)
-							connection.disconnect();
-					}
-				}
-			});
+			return new HttpPaymentTransport(url, userAgent);
 		}
 	}
 
@@ -200,97 +106,147 @@ public abstract class DirectPaymentTask
 		}
 
 		@Override
-		public void send(@Nonnull final Protos.Payment payment)
+		protected PaymentTransport createTransport()
+		{
+			return new StreamPaymentTransport.BluetoothPaymentTransport(bluetoothAdapter, bluetoothMac);
+		}
+	}
+
+	/** Talks to a payment protocol endpoint on a TCP socket, e.g. a local stand-in for a Bluetooth merchant. */
+	public final static class TcpPaymentTask extends DirectPaymentTask
+	{
+		private final InetSocketAddress address;
+
+		public TcpPaymentTask(@Nonnull final Handler backgroundHandler, @Nonnull final ResultCallback resultCallback,
+				@Nonnull final InetSocketAddress address)
+		{
+			super(backgroundHandler, resultCallback);
+
+			this.address = address;
+		}
+
+		@Override
+		protected PaymentTransport createTransport()
+		{
+			return new StreamPaymentTransport.TcpPaymentTransport(address);
+		}
+	}
+
+	protected abstract PaymentTransport createTransport();
+
+	public void send(@Nonnull final Protos.Payment payment)
+	{
+		send(Collections.singletonList(payment));
+	}
+
+	/**
+	 * Queues payments for the merchant. Everything queued by the time the background thread comes around is sent in one go. The result
+	 * callback is invoked once per go, with ack only if all of its payments have been acked.
+	 */
+	public void send(@Nonnull final List<Protos.Payment> payments)
+	{
+		synchronized (queue)
+		{
+			queue.addAll(payments);
+		}
+
+		backgroundHandler.post(drainRunnable);
+	}
+
+	/**
+	 * Releases the connection to the merchant once everything queued has been sent.
+	 */
+	public void close()
+	{
+		backgroundHandler.post(new Runnable()
 		{
-			super.backgroundHandler.post(new Runnable()
+			@Override
+			public void run()
 			{
-				@Override
-				public void run()
-				{
-					log.info("trying to send tx via bluetooth {}", bluetoothMac);
-
-					if (payment.getTransactionsCount() != 1)
-						throw new IllegalArgumentException("wrong transactions count");
-
-					final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(Bluetooth.decompressMac(bluetoothMac));
-
-					BluetoothSocket socket = null;
-					DataOutputStream os = null;
-					DataInputStream is = null;
-
-					try
-					{
-						socket = device.createInsecureRfcommSocketToServiceRecord(Bluetooth.BIP70_PAYMENT_PROTOCOL_UUID);
-						socket.connect();
-
-						log.info("connected to payment protocol {}", bluetoothMac);
-
-						is = new DataInputStream(socket.getInputStream());
-						os = new DataOutputStream(socket.getOutputStream());
-
-						payment.writeDelimitedTo(os);
-						os.flush();
-
-						log.info("tx sent via bluetooth");
-
-						final Protos.PaymentACK paymentAck = Protos.PaymentACK.parseDelimitedFrom(is);
-
-						final boolean ack = "ack".equals(PaymentProtocol.parsePaymentAck(paymentAck).getMemo());
-
-						log.info("received {} via bluetooth", ack ? "ack" : "nack");
-
-						onResult(ack);
-					}
-					catch (final IOException x)
-					{
-						log.info("problem sending", x);
-
-						onFail(R.string.error_io, x.getMessage());
-					}
-					finally
-					{
-						if (os != null)
-						{
-							try
-							{
-								os.close();
-							}
-							catch (final IOException x)
-							{
-								// swallow
-							}
-						}
-
-						if (is != null)
-						{
-							try
-							{
-								is.close();
-							}
-							catch (final IOException x)
-							{
-								// swallow
-							}
-						}
-
-						if (socket != null)
-						{
-							try
-							{
-								socket.close();
-							}
-							catch (final IOException x)
-							{
-								// swallow
-							}
-						}
-					}
-				}
-			});
+				closeTransport();
+			}
+		});
+	}
+
+	private final Runnable drainRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final List<Protos.Payment> payments;
+			synchronized (queue)
+			{
+				if (queue.isEmpty())
+					return;
+
+				payments = new ArrayList<Protos.Payment>(queue);
+				queue.clear();
+			}
+
+			try
+			{
+				final List<Boolean> acks = sendOnTransport(payments);
+
+				onResult(!acks.contains(Boolean.FALSE));
+			}
+			catch (final PaymentTransport.HttpException x)
+			{
+				onFail(R.string.error_http, x.responseCode, x.responseMessage);
+			}
+			catch (final IOException x)
+			{
+				log.info("problem sending", x);
+
+				onFail(R.string.error_io, x.getMessage());
+			}
+		}
+	};
+
+	private List<Boolean> sendOnTransport(final List<Protos.Payment> payments) throws IOException
+	{
+		final boolean reused = transport != null;
+		if (!reused)
+			transport = createTransport();
+
+		try
+		{
+			return transport.send(payments);
+		}
+		catch (final PaymentTransport.HttpException x)
+		{
+			throw x;
+		}
+		catch (final IOException x)
+		{
+			closeTransport();
+
+			// the merchant may have hung up on a connection we kept, so try once more on a fresh one
+			if (!reused)
+				throw x;
+
+			log.info("kept connection failed, reconnecting", x);
+
+			transport = createTransport();
+			try
+			{
+				return transport.send(payments);
+			}
+			catch (final IOException x2)
+			{
+				closeTransport();
+				throw x2;
+			}
 		}
 	}
 
-	public abstract void send(@Nonnull Protos.Payment payment);
+	private void closeTransport()
+	{
+		if (transport != null)
+		{
+			transport.close();
+			transport = null;
+		}
+	}
 
 	protected void onResult(final boolean ack)
 	{
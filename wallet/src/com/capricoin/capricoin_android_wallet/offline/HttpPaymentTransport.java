@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.offline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.capricoinj.protocols.payments.PaymentProtocol;
+import com.capricoinj.protocols.payments.Protos;
+import com.capricoin.capricoin_android_wallet.Constants;
+
+/**
+ * Posts payments to a BIP70 payment URL. Connections are not torn down after each request, so that the platform can keep them alive
+ * and reuse them for the next payment to the same merchant.
+ *
+ * @author Andreas Schildbach
+ */
+public final class HttpPaymentTransport implements PaymentTransport
+{
+	private final String url;
+	@CheckForNull
+	private final String userAgent;
+
+	private static final Logger log = LoggerFactory.getLogger(HttpPaymentTransport.class);
+
+	public HttpPaymentTransport(@Nonnull final String url, @Nullable final String userAgent)
+	{
+		this.url = url;
+		this.userAgent = userAgent;
+	}
+
+	@Override
+	public List<Boolean> send(@Nonnull final List<Protos.Payment> payments) throws IOException
+	{
+		final List<Boolean> acks = new ArrayList<Boolean>(payments.size());
+
+		for (final Protos.Payment payment : payments)
+			acks.add(send(payment));
+
+		return acks;
+	}
+
+	private boolean send(@Nonnull final Protos.Payment payment) throws IOException
+	{
+		log.info("trying to send tx to {}", url);
+
+		final long start = System.currentTimeMillis();
+
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		OutputStream os = null;
+		InputStream is = null;
+
+		try
+		{
+			connection.setInstanceFollowRedirects(false);
+			connection.setConnectTimeout(Constants.HTTP_TIMEOUT_MS);
+			connection.setReadTimeout(Constants.HTTP_TIMEOUT_MS);
+			connection.setUseCaches(false);
+			connection.setDoInput(true);
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(payment.getSerializedSize());
+
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", PaymentProtocol.MIMETYPE_PAYMENT);
+			connection.setRequestProperty("Accept", PaymentProtocol.MIMETYPE_PAYMENTACK);
+			connection.setRequestProperty("Connection", "keep-alive");
+			if (userAgent != null)
+				connection.addRequestProperty("User-Agent", userAgent);
+			connection.connect();
+
+			final long connected = System.currentTimeMillis();
+
+			os = connection.getOutputStream();
+			payment.writeTo(os);
+			os.flush();
+
+			final long written = System.currentTimeMillis();
+
+			log.info("tx sent via http");
+
+			final int responseCode = connection.getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_OK)
+			{
+				is = connection.getInputStream();
+
+				final Protos.PaymentACK paymentAck = Protos.PaymentACK.parseFrom(is);
+
+				final boolean ack = !"nack".equals(PaymentProtocol.parsePaymentAck(paymentAck).getMemo());
+
+				log.info("received {} via http, connect {} ms, write {} ms, ack {} ms", ack ? "ack" : "nack", connected - start, written
+						- connected, System.currentTimeMillis() - written);
+
+				return ack;
+			}
+			else
+			{
+				final String responseMessage = connection.getResponseMessage();
+
+				log.info("got http error {}: {}", responseCode, responseMessage);
+
+				// drain the error body, so the connection can go back to the pool
+				is = connection.getErrorStream();
+				if (is != null)
+					while (is.read() != -1)
+						;
+
+				throw new HttpException(responseCode, responseMessage);
+			}
+		}
+		finally
+		{
+			// closing the streams without disconnecting keeps the connection alive for reuse
+			if (os != null)
+			{
+				try
+				{
+					os.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+
+			if (is != null)
+			{
+				try
+				{
+					is.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		// connections are pooled by the platform
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.offline;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.capricoinj.protocols.payments.Protos;
+
+/**
+ * Carries BIP70 payment messages to a merchant and brings back the acknowledgements.
+ *
+ * @author Andreas Schildbach
+ */
+public interface PaymentTransport
+{
+	/**
+	 * Sends all payments to the same merchant, reusing one connection where the transport allows it. Blocks until all acknowledgements
+	 * have arrived.
+	 *
+	 * @return one ack flag per payment, in the same order
+	 */
+	List<Boolean> send(@Nonnull List<Protos.Payment> payments) throws IOException;
+
+	/** releases the connection, if one is still open */
+	void close();
+
+	public static final class HttpException extends IOException
+	{
+		public final int responseCode;
+		public final String responseMessage;
+
+		public HttpException(final int responseCode, final String responseMessage)
+		{
+			super("http error " + responseCode + ": " + responseMessage);
+
+			this.responseCode = responseCode;
+			this.responseMessage = responseMessage;
+		}
+	}
+}
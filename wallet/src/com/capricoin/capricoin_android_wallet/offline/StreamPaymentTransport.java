@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.offline;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import com.capricoinj.protocols.payments.PaymentProtocol;
+import com.capricoinj.protocols.payments.Protos;
+import com.capricoin.capricoin_android_wallet.Constants;
+import com.capricoin.capricoin_android_wallet.util.Bluetooth;
+
+/**
+ * Sends length delimited payment messages over a stream socket. All payments are written before the first acknowledgement is read, so
+ * several payments to the same merchant cost a single round trip.
+ *
+ * @author Andreas Schildbach
+ */
+public abstract class StreamPaymentTransport implements PaymentTransport
+{
+	private DataInputStream is;
+	private DataOutputStream os;
+
+	private static final Logger log = LoggerFactory.getLogger(StreamPaymentTransport.class);
+
+	public final static class BluetoothPaymentTransport extends StreamPaymentTransport
+	{
+		private final BluetoothAdapter bluetoothAdapter;
+		private final String bluetoothMac;
+		private BluetoothSocket socket;
+
+		public BluetoothPaymentTransport(@Nonnull final BluetoothAdapter bluetoothAdapter, @Nonnull final String bluetoothMac)
+		{
+			this.bluetoothAdapter = bluetoothAdapter;
+			this.bluetoothMac = bluetoothMac;
+		}
+
+		@Override
+		public List<Boolean> send(@Nonnull final List<Protos.Payment> payments) throws IOException
+		{
+			for (final Protos.Payment payment : payments)
+				if (payment.getTransactionsCount() != 1)
+					throw new IllegalArgumentException("wrong transactions count");
+
+			return super.send(payments);
+		}
+
+		@Override
+		protected void connect() throws IOException
+		{
+			log.info("trying to send tx via bluetooth {}", bluetoothMac);
+
+			final BluetoothDevice device = bluetoothAdapter.getRemoteDevice(Bluetooth.decompressMac(bluetoothMac));
+			socket = device.createInsecureRfcommSocketToServiceRecord(Bluetooth.BIP70_PAYMENT_PROTOCOL_UUID);
+			socket.connect();
+
+			log.info("connected to payment protocol {}", bluetoothMac);
+
+			open(socket.getInputStream(), socket.getOutputStream());
+		}
+
+		@Override
+		protected void disconnect() throws IOException
+		{
+			if (socket != null)
+				socket.close();
+		}
+
+		@Override
+		protected String name()
+		{
+			return "bluetooth";
+		}
+	}
+
+	/** Speaks the same protocol as {@link BluetoothPaymentTransport}, over TCP. Used for local testing and benchmarking. */
+	public final static class TcpPaymentTransport extends StreamPaymentTransport
+	{
+		private final InetSocketAddress address;
+		private Socket socket;
+
+		public TcpPaymentTransport(@Nonnull final InetSocketAddress address)
+		{
+			this.address = address;
+		}
+
+		@Override
+		protected void connect() throws IOException
+		{
+			socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(Constants.HTTP_TIMEOUT_MS);
+			socket.connect(address, Constants.HTTP_TIMEOUT_MS);
+
+			open(socket.getInputStream(), socket.getOutputStream());
+		}
+
+		@Override
+		protected void disconnect() throws IOException
+		{
+			if (socket != null)
+				socket.close();
+		}
+
+		@Override
+		protected String name()
+		{
+			return "tcp " + address;
+		}
+	}
+
+	protected abstract void connect() throws IOException;
+
+	protected abstract void disconnect() throws IOException;
+
+	protected abstract String name();
+
+	protected final void open(@Nonnull final InputStream is, @Nonnull final OutputStream os)
+	{
+		this.is = new DataInputStream(is);
+		this.os = new DataOutputStream(os);
+	}
+
+	@Override
+	public List<Boolean> send(@Nonnull final List<Protos.Payment> payments) throws IOException
+	{
+		final long start = System.currentTimeMillis();
+
+		if (os == null)
+			connect();
+
+		final long connected = System.currentTimeMillis();
+
+		for (final Protos.Payment payment : payments)
+			payment.writeDelimitedTo(os);
+		os.flush();
+
+		final long written = System.currentTimeMillis();
+
+		log.info("{} tx sent via {}", payments.size(), name());
+
+		final List<Boolean> acks = new ArrayList<Boolean>(payments.size());
+
+		for (int i = 0; i < payments.size(); i++)
+		{
+			final Protos.PaymentACK paymentAck = Protos.PaymentACK.parseDelimitedFrom(is);
+			if (paymentAck == null)
+				throw new EOFException("connection closed after " + i + " of " + payments.size() + " acks");
+
+			final boolean ack = "ack".equals(PaymentProtocol.parsePaymentAck(paymentAck).getMemo());
+
+			log.info("received {} via {}", ack ? "ack" : "nack", name());
+
+			acks.add(ack);
+		}
+
+		log.info("{} payments via {}: connect {} ms, write {} ms, ack {} ms", payments.size(), name(), connected - start, written - connected,
+				System.currentTimeMillis() - written);
+
+		return acks;
+	}
+
+	@Override
+	public void close()
+	{
+		if (os != null)
+		{
+			try
+			{
+				os.close();
+			}
+			catch (final IOException x)
+			{
+				// swallow
+			}
+		}
+
+		if (is != null)
+		{
+			try
+			{
+				is.close();
+			}
+			catch (final IOException x)
+			{
+				// swallow
+			}
+		}
+
+		try
+		{
+			disconnect();
+		}
+		catch (final IOException x)
+		{
+			// swallow
+		}
+
+		os = null;
+		is = null;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import javax.annotation.Nonnull;
+
+import android.text.format.DateUtils;
+
+/**
+ * Ring buffer of block and transaction activity in one-minute buckets, covering the last hour. Decides when the service is idling and
+ * measures how fast new blocks arrive at the chain tip.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ActivityTracker
+{
+	private static final int NUM_MINUTES = 60;
+	private static final int MIN_COLLECT_HISTORY_MIN = 2;
+	private static final int IDLE_BLOCK_TIMEOUT_MIN = 2;
+	private static final int IDLE_TRANSACTION_TIMEOUT_MIN = 9;
+
+	private final SyncScheduler.Clock clock;
+	private final long startedAtMinute;
+	private final long[] bucketMinutes = new long[NUM_MINUTES];
+	private final int[] bucketBlocks = new int[NUM_MINUTES];
+	private final int[] bucketTipBlocks = new int[NUM_MINUTES];
+	private final int[] bucketTransactions = new int[NUM_MINUTES];
+
+	public ActivityTracker(@Nonnull final SyncScheduler.Clock clock)
+	{
+		this.clock = clock;
+		this.startedAtMinute = currentMinute();
+
+		for (int i = 0; i < NUM_MINUTES; i++)
+			bucketMinutes[i] = -1;
+	}
+
+	/**
+	 * @param atTip
+	 *            true if the block is a new tip, rather than one of a download catching up
+	 */
+	public synchronized void onBlock(final boolean atTip)
+	{
+		final int index = bucket(currentMinute());
+		bucketBlocks[index]++;
+		if (atTip)
+			bucketTipBlocks[index]++;
+	}
+
+	public synchronized void onTransaction()
+	{
+		bucketTransactions[bucket(currentMinute())]++;
+	}
+
+	/**
+	 * @return true if there has been neither a block for a few minutes nor a transaction for several minutes, and the tracker has been
+	 *         running long enough to tell
+	 */
+	public synchronized boolean isIdle()
+	{
+		final long minute = currentMinute();
+
+		if (minute - startedAtMinute < MIN_COLLECT_HISTORY_MIN)
+			return false;
+
+		for (int ago = 0; ago <= IDLE_TRANSACTION_TIMEOUT_MIN; ago++)
+		{
+			final int index = index(minute - ago);
+			if (bucketMinutes[index] != minute - ago)
+				continue;
+
+			if (ago <= IDLE_BLOCK_TIMEOUT_MIN && bucketBlocks[index] > 0)
+				return false;
+			if (bucketTransactions[index] > 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return new blocks at the tip per hour over the time tracked, or -1 if tracked for too short a time to tell
+	 */
+	public synchronized float getTipBlocksPerHour()
+	{
+		final long minute = currentMinute();
+		final long numMinutes = Math.min(minute - startedAtMinute, NUM_MINUTES);
+
+		if (numMinutes < IDLE_TRANSACTION_TIMEOUT_MIN)
+			return -1;
+
+		int blocks = 0;
+		for (int ago = 0; ago < numMinutes; ago++)
+		{
+			final int index = index(minute - ago);
+			if (bucketMinutes[index] == minute - ago)
+				blocks += bucketTipBlocks[index];
+		}
+
+		return blocks * 60f / numMinutes;
+	}
+
+	/** recent history as transactions/blocks per minute, newest first */
+	@Override
+	public synchronized String toString()
+	{
+		final long minute = currentMinute();
+		final StringBuilder builder = new StringBuilder();
+
+		for (int ago = 0; ago <= IDLE_TRANSACTION_TIMEOUT_MIN && minute - ago >= startedAtMinute; ago++)
+		{
+			final int index = index(minute - ago);
+			final boolean current = bucketMinutes[index] == minute - ago;
+
+			if (builder.length() > 0)
+				builder.append(", ");
+			builder.append(current ? bucketTransactions[index] : 0).append('/').append(current ? bucketBlocks[index] : 0);
+		}
+
+		return builder.toString();
+	}
+
+	private long currentMinute()
+	{
+		return clock.currentTimeMillis() / DateUtils.MINUTE_IN_MILLIS;
+	}
+
+	private static int index(final long minute)
+	{
+		return (int) (minute % NUM_MINUTES);
+	}
+
+	/** @return index of the bucket for the given minute, cleared if it still held an older minute */
+	private int bucket(final long minute)
+	{
+		final int index = index(minute);
+
+		if (bucketMinutes[index] != minute)
+		{
+			bucketMinutes[index] = minute;
+			bucketBlocks[index] = 0;
+			bucketTipBlocks[index] = 0;
+			bucketTransactions[index] = 0;
+		}
+
+		return index;
+	}
+}
@@ -17,24 +17,30 @@
 
 package com.capricoin.capricoin_android_wallet.service;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.CheckForNull;
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 import com.capricoinj.core.AbstractPeerEventListener;
+import com.capricoinj.core.AbstractWalletEventListener;
 import com.capricoinj.core.Address;
 import com.capricoinj.core.Block;
 import com.capricoinj.core.Coin;
@@ -47,12 +53,10 @@ import com.capricoinj.core.Transaction;
 import com.capricoinj.core.TransactionConfidence.ConfidenceType;
 import com.capricoinj.core.Wallet;
 import com.capricoinj.core.WalletEventListener;
-import com.capricoinj.net.discovery.DnsDiscovery;
 import com.capricoinj.net.discovery.PeerDBDiscovery;
 import com.capricoinj.net.discovery.PeerDiscovery;
 import com.capricoinj.net.discovery.PeerDiscoveryException;
 import com.capricoinj.store.BlockStoreException;
-import com.capricoinj.utils.MonetaryFormat;
 import com.capricoinj.utils.Threading;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,17 +75,14 @@ import android.content.Loader.OnLoadCompleteListener;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.net.ConnectivityManager;
-import android.net.Uri;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.format.DateUtils;
 
 import com.capricoin.capricoin_android_wallet.Constants;
-import com.capricoin.capricoin_android_wallet.AddressBookProvider;
 import com.capricoin.capricoin_android_wallet.Configuration;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.WalletBalanceWidgetProvider;
@@ -89,7 +90,8 @@ import com.capricoin.capricoin_android_wallet.ui.BlockchainData;
 import com.capricoin.capricoin_android_wallet.ui.BlockchainLoader;
 import com.capricoin.capricoin_android_wallet.ui.WalletActivity;
 import com.capricoin.capricoin_android_wallet.util.CrashReporter;
-import com.capricoin.capricoin_android_wallet.util.ThrottlingWalletChangeListener;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
+import com.capricoin.capricoin_android_wallet.util.WalletEventHub;
 import com.capricoin.capricoin_android_wallet.util.WalletUtils;
 import com.capricoin.capricoin_android_wallet.R;
 
@@ -118,13 +120,19 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	private PeerConnectivityListener peerConnectivityListener;
 	private NotificationManager nm;
 	private static final int NOTIFICATION_ID_CONNECTED = 0;
-	private static final int NOTIFICATION_ID_COINS_RECEIVED = 1;
 
 	private final Set<BlockchainState.Impediment> impediments = EnumSet.noneOf(BlockchainState.Impediment.class);
-	private int notificationCount = 0;
-	private Coin notificationAccumulatedAmount = Coin.ZERO;
-	private final List<Address> notificationAddresses = new LinkedList<Address>();
-	private AtomicInteger transactionsReceived = new AtomicInteger();
+	private final SyncTelemetry syncTelemetry = new SyncTelemetry();
+	private final RecentBlocks recentBlocks = new RecentBlocks(RECENT_BLOCKS_CAPACITY);
+	@CheckForNull
+	private PeerCountController peerCountController;
+	private volatile int trimMemoryLevel = 0;
+	private PeerStats peerStats;
+	private SeedCache seedCache;
+	private BroadcastQueue broadcastQueue;
+	private volatile long trimMemoryAt = 0;
+	private CoinsReceivedNotifier coinsReceivedNotifier;
+	private ActivityTracker activityTracker;
 	private long serviceCreatedAt;
 	private boolean resetBlockchainOnShutdown = false;
         
@@ -132,28 +140,31 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
             "seed.capricoinjexplorer.info"
         };
 
-	private static final int MIN_COLLECT_HISTORY = 2;
-	private static final int IDLE_BLOCK_TIMEOUT_MIN = 2;
-	private static final int IDLE_TRANSACTION_TIMEOUT_MIN = 9;
-	private static final int MAX_HISTORY_SIZE = Math.max(IDLE_TRANSACTION_TIMEOUT_MIN, IDLE_BLOCK_TIMEOUT_MIN);
 	private static final long APPWIDGET_THROTTLE_MS = DateUtils.SECOND_IN_MILLIS;
 	private static final long BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS = DateUtils.SECOND_IN_MILLIS;
+	private static final long TRIM_MEMORY_RELEVANCE_MS = 5 * DateUtils.MINUTE_IN_MILLIS;
+	private static final int MAX_DISCOVERY_CANDIDATES = 16;
+	private static final long PEER_CONNECT_WINDOW_MS = 2 * Constants.PEER_TIMEOUT_MS;
+	private static final int RECENT_BLOCKS_CAPACITY = 64;
 
 	private static final Logger log = LoggerFactory.getLogger(BlockchainServiceImpl.class);
 
-	private final WalletEventListener walletEventListener = new ThrottlingWalletChangeListener(APPWIDGET_THROTTLE_MS)
+	private final WalletEventHub.Subscriber widgetUpdater = new WalletEventHub.Subscriber()
 	{
 		@Override
-		public void onThrottledWalletChanged()
+		public void onWalletChanged(final int changes)
 		{
                     assertTrue(config != null);
 			WalletBalanceWidgetProvider.updateWidgets(BlockchainServiceImpl.this, application.getWallet());
 		}
+	};
 
+	private final WalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
 		@Override
 		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance, final Coin newBalance)
 		{
-			transactionsReceived.incrementAndGet();
+			activityTracker.onTransaction();
 
 			final int bestChainHeight = getBestChainHeight();
 
@@ -171,7 +182,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 					final boolean isReplayedTx = confidenceType == ConfidenceType.BUILDING && replaying;
 
 					if (isReceived && !isReplayedTx)
-						notifyCoinsReceived(from, amount);
+						coinsReceivedNotifier.onCoinsReceived(from, amount);
 				}
 			});
 		}
@@ -179,7 +190,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		@Override
 		public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance, final Coin newBalance)
 		{
-			transactionsReceived.incrementAndGet();
+			activityTracker.onTransaction();
 		}
 	};
 	
@@ -187,48 +198,6 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		return bcd == null ? config.getBestChainHeightEver() : bcd.blockChain.getBestChainHeight();
 	}
 
-	private void notifyCoinsReceived(@Nullable final Address from, @Nonnull final Coin amount)
-	{
-		if (notificationCount == 1)
-			nm.cancel(NOTIFICATION_ID_COINS_RECEIVED);
-
-		notificationCount++;
-		notificationAccumulatedAmount = notificationAccumulatedAmount.add(amount);
-		if (from != null && !notificationAddresses.contains(from))
-			notificationAddresses.add(from);
-
-		final MonetaryFormat ppcFormat = config.getFormat();
-
-		final String packageFlavor = application.applicationPackageFlavor();
-		final String msgSuffix = packageFlavor != null ? " [" + packageFlavor + "]" : "";
-
-		final String tickerMsg = getString(R.string.notification_coins_received_msg, ppcFormat.format(amount)) + msgSuffix;
-		final String msg = getString(R.string.notification_coins_received_msg, ppcFormat.format(notificationAccumulatedAmount)) + msgSuffix;
-
-		final StringBuilder text = new StringBuilder();
-		for (final Address address : notificationAddresses)
-		{
-			if (text.length() > 0)
-				text.append(", ");
-
-			final String addressStr = address.toString();
-			final String label = AddressBookProvider.resolveLabel(getApplicationContext(), addressStr);
-			text.append(label != null ? label : addressStr);
-		}
-
-		final Notification.Builder notification = new Notification.Builder(this);
-		notification.setSmallIcon(R.drawable.stat_notify_received);
-		notification.setTicker(tickerMsg);
-		notification.setContentTitle(msg);
-		if (text.length() > 0)
-			notification.setContentText(text);
-		notification.setContentIntent(PendingIntent.getActivity(this, 0, new Intent(this, WalletActivity.class), 0));
-		notification.setNumber(notificationCount == 1 ? 0 : notificationCount);
-		notification.setWhen(System.currentTimeMillis());
-		notification.setSound(Uri.parse("android.resource://" + getPackageName() + "/" + R.raw.coins_received));
-		nm.notify(NOTIFICATION_ID_COINS_RECEIVED, notification.getNotification());
-	}
-
 	private final class PeerConnectivityListener extends AbstractPeerEventListener implements OnSharedPreferenceChangeListener
 	{
 		private int peerCount;
@@ -252,6 +221,9 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		public void onPeerConnected(final Peer peer, final int peerCount)
 		{
 			this.peerCount = peerCount;
+			peerStats.onConnected(peer.getAddress().toSocketAddress(), System.currentTimeMillis(), PEER_CONNECT_WINDOW_MS);
+			Metrics.gauge("network.peers").set(peerCount);
+			Metrics.counter("network.peer_connects").inc();
 			changed(peerCount);
 		}
 
@@ -259,6 +231,10 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		public void onPeerDisconnected(final Peer peer, final int peerCount)
 		{
 			this.peerCount = peerCount;
+			// also called by the peer group for connection attempts that failed
+			peerStats.onDisconnected(peer.getAddress().toSocketAddress(), peer.getPingTime(), System.currentTimeMillis());
+			Metrics.gauge("network.peers").set(peerCount);
+			Metrics.counter("network.peer_disconnects").inc();
 			changed(peerCount);
 		}
 
@@ -300,7 +276,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 					}
 
 					// send broadcast
-					broadcastPeerState(numPeers);
+					publishPeerState(numPeers);
 				}
 			});
 		}
@@ -313,11 +289,22 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		@Override
 		public void onBlocksDownloaded(final Peer peer, final Block block, final int blocksLeft)
 		{
-			config.maybeIncrementBestChainHeightEver(bcd.blockChain.getChainHead().getHeight());
-
-			delayHandler.removeCallbacksAndMessages(null);
+			final StoredBlock chainHead = bcd.blockChain.getChainHead();
+			final int chainHeight = chainHead.getHeight();
+			config.maybeIncrementBestChainHeightEver(chainHeight);
+			updateRecentBlocks(chainHead);
 
 			final long now = System.currentTimeMillis();
+			peerStats.onBlockServed(peer.getAddress().toSocketAddress());
+			activityTracker.onBlock(blocksLeft == 0);
+			syncTelemetry.onBlockDownloaded(now, block.getOptimalEncodingMessageSize(), blocksLeft);
+
+			Metrics.counter("blockchain.blocks_downloaded").inc();
+			Metrics.gauge("blockchain.blocks_left").set(blocksLeft);
+			Metrics.gauge("blockchain.height").set(chainHeight);
+			Metrics.gauge("blockchain.bytes_per_second").set(syncTelemetry.getBytesPerSecond(now));
+
+			delayHandler.removeCallbacksAndMessages(null);
 
 			if (now - lastMessageTime.get() > BLOCKCHAIN_STATE_BROADCAST_THROTTLE_MS)
 				delayHandler.post(runnable);
@@ -332,7 +319,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			{
 				lastMessageTime.set(System.currentTimeMillis());
 
-				broadcastBlockchainState();
+				publishBlockchainState();
 			}
 		};
 	};
@@ -371,6 +358,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 			final boolean connectTrustedPeerOnly = hasTrustedPeer && config.getTrustedPeerOnly();
 			peerGroup.setMaxConnections(connectTrustedPeerOnly ? 1 : maxConnectedPeers);
+			peerCountController = connectTrustedPeerOnly ? null : new PeerCountController(maxConnectedPeers);
 			peerGroup.setConnectTimeoutMillis(Constants.PEER_TIMEOUT_MS);
 			
 			if (!connectTrustedPeerOnly) {
@@ -379,7 +367,8 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 					@Override
 					public void onLoadComplete(Loader<PeerDBDiscovery> loader, PeerDBDiscovery dbDiscovery) {
-						peerGroup.addPeerDiscovery(dbDiscovery);
+						peerGroup.addPeerDiscovery(new ScoredPeerDiscovery(dbDiscovery, peerStats, MAX_DISCOVERY_CANDIDATES,
+								PEER_CONNECT_WINDOW_MS));
 						dbDiscovery.listenForPeers(peerGroup);
 					}
 					
@@ -387,36 +376,71 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 				loadPDB.startLoading();
 
 				// Use backup nodes when needed
-				DnsDiscovery backup = new DnsDiscovery(backupDNS, Constants.NETWORK_PARAMETERS);
+				final PeerDiscovery backup = new SeedDiscovery(backupDNS, Constants.NETWORK_PARAMETERS.getPort(), seedCache);
 				peerGroup.addPeerDiscovery(backup, true);
 			}
 
 			peerGroup.addPeerDiscovery(new PeerDiscovery()
 			{
-				private final PeerDiscovery normalPeerDiscovery = new DnsDiscovery(Constants.NETWORK_PARAMETERS);
+				private final PeerDiscovery normalPeerDiscovery = new ScoredPeerDiscovery(new SeedDiscovery(
+						Constants.NETWORK_PARAMETERS.getDnsSeeds(), Constants.NETWORK_PARAMETERS.getPort(), seedCache), peerStats,
+						MAX_DISCOVERY_CANDIDATES, PEER_CONNECT_WINDOW_MS);
+				private final ExecutorService trustedPeerResolver = Executors.newSingleThreadExecutor();
 
 				@Override
 				public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit) throws PeerDiscoveryException
 				{
+					final long deadline = System.currentTimeMillis() + timeoutUnit.toMillis(timeoutValue);
 					final List<InetSocketAddress> peers = new LinkedList<InetSocketAddress>();
 
 					boolean needsTrimPeersWorkaround = false;
 
+					// resolve the trusted peer while the seeds are being resolved, rather than before
+					Future<InetSocketAddress> trustedPeer = null;
 					if (hasTrustedPeer)
 					{
 						log.info("trusted peer '" + trustedPeerHost + "'" + (connectTrustedPeerOnly ? " only" : ""));
 
-						final InetSocketAddress addr = new InetSocketAddress(trustedPeerHost, Constants.NETWORK_PARAMETERS.getPort());
-						if (addr.getAddress() != null)
+						trustedPeer = trustedPeerResolver.submit(new Callable<InetSocketAddress>()
 						{
-							peers.add(addr);
-							needsTrimPeersWorkaround = true;
-						}
+							@Override
+							public InetSocketAddress call()
+							{
+								return trustedPeerAddress(trustedPeerHost);
+							}
+						});
 					}
 
 					if (!connectTrustedPeerOnly)
 						peers.addAll(Arrays.asList(normalPeerDiscovery.getPeers(timeoutValue, timeoutUnit)));
 
+					if (trustedPeer != null)
+					{
+						try
+						{
+							final InetSocketAddress addr = trustedPeer.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+							if (addr.getAddress() != null)
+							{
+								peers.add(0, addr);
+								needsTrimPeersWorkaround = true;
+							}
+						}
+						catch (final ExecutionException x)
+						{
+							log.info("cannot resolve trusted peer", x.getCause());
+						}
+						catch (final TimeoutException x)
+						{
+							log.info("trusted peer missed the deadline");
+							trustedPeer.cancel(true);
+						}
+						catch (final InterruptedException x)
+						{
+							trustedPeer.cancel(true);
+							Thread.currentThread().interrupt();
+						}
+					}
+
 					// workaround because PeerGroup will shuffle peers
 					if (needsTrimPeersWorkaround)
 						while (peers.size() >= maxConnectedPeers)
@@ -429,12 +453,16 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 				public void shutdown()
 				{
 					normalPeerDiscovery.shutdown();
+					trustedPeerResolver.shutdownNow();
 				}
 			});
 
 			// start peergroup
 			peerGroup.startAsync();
 			peerGroup.startBlockChainDownload(blockchainDownloadListener);
+
+			// transactions queued while there was no peergroup
+			broadcastQueue.drain(peerGroup, wallet);
 		}
 		else if (!impediments.isEmpty() && peerGroup != null)
 		{
@@ -443,12 +471,74 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			peerGroup.removeWallet(wallet);
 			peerGroup.stopAsync();
 			peerGroup = null;
+			peerCountController = null;
 
 			log.debug("releasing wakelock");
 			wakeLock.release();
 		}
 
-		broadcastBlockchainState();
+		publishBlockchainState();
+	}
+
+	private void adjustMaxConnections()
+	{
+		final PeerGroup peerGroup = this.peerGroup;
+		final PeerCountController peerCountController = this.peerCountController;
+		if (peerGroup == null || peerCountController == null)
+			return;
+
+		final long now = System.currentTimeMillis();
+		final int recentTrimMemoryLevel = now - trimMemoryAt < TRIM_MEMORY_RELEVANCE_MS ? trimMemoryLevel : 0;
+
+		final PeerCountController.Decision decision = peerCountController.update(syncTelemetry.getBlocksLeft(),
+				syncTelemetry.getBlocksPerSecond(now), medianPingMs(peerGroup.getConnectedPeers()), recentTrimMemoryLevel);
+
+		if (decision != null)
+		{
+			log.info("adjusting max connections, " + decision);
+			peerGroup.setMaxConnections(decision.target);
+			Metrics.gauge("network.max_peers").set(decision.target);
+		}
+	}
+
+	private static long medianPingMs(final List<Peer> peers)
+	{
+		final List<Long> pingTimes = new ArrayList<Long>(peers.size());
+		for (final Peer peer : peers)
+		{
+			final long pingTime = peer.getPingTime();
+			if (pingTime != Long.MAX_VALUE)
+				pingTimes.add(pingTime);
+		}
+
+		if (pingTimes.isEmpty())
+			return -1;
+
+		Collections.sort(pingTimes);
+		return pingTimes.get(pingTimes.size() / 2);
+	}
+
+	/**
+	 * Accepts "host" or "host:port", the latter so that a local stand-in peer can be used without taking over the default port.
+	 */
+	private static InetSocketAddress trustedPeerAddress(final String trustedPeer)
+	{
+		final int colon = trustedPeer.lastIndexOf(':');
+
+		// more than one colon is a bare IPv6 address
+		if (colon > 0 && colon == trustedPeer.indexOf(':'))
+		{
+			try
+			{
+				return new InetSocketAddress(trustedPeer.substring(0, colon), Integer.parseInt(trustedPeer.substring(colon + 1)));
+			}
+			catch (final IllegalArgumentException x)
+			{
+				log.info("cannot parse port of trusted peer '" + trustedPeer + "', using default");
+			}
+		}
+
+		return new InetSocketAddress(trustedPeer, Constants.NETWORK_PARAMETERS.getPort());
 	}
 
 	private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver()
@@ -480,84 +570,35 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 	};
 
-	private final static class ActivityHistoryEntry
-	{
-		public final int numTransactionsReceived;
-		public final int numBlocksDownloaded;
-
-		public ActivityHistoryEntry(final int numTransactionsReceived, final int numBlocksDownloaded)
-		{
-			this.numTransactionsReceived = numTransactionsReceived;
-			this.numBlocksDownloaded = numBlocksDownloaded;
-		}
-
-		@Override
-		public String toString()
-		{
-			return numTransactionsReceived + "/" + numBlocksDownloaded;
-		}
-	}
-
 	private final BroadcastReceiver tickReceiver = new BroadcastReceiver()
 	{
-		private int lastChainHeight = 0;
-		private final List<ActivityHistoryEntry> activityHistory = new LinkedList<ActivityHistoryEntry>();
-
 		@Override
 		public void onReceive(final Context context, final Intent intent)
 		{
-			final int chainHeight = getBestChainHeight();
+			adjustMaxConnections();
 
-			if (lastChainHeight > 0)
-			{
-				final int numBlocksDownloaded = chainHeight - lastChainHeight;
-				final int numTransactionsReceived = transactionsReceived.getAndSet(0);
+			if (peerGroup != null)
+				broadcastQueue.drain(peerGroup, application.getWallet());
 
-				// push history
-				activityHistory.add(0, new ActivityHistoryEntry(numTransactionsReceived, numBlocksDownloaded));
+			log.info("History of transactions/blocks: " + activityTracker);
 
-				// trim
-				while (activityHistory.size() > MAX_HISTORY_SIZE)
-					activityHistory.remove(activityHistory.size() - 1);
+			final float tipBlocksPerHour = activityTracker.getTipBlocksPerHour();
+			if (tipBlocksPerHour >= 0)
+				Metrics.gauge("blockchain.tip_blocks_per_hour").set(Math.round(tipBlocksPerHour));
 
-				// print
-				final StringBuilder builder = new StringBuilder();
-				for (final ActivityHistoryEntry entry : activityHistory)
+			// if idling, shutdown service, unless transactions still wait for broadcast
+			if (activityTracker.isIdle())
+			{
+				if (broadcastQueue.size() > 0)
 				{
-					if (builder.length() > 0)
-						builder.append(", ");
-					builder.append(entry);
+					log.info("idling, but {} transactions wait for broadcast", broadcastQueue.size());
 				}
-				log.info("History of transactions/blocks: " + builder);
-
-				// determine if block and transaction activity is idling
-				boolean isIdle = false;
-				if (activityHistory.size() >= MIN_COLLECT_HISTORY)
-				{
-					isIdle = true;
-					for (int i = 0; i < activityHistory.size(); i++)
-					{
-						final ActivityHistoryEntry entry = activityHistory.get(i);
-						final boolean blocksActive = entry.numBlocksDownloaded > 0 && i <= IDLE_BLOCK_TIMEOUT_MIN;
-						final boolean transactionsActive = entry.numTransactionsReceived > 0 && i <= IDLE_TRANSACTION_TIMEOUT_MIN;
-
-						if (blocksActive || transactionsActive)
-						{
-							isIdle = false;
-							break;
-						}
-					}
-				}
-
-				// if idling, shutdown service
-				if (isIdle)
+				else
 				{
 					log.info("idling detected, stopping service");
 					stopSelf();
 				}
 			}
-
-			lastChainHeight = chainHeight;
 		}
 	};
 
@@ -603,6 +644,13 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, lockName);
 
 		application = (WalletApplication) getApplication();
+
+		final File peersDir = getDir("peers", Context.MODE_PRIVATE);
+		peerStats = new PeerStats(new File(peersDir, Constants.Files.PEER_STATS_FILENAME));
+		seedCache = new SeedCache(new File(peersDir, Constants.Files.SEED_CACHE_FILENAME));
+		broadcastQueue = application.getBroadcastQueue();
+		coinsReceivedNotifier = new CoinsReceivedNotifier(this, application);
+		activityTracker = new ActivityTracker(application.getSyncScheduler().getClock());
 		
 		// Sometimes the application is not loaded for some reason, even though assertions of config != null do not fail.
 		// Only solution here then is to work around the problem by only using the configuration when the application is loaded
@@ -615,9 +663,10 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 				
 				config = application.getConfiguration();
 				peerConnectivityListener = new PeerConnectivityListener();
-				broadcastPeerState(0);
+				publishPeerState(0);
 				
 				application.getWallet().addEventListener(walletEventListener, Threading.SAME_THREAD);
+				application.getWalletEventHub().subscribe(widgetUpdater, WalletEventHub.CHANGE_TRANSACTIONS, APPWIDGET_THROTTLE_MS);
 				registerReceiver(tickReceiver, new IntentFilter(Intent.ACTION_TIME_TICK));
 				
 				loadBlockchain = new BlockchainLoader(BlockchainServiceImpl.this, application);
@@ -639,9 +688,27 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	@Override
 	public void onLoadComplete(Loader<BlockchainData> loader, BlockchainData data) {
 		bcd = data;
+		recentBlocks.clear();
+		if (bcd != null)
+			updateRecentBlocks(bcd.blockChain.getChainHead());
 		check();
 	}
 
+	private void updateRecentBlocks(final StoredBlock chainHead)
+	{
+		try
+		{
+			recentBlocks.onChainHead(chainHead, bcd.blockStore);
+		}
+		catch (final BlockStoreException x)
+		{
+			log.warn("cannot update recent blocks", x);
+
+			// getRecentBlocks() goes to the store while the ring is empty
+			recentBlocks.clear();
+		}
+	}
+
 	@Override
 	public int onStartCommand(final Intent intent, final int flags, final int startId)
 	{
@@ -654,11 +721,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 
 			if (BlockchainService.ACTION_CANCEL_COINS_RECEIVED.equals(action))
 			{
-				notificationCount = 0;
-				notificationAccumulatedAmount = Coin.ZERO;
-				notificationAddresses.clear();
-
-				nm.cancel(NOTIFICATION_ID_COINS_RECEIVED);
+				coinsReceivedNotifier.cancel();
 			}
 			else if (BlockchainService.ACTION_RESET_BLOCKCHAIN.equals(action))
 			{
@@ -670,16 +733,17 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			else if (BlockchainService.ACTION_BROADCAST_TRANSACTION.equals(action))
 			{
 				final Sha256Hash hash = new Sha256Hash(intent.getByteArrayExtra(BlockchainService.ACTION_BROADCAST_TRANSACTION_HASH));
-				final Transaction tx = application.getWallet().getTransaction(hash);
+				broadcastQueue.enqueue(hash);
 
 				if (peerGroup != null)
 				{
-					log.info("broadcasting transaction " + tx.getHashAsString());
-					peerGroup.broadcastTransaction(tx);
+					log.info("broadcasting transaction " + hash);
+
+					broadcastQueue.drain(peerGroup, application.getWallet());
 				}
 				else
 				{
-					log.info("peergroup not available, not broadcasting transaction " + tx.getHashAsString());
+					log.info("peergroup not available, queueing transaction " + hash + " for later broadcast");
 				}
 			}
 		}
@@ -696,11 +760,15 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	{
 		log.debug(".onDestroy()");
 
+		final float tipBlocksPerHour = activityTracker.getTipBlocksPerHour();
+		if (tipBlocksPerHour >= 0)
+			application.getSyncScheduler().setObservedBlocksPerHour(tipBlocksPerHour);
 		application.scheduleStartBlockchainService();
 
 		unregisterReceiver(tickReceiver);
 
 		application.getWallet().removeEventListener(walletEventListener);
+		application.getWalletEventHub().unsubscribe(widgetUpdater);
 
 		unregisterReceiver(connectivityReceiver);
 
@@ -717,6 +785,9 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			log.info("peergroup stopped");
 		}
 
+		peerStats.save();
+		coinsReceivedNotifier.shutdown();
+
 		peerConnectivityListener.stop();
 
 		delayHandler.removeCallbacksAndMessages(null);
@@ -728,6 +799,7 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 			bcd.delete(resetBlockchainOnShutdown);
 		
 		bcd = null;
+		recentBlocks.clear();
 		
 		application.saveWallet();
 
@@ -747,6 +819,14 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	{
 		log.info("onTrimMemory({}) called", level);
 
+		// hiding the UI is routine and no sign of memory pressure
+		if (level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)
+		{
+			trimMemoryLevel = level;
+			trimMemoryAt = System.currentTimeMillis();
+			adjustMaxConnections();
+		}
+
 		if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
 		{
 			log.warn("low memory detected, stopping service");
@@ -764,8 +844,10 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		final Date bestChainDate = chainHead.getHeader().getTime();
 		final int bestChainHeight = chainHead.getHeight();
 		final boolean replaying = chainHead.getHeight() < config.getBestChainHeightEver();
+		final long now = System.currentTimeMillis();
 
-		return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments);
+		return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments, syncTelemetry.getBlocksPerSecond(now),
+				syncTelemetry.getBytesPerSecond(now), syncTelemetry.getBlocksLeft(), syncTelemetry.getEtaMs(now));
 	}
 
 	@Override
@@ -780,10 +862,17 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 	@Override
 	public List<StoredBlock> getRecentBlocks(final int maxBlocks)
 	{
-		final List<StoredBlock> blocks = new ArrayList<StoredBlock>(maxBlocks);
-
         if (bcd == null)
-            return blocks;
+            return new ArrayList<StoredBlock>(0);
+
+		if (maxBlocks <= recentBlocks.capacity())
+		{
+			final List<StoredBlock> blocks = recentBlocks.get(maxBlocks);
+			if (!blocks.isEmpty())
+				return blocks;
+		}
+
+		final List<StoredBlock> blocks = new ArrayList<StoredBlock>(maxBlocks);
 
 		try
 		{
@@ -807,21 +896,14 @@ public class BlockchainServiceImpl extends android.app.Service implements Blockc
 		return blocks;
 	}
 
-	private void broadcastPeerState(final int numPeers)
+	private void publishPeerState(final int numPeers)
 	{
-		final Intent broadcast = new Intent(ACTION_PEER_STATE);
-		broadcast.setPackage(getPackageName());
-		broadcast.putExtra(ACTION_PEER_STATE_NUM_PEERS, numPeers);
-
-		LocalBroadcastManager.getInstance(this).sendBroadcast(broadcast);
+		application.getPeerState().set(numPeers);
 	}
 
-	private void broadcastBlockchainState()
+	private void publishBlockchainState()
 	{
-		final Intent broadcast = new Intent(ACTION_BLOCKCHAIN_STATE);
-		broadcast.setPackage(getPackageName());
-		getBlockchainState().putExtras(broadcast);
-		LocalBroadcastManager.getInstance(this).sendBroadcast(broadcast);
+		application.getBlockchainState().set(getBlockchainState());
 	}
 
 }
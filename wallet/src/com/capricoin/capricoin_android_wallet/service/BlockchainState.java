@@ -21,19 +21,11 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.Set;
 
-import android.content.Intent;
-
 /**
  * @author Andreas Schildbach
  */
 public class BlockchainState
 {
-	private static final String EXTRA_BEST_CHAIN_DATE = "best_chain_date";
-	private static final String EXTRA_BEST_CHAIN_HEIGHT = "best_chain_height";
-	private static final String EXTRA_REPLAYING = "replaying";
-	private static final String EXTRA_IMPEDIMENTS = "impediment";
-    private static final String EXTRA_LOADED = "loaded";
-
 	public enum Impediment
 	{
 		STORAGE, NETWORK
@@ -44,6 +36,11 @@ public class BlockchainState
 	public final boolean replaying;
 	public final EnumSet<Impediment> impediments;
     public final boolean loaded;
+	public final float blocksPerSecond;
+	public final long bytesPerSecond;
+	public final int blocksLeft;
+	/** estimated milliseconds until synced, or -1 if unknown */
+	public final long etaMs;
 
     public BlockchainState() {
         this.loaded = false;
@@ -51,44 +48,28 @@ public class BlockchainState
 		this.bestChainHeight = 0;
 		this.replaying = false;
 		this.impediments = EnumSet.noneOf(Impediment.class);
+		this.blocksPerSecond = 0;
+		this.bytesPerSecond = 0;
+		this.blocksLeft = 0;
+		this.etaMs = -1;
     }
 
 	public BlockchainState(final Date bestChainDate, final int bestChainHeight, final boolean replaying, final Set<Impediment> impediments)
+	{
+		this(bestChainDate, bestChainHeight, replaying, impediments, 0, 0, 0, -1);
+	}
+
+	public BlockchainState(final Date bestChainDate, final int bestChainHeight, final boolean replaying, final Set<Impediment> impediments,
+			final float blocksPerSecond, final long bytesPerSecond, final int blocksLeft, final long etaMs)
 	{
 		this.bestChainDate = bestChainDate;
 		this.bestChainHeight = bestChainHeight;
 		this.replaying = replaying;
 		this.impediments = EnumSet.copyOf(impediments);
         this.loaded = true;
-	}
-
-	public static BlockchainState fromIntent(final Intent intent)
-	{
-
-        if (!intent.getBooleanExtra(EXTRA_LOADED, false))
-            return new BlockchainState();
-
-		final Date bestChainDate = (Date) intent.getSerializableExtra(EXTRA_BEST_CHAIN_DATE);
-		final int bestChainHeight = intent.getIntExtra(EXTRA_BEST_CHAIN_HEIGHT, -1);
-		final boolean replaying = intent.getBooleanExtra(EXTRA_REPLAYING, false);
-		final Set<Impediment> impediments = (Set<Impediment>) intent.getSerializableExtra(EXTRA_IMPEDIMENTS);
-
-		return new BlockchainState(bestChainDate, bestChainHeight, replaying, impediments);
-
-	}
-
-	public void putExtras(final Intent intent)
-	{
-
-        intent.putExtra(EXTRA_LOADED, loaded);
-
-        if (!loaded)
-            return;
-
-		intent.putExtra(EXTRA_BEST_CHAIN_DATE, bestChainDate);
-		intent.putExtra(EXTRA_BEST_CHAIN_HEIGHT, bestChainHeight);
-		intent.putExtra(EXTRA_REPLAYING, replaying);
-		intent.putExtra(EXTRA_IMPEDIMENTS, impediments);
-
+		this.blocksPerSecond = blocksPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+		this.blocksLeft = blocksLeft;
+		this.etaMs = etaMs;
 	}
 }
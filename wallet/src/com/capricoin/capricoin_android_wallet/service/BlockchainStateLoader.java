@@ -23,16 +23,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.capricoin.capricoin_android_wallet.WalletApplication;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
 
 import android.content.AsyncTaskLoader;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.os.IBinder;
-import android.support.v4.content.LocalBroadcastManager;
 
 import static junit.framework.Assert.assertTrue;
 
@@ -41,7 +39,7 @@ import static junit.framework.Assert.assertTrue;
  */
 public class BlockchainStateLoader extends AsyncTaskLoader<BlockchainState>
 {
-	private final LocalBroadcastManager broadcastManager;
+	private final WalletApplication application;
 	private BlockchainService service;
 
 	private static final Logger log = LoggerFactory.getLogger(BlockchainStateLoader.class);
@@ -50,7 +48,7 @@ public class BlockchainStateLoader extends AsyncTaskLoader<BlockchainState>
 	{
 		super(context);
 
-		this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+		this.application = (WalletApplication) context.getApplicationContext();
 	}
 
 	@Override
@@ -58,10 +56,10 @@ public class BlockchainStateLoader extends AsyncTaskLoader<BlockchainState>
 	{
 		super.onStartLoading();
 
-		broadcastManager.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+		application.getBlockchainState().subscribe(blockchainStateObserver, ObservableState.MAIN_THREAD);
 		final Context context = getContext();
 	
-		assertTrue(((WalletApplication)context.getApplicationContext()).getConfiguration() != null);
+		assertTrue(application.getConfiguration() != null);
 		
 		context.bindService(new Intent(context, BlockchainServiceImpl.class), serviceConnection, Context.BIND_AUTO_CREATE);
 	}
@@ -69,7 +67,7 @@ public class BlockchainStateLoader extends AsyncTaskLoader<BlockchainState>
 	@Override
 	protected void onStopLoading()
 	{
-		broadcastManager.unregisterReceiver(broadcastReceiver);
+		application.getBlockchainState().unsubscribe(blockchainStateObserver);
 
 		super.onStopLoading();
 	}
@@ -101,14 +99,14 @@ public class BlockchainStateLoader extends AsyncTaskLoader<BlockchainState>
 		}
 	};
 
-	private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+	private final ObservableState.Observer<BlockchainState> blockchainStateObserver = new ObservableState.Observer<BlockchainState>()
 	{
 		@Override
-		public void onReceive(final Context context, final Intent broadcast)
+		public void onStateChanged(final BlockchainState blockchainState)
 		{
 			try
 			{
-				deliverResult(BlockchainState.fromIntent(broadcast));
+				deliverResult(blockchainState);
 			}
 			catch (final RejectedExecutionException x)
 			{
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.text.format.DateUtils;
+
+import com.capricoinj.core.PeerGroup;
+import com.capricoinj.core.Sha256Hash;
+import com.capricoinj.core.Transaction;
+import com.capricoinj.core.TransactionConfidence.ConfidenceType;
+import com.capricoinj.core.Wallet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import com.capricoin.capricoin_android_wallet.util.Metrics;
+
+/**
+ * Outgoing transactions waiting to be announced by enough peers. Survives service restarts, so a transaction sent while offline goes out
+ * as soon as there is a peer group again. A broadcast that fails or is not confirmed in time is retried with exponential backoff.
+ * Transactions that got into a block or died meanwhile are dropped, and so are transactions that ran out of attempts or have been queued
+ * for too long. Those stay pending in the wallet, which has the peer group announce them again as peers connect.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BroadcastQueue
+{
+	static final int FILE_VERSION = 1;
+	static final long IN_FLIGHT_TIMEOUT_MS = DateUtils.MINUTE_IN_MILLIS;
+	static final long MIN_BACKOFF_MS = 10 * DateUtils.SECOND_IN_MILLIS;
+	static final long MAX_BACKOFF_MS = 10 * DateUtils.MINUTE_IN_MILLIS;
+	static final int MAX_ATTEMPTS = 8;
+	/** so that the queue does not keep the service running and syncing frequently forever */
+	static final long MAX_AGE_MS = DateUtils.HOUR_IN_MILLIS;
+
+	private final File file;
+	private final Map<Sha256Hash, Entry> entries = new LinkedHashMap<Sha256Hash, Entry>();
+	private boolean loaded = false;
+
+	private static final Logger log = LoggerFactory.getLogger(BroadcastQueue.class);
+
+	static final class Entry
+	{
+		final long enqueuedAt;
+		int numAttempts = 0;
+		long nextAttemptAt = 0;
+		long inFlightSince = 0;
+
+		Entry(final long enqueuedAt)
+		{
+			this.enqueuedAt = enqueuedAt;
+		}
+	}
+
+	enum Action
+	{
+		WAIT, ATTEMPT, GIVE_UP
+	}
+
+	public BroadcastQueue(@Nonnull final File file)
+	{
+		this.file = file;
+	}
+
+	public synchronized void enqueue(@Nonnull final Sha256Hash hash)
+	{
+		load();
+
+		if (!entries.containsKey(hash))
+		{
+			entries.put(hash, new Entry(System.currentTimeMillis()));
+			save();
+		}
+
+		Metrics.gauge("network.broadcast_queue_depth").set(entries.size());
+	}
+
+	/**
+	 * @return number of transactions waiting for broadcast, after dropping those queued for too long
+	 */
+	public synchronized int size()
+	{
+		load();
+
+		final long now = System.currentTimeMillis();
+		boolean changed = false;
+
+		for (final Iterator<Map.Entry<Sha256Hash, Entry>> i = entries.entrySet().iterator(); i.hasNext();)
+		{
+			final Map.Entry<Sha256Hash, Entry> mapEntry = i.next();
+			final Entry entry = mapEntry.getValue();
+
+			final boolean inFlight = entry.inFlightSince > 0 && now - entry.inFlightSince < IN_FLIGHT_TIMEOUT_MS;
+			if (!inFlight && now - entry.enqueuedAt >= MAX_AGE_MS)
+			{
+				giveUp(mapEntry.getKey(), entry, now);
+				i.remove();
+				changed = true;
+			}
+		}
+
+		if (changed)
+			save();
+
+		return entries.size();
+	}
+
+	/**
+	 * Broadcasts all transactions that are due, in the order they were queued so that parents go before their children.
+	 */
+	public synchronized void drain(@Nonnull final PeerGroup peerGroup, @Nonnull final Wallet wallet)
+	{
+		load();
+
+		final long now = System.currentTimeMillis();
+		final List<Transaction> due = new ArrayList<Transaction>();
+		boolean changed = false;
+
+		for (final Iterator<Map.Entry<Sha256Hash, Entry>> i = entries.entrySet().iterator(); i.hasNext();)
+		{
+			final Map.Entry<Sha256Hash, Entry> mapEntry = i.next();
+			final Entry entry = mapEntry.getValue();
+			final Transaction tx = wallet.getTransaction(mapEntry.getKey());
+
+			if (tx == null || tx.getConfidence().getConfidenceType() != ConfidenceType.PENDING)
+			{
+				log.info("dropping {} from broadcast queue, {}", mapEntry.getKey(), tx == null ? "not in wallet" : tx.getConfidence()
+						.getConfidenceType());
+				i.remove();
+				changed = true;
+				continue;
+			}
+
+			if (entry.inFlightSince > 0 && now - entry.inFlightSince >= IN_FLIGHT_TIMEOUT_MS)
+				log.info("broadcast of {} not confirmed in time", mapEntry.getKey());
+
+			final Action action = next(entry, now);
+			if (action == Action.GIVE_UP)
+			{
+				giveUp(mapEntry.getKey(), entry, now);
+				i.remove();
+				changed = true;
+			}
+			else if (action == Action.ATTEMPT)
+			{
+				if (entry.numAttempts > 1)
+					Metrics.counter("network.broadcast_retries").inc();
+				due.add(tx);
+				changed = true;
+			}
+		}
+
+		if (changed)
+			save();
+
+		Metrics.gauge("network.broadcast_queue_depth").set(entries.size());
+
+		if (!due.isEmpty())
+			log.info("broadcasting {} of {} queued transactions", due.size(), entries.size());
+
+		for (final Transaction tx : due)
+			broadcast(peerGroup, tx);
+	}
+
+	private void broadcast(final PeerGroup peerGroup, final Transaction tx)
+	{
+		final Sha256Hash hash = tx.getHash();
+		final long broadcastStart = System.currentTimeMillis();
+
+		Futures.addCallback(peerGroup.broadcastTransaction(tx), new FutureCallback<Transaction>()
+		{
+			@Override
+			public void onSuccess(final Transaction result)
+			{
+				Metrics.histogram("network.broadcast_latency_ms").recordSince(broadcastStart);
+
+				synchronized (BroadcastQueue.this)
+				{
+					final Entry entry = entries.remove(hash);
+					if (entry != null)
+					{
+						Metrics.histogram("network.broadcast_propagation_ms").recordSince(entry.enqueuedAt);
+						log.info("transaction {} propagated after {} attempts", hash, entry.numAttempts);
+						save();
+					}
+
+					Metrics.gauge("network.broadcast_queue_depth").set(entries.size());
+				}
+			}
+
+			@Override
+			public void onFailure(final Throwable t)
+			{
+				Metrics.counter("network.broadcast_failures").inc();
+				log.info("broadcast of " + hash + " failed", t);
+
+				synchronized (BroadcastQueue.this)
+				{
+					final Entry entry = entries.get(hash);
+					if (entry != null)
+					{
+						failed(entry, System.currentTimeMillis());
+						save();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Moves an entry on: a broadcast in flight for too long counts as failed, an entry that is due is marked as in flight, and an entry
+	 * that is out of attempts or too old is to be given up.
+	 */
+	static Action next(@Nonnull final Entry entry, final long now)
+	{
+		if (entry.inFlightSince > 0)
+		{
+			if (now - entry.inFlightSince < IN_FLIGHT_TIMEOUT_MS)
+				return Action.WAIT;
+
+			failed(entry, now);
+		}
+
+		if (entry.numAttempts >= MAX_ATTEMPTS || now - entry.enqueuedAt >= MAX_AGE_MS)
+			return Action.GIVE_UP;
+
+		if (entry.nextAttemptAt > now)
+			return Action.WAIT;
+
+		entry.inFlightSince = now;
+		entry.numAttempts++;
+		return Action.ATTEMPT;
+	}
+
+	static void failed(@Nonnull final Entry entry, final long now)
+	{
+		final long backoff = Math.min(MIN_BACKOFF_MS << Math.min(entry.numAttempts - 1, 16), MAX_BACKOFF_MS);
+		entry.inFlightSince = 0;
+		entry.nextAttemptAt = now + backoff;
+	}
+
+	private static void giveUp(final Sha256Hash hash, final Entry entry, final long now)
+	{
+		Metrics.counter("network.broadcast_given_up").inc();
+		log.info("dropping {} from broadcast queue after {} attempts in {} s, leaving it to the wallet to announce again", hash,
+				entry.numAttempts, (now - entry.enqueuedAt) / DateUtils.SECOND_IN_MILLIS);
+	}
+
+	private void load()
+	{
+		if (loaded)
+			return;
+		loaded = true;
+
+		if (!file.exists())
+			return;
+
+		DataInputStream is = null;
+
+		try
+		{
+			is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			if (is.readInt() != FILE_VERSION)
+				return;
+
+			final int numEntries = is.readInt();
+			for (int i = 0; i < numEntries; i++)
+			{
+				final byte[] hash = new byte[32];
+				is.readFully(hash);
+				final Entry entry = new Entry(is.readLong());
+				entry.numAttempts = is.readInt();
+				entries.put(new Sha256Hash(hash), entry);
+			}
+
+			log.info("{} transactions waiting for broadcast", entries.size());
+		}
+		catch (final IOException x)
+		{
+			log.warn("problem loading broadcast queue", x);
+		}
+		finally
+		{
+			if (is != null)
+			{
+				try
+				{
+					is.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	private void save()
+	{
+		final File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream os = null;
+
+		try
+		{
+			os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+			os.writeInt(FILE_VERSION);
+			os.writeInt(entries.size());
+			for (final Map.Entry<Sha256Hash, Entry> mapEntry : entries.entrySet())
+			{
+				os.write(mapEntry.getKey().getBytes());
+				os.writeLong(mapEntry.getValue().enqueuedAt);
+				os.writeInt(mapEntry.getValue().numAttempts);
+			}
+
+			os.close();
+			os = null;
+
+			if (!tempFile.renameTo(file))
+				log.warn("cannot rename {} to {}", tempFile, file);
+		}
+		catch (final IOException x)
+		{
+			log.warn("problem saving broadcast queue", x);
+		}
+		finally
+		{
+			if (os != null)
+			{
+				try
+				{
+					os.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.format.DateUtils;
+
+import com.capricoinj.core.Address;
+import com.capricoinj.core.Coin;
+import com.capricoinj.utils.MonetaryFormat;
+import com.capricoin.capricoin_android_wallet.AddressBookProvider;
+import com.capricoin.capricoin_android_wallet.R;
+import com.capricoin.capricoin_android_wallet.WalletApplication;
+import com.capricoin.capricoin_android_wallet.ui.WalletActivity;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
+
+/**
+ * Collects received payments for a short window and then updates the coins received notification once for all of them, off the UI
+ * thread. The labels of the sending addresses are looked up in one query per update, and only for the addresses that are shown.
+ *
+ * @author Andreas Schildbach
+ */
+public final class CoinsReceivedNotifier
+{
+	public static final int NOTIFICATION_ID = 1;
+	public static final long WINDOW_MS = 2 * DateUtils.SECOND_IN_MILLIS;
+	public static final int MAX_RENDERED_ADDRESSES = 5;
+
+	private final WalletApplication application;
+	private final Context context;
+	private final NotificationManager nm;
+
+	private final HandlerThread backgroundThread;
+	private final Handler backgroundHandler;
+
+	// only touched on the background thread
+	private int count = 0;
+	private Coin accumulatedAmount = Coin.ZERO;
+	private final Set<Address> addresses = new LinkedHashSet<Address>();
+	private int windowCount = 0;
+	private Coin windowAmount = Coin.ZERO;
+
+	public CoinsReceivedNotifier(@Nonnull final Context context, @Nonnull final WalletApplication application)
+	{
+		this.application = application;
+		this.context = context;
+		this.nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+		backgroundThread = new HandlerThread("coinsReceivedThread", Process.THREAD_PRIORITY_BACKGROUND);
+		backgroundThread.start();
+		backgroundHandler = new Handler(backgroundThread.getLooper());
+	}
+
+	public void onCoinsReceived(@Nullable final Address from, @Nonnull final Coin amount)
+	{
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (windowCount == 0)
+					backgroundHandler.postDelayed(flushRunnable, WINDOW_MS);
+
+				windowCount++;
+				windowAmount = windowAmount.add(amount);
+				if (from != null)
+					addresses.add(from);
+			}
+		});
+	}
+
+	public void cancel()
+	{
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				backgroundHandler.removeCallbacks(flushRunnable);
+
+				count = 0;
+				accumulatedAmount = Coin.ZERO;
+				addresses.clear();
+				windowCount = 0;
+				windowAmount = Coin.ZERO;
+
+				nm.cancel(NOTIFICATION_ID);
+			}
+		});
+	}
+
+	/**
+	 * Posts what is still buffered, then stops the background thread.
+	 */
+	public void shutdown()
+	{
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				backgroundHandler.removeCallbacks(flushRunnable);
+				if (windowCount > 0)
+					flush();
+
+				backgroundThread.getLooper().quit();
+			}
+		});
+	}
+
+	private final Runnable flushRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			flush();
+		}
+	};
+
+	private void flush()
+	{
+		final long start = System.currentTimeMillis();
+
+		if (count == 1)
+			nm.cancel(NOTIFICATION_ID);
+
+		count += windowCount;
+		accumulatedAmount = accumulatedAmount.add(windowAmount);
+
+		final MonetaryFormat ppcFormat = application.getConfiguration().getFormat();
+		final String packageFlavor = application.applicationPackageFlavor();
+		final String msgSuffix = packageFlavor != null ? " [" + packageFlavor + "]" : "";
+
+		final String tickerMsg = context.getString(R.string.notification_coins_received_msg, ppcFormat.format(windowAmount)) + msgSuffix;
+		final String msg = context.getString(R.string.notification_coins_received_msg, ppcFormat.format(accumulatedAmount)) + msgSuffix;
+
+		windowCount = 0;
+		windowAmount = Coin.ZERO;
+
+		final List<String> rendered = new ArrayList<String>(MAX_RENDERED_ADDRESSES);
+		for (final Address address : addresses)
+		{
+			if (rendered.size() >= MAX_RENDERED_ADDRESSES)
+				break;
+
+			rendered.add(address.toString());
+		}
+
+		final Map<String, String> labels = AddressBookProvider.resolveLabels(context, rendered);
+
+		final StringBuilder text = new StringBuilder();
+		for (final String address : rendered)
+		{
+			if (text.length() > 0)
+				text.append(", ");
+
+			final String label = labels.get(address);
+			text.append(label != null ? label : address);
+		}
+		if (addresses.size() > rendered.size())
+			text.append(", \u2026");
+
+		final Notification.Builder notification = new Notification.Builder(context);
+		notification.setSmallIcon(R.drawable.stat_notify_received);
+		notification.setTicker(tickerMsg);
+		notification.setContentTitle(msg);
+		if (text.length() > 0)
+			notification.setContentText(text);
+		notification.setContentIntent(PendingIntent.getActivity(context, 0, new Intent(context, WalletActivity.class), 0));
+		notification.setNumber(count == 1 ? 0 : count);
+		notification.setWhen(System.currentTimeMillis());
+		notification.setSound(Uri.parse("android.resource://" + context.getPackageName() + "/" + R.raw.coins_received));
+		nm.notify(NOTIFICATION_ID, notification.getNotification());
+
+		Metrics.histogram("notification.coins_received_ms").recordSince(start);
+	}
+}
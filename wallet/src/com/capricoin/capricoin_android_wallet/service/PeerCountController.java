@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import javax.annotation.CheckForNull;
+
+import android.content.ComponentCallbacks2;
+
+/**
+ * Decides how many peers to stay connected to. Catching up uses as many as memory allows, so that a fast download peer can be picked;
+ * idling at the chain tip only needs enough peers to relay transactions, which saves battery and bandwidth. While catching up, a download
+ * that is already fast keeps only a few peers, and a download that has stalled counts as the slowest download of all. Memory pressure and
+ * slow peers move the target from there.
+ *
+ * @author Andreas Schildbach
+ */
+public final class PeerCountController
+{
+	/** fewer blocks left than this counts as being at the tip */
+	private static final int CATCHING_UP_BLOCKS_LEFT = 10;
+	private static final int AT_TIP_PEERS = 3;
+	private static final int MIN_PEERS = 2;
+	private static final long SLOW_PING_MS = 2000;
+	private static final float SLOW_DOWNLOAD_BLOCKS_PER_SECOND = 5;
+	private static final float FAST_DOWNLOAD_BLOCKS_PER_SECOND = 20;
+	private static final int FAST_DOWNLOAD_PEERS = AT_TIP_PEERS + 1;
+
+	private final int maxPeers;
+	private int current;
+
+	public static final class Decision
+	{
+		public final int previous;
+		public final int target;
+		public final String reason;
+
+		private Decision(final int previous, final int target, final String reason)
+		{
+			this.previous = previous;
+			this.target = target;
+			this.reason = reason;
+		}
+
+		@Override
+		public String toString()
+		{
+			return previous + " -> " + target + " peers: " + reason;
+		}
+	}
+
+	/**
+	 * @param maxPeers
+	 *            ceiling derived from the memory class of the device
+	 */
+	public PeerCountController(final int maxPeers)
+	{
+		this.maxPeers = maxPeers;
+		this.current = maxPeers;
+	}
+
+	public int getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 * @param blocksLeft
+	 *            blocks the download peer said are left, 0 if at tip
+	 * @param blocksPerSecond
+	 *            measured download rate, 0 if no block has been downloaded within the measuring window
+	 * @param medianPingMs
+	 *            median ping of the connected peers, or -1 if not known
+	 * @param trimMemoryLevel
+	 *            most recent level passed to onTrimMemory, or 0 if there was no recent memory pressure; UI_HIDDEN does not count as
+	 *            pressure
+	 * @return the decision if the target changed, or null if it stays as it is
+	 */
+	@CheckForNull
+	public synchronized Decision update(final int blocksLeft, final float blocksPerSecond, final long medianPingMs, final int trimMemoryLevel)
+	{
+		final int ceiling;
+		final String ceilingReason;
+		if (trimMemoryLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+		{
+			ceiling = MIN_PEERS;
+			ceilingReason = ", memory critical (level " + trimMemoryLevel + ")";
+		}
+		else if (trimMemoryLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+		{
+			ceiling = Math.max(MIN_PEERS, maxPeers / 2);
+			ceilingReason = ", memory low";
+		}
+		else if (trimMemoryLevel >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE)
+		{
+			ceiling = Math.max(MIN_PEERS, maxPeers - 1);
+			ceilingReason = ", memory moderate";
+		}
+		else
+		{
+			ceiling = maxPeers;
+			ceilingReason = "";
+		}
+
+		final boolean slowPeers = medianPingMs > SLOW_PING_MS;
+
+		int target;
+		String reason;
+		if (blocksLeft >= CATCHING_UP_BLOCKS_LEFT)
+		{
+			reason = "catching up, " + blocksLeft + " blocks left at " + String.format("%.1f", blocksPerSecond) + " blocks/s";
+			if (blocksPerSecond <= 0)
+			{
+				// the download peer stopped delivering, more peers to find one that does
+				target = ceiling;
+				reason += ", stalled download";
+			}
+			else if (blocksPerSecond < SLOW_DOWNLOAD_BLOCKS_PER_SECOND)
+			{
+				// more peers to choose a faster download peer from
+				target = ceiling;
+				reason += ", slow download";
+			}
+			else if (blocksPerSecond >= FAST_DOWNLOAD_BLOCKS_PER_SECOND)
+			{
+				// the download peer is good, others would only cost bandwidth
+				target = FAST_DOWNLOAD_PEERS;
+				reason += ", fast download";
+			}
+			else
+			{
+				// in between, stay where we are, so that the target does not flap around a threshold
+				target = Math.max(FAST_DOWNLOAD_PEERS, Math.min(current, ceiling));
+			}
+		}
+		else
+		{
+			target = AT_TIP_PEERS;
+			reason = "at tip";
+			if (slowPeers)
+			{
+				// slow peers relay slowly, more of them make it likelier one relays quickly
+				target++;
+				reason += ", median ping " + medianPingMs + " ms";
+			}
+		}
+
+		if (target > ceiling)
+			target = ceiling;
+		reason += ceilingReason;
+
+		if (target == current)
+			return null;
+
+		final Decision decision = new Decision(current, target, reason);
+		current = target;
+		return decision;
+	}
+}
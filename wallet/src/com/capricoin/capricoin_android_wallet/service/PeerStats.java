@@ -0,0 +1,319 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers how each peer performed (connect time, ping, blocks served, failed connects) across service restarts, so that discovery can
+ * offer the fast peers first. Persisted next to the peer DB; loaded lazily on first use, which happens on a peer group thread.
+ *
+ * @author Andreas Schildbach
+ */
+public final class PeerStats
+{
+	private static final int FILE_VERSION = 1;
+	private static final int MAX_ENTRIES = 1000;
+	/** assumed for peers never measured, so that they rank below known fast peers but above known slow ones */
+	private static final long UNKNOWN_MS = 1000;
+	private static final long FAILURE_PENALTY_MS = 3000;
+
+	private final File file;
+	private Map<InetSocketAddress, Entry> entries = null;
+	private final Map<InetSocketAddress, Long> handedOut = new HashMap<InetSocketAddress, Long>();
+
+	private static final Logger log = LoggerFactory.getLogger(PeerStats.class);
+
+	private static final class Entry
+	{
+		int numConnects;
+		int numFailures;
+		long connectMs = -1;
+		long pingMs = -1;
+		int blocksServed;
+		long lastSeenMs;
+
+		long score()
+		{
+			final long ping = pingMs >= 0 ? pingMs : UNKNOWN_MS;
+			final long connect = connectMs >= 0 ? connectMs : UNKNOWN_MS;
+			final long failures = FAILURE_PENALTY_MS * numFailures / (numConnects + 1);
+
+			// serving blocks shows a peer is useful beyond answering pings
+			final long served = Math.min(blocksServed, 2000) / 4;
+
+			return ping + connect / 2 + failures - served;
+		}
+	}
+
+	public PeerStats(@Nonnull final File file)
+	{
+		this.file = file;
+	}
+
+	/** to be called when an address is offered to the peer group, so that the time until connected can be measured */
+	public synchronized void onHandedOut(@Nonnull final InetSocketAddress address, final long nowMs)
+	{
+		handedOut.put(address, nowMs);
+	}
+
+	/**
+	 * Forgets addresses handed out longer than the timeout ago that have neither connected nor failed to. The peer group does not try
+	 * every address it is offered, so this is no sign of the peer being bad and is not held against it.
+	 */
+	public synchronized void expireHandedOut(final long nowMs, final long timeoutMs)
+	{
+		for (final Iterator<Map.Entry<InetSocketAddress, Long>> i = handedOut.entrySet().iterator(); i.hasNext();)
+			if (nowMs - i.next().getValue() > timeoutMs)
+				i.remove();
+	}
+
+	public synchronized void onConnected(@Nonnull final InetSocketAddress address, final long nowMs, final long timeoutMs)
+	{
+		final Entry entry = entry(address);
+		entry.numConnects++;
+		entry.lastSeenMs = nowMs;
+
+		final Long handedOutMs = handedOut.remove(address);
+		if (handedOutMs != null && nowMs - handedOutMs <= timeoutMs)
+		{
+			final long connectMs = nowMs - handedOutMs;
+			entry.connectMs = entry.connectMs >= 0 ? (entry.connectMs * 3 + connectMs) / 4 : connectMs;
+		}
+	}
+
+	/**
+	 * Also to be called when a connection attempt fails. A disconnect of an address that was handed out and has not connected since is
+	 * counted as a failure.
+	 *
+	 * @param pingMs
+	 *            average ping of the session, or Long.MAX_VALUE if never pinged
+	 */
+	public synchronized void onDisconnected(@Nonnull final InetSocketAddress address, final long pingMs, final long nowMs)
+	{
+		final Entry entry = entry(address);
+
+		if (handedOut.remove(address) != null)
+		{
+			entry.numFailures++;
+			return;
+		}
+
+		entry.lastSeenMs = nowMs;
+
+		if (pingMs != Long.MAX_VALUE)
+			entry.pingMs = entry.pingMs >= 0 ? (entry.pingMs * 3 + pingMs) / 4 : pingMs;
+	}
+
+	public synchronized void onBlockServed(@Nonnull final InetSocketAddress address)
+	{
+		entry(address).blocksServed++;
+	}
+
+	/**
+	 * @return the given addresses, best scoring first; unknown addresses rank in the middle
+	 */
+	public synchronized List<InetSocketAddress> sort(@Nonnull final List<InetSocketAddress> addresses)
+	{
+		final Map<InetSocketAddress, Entry> entries = entries();
+		final Entry unknown = new Entry();
+		final List<InetSocketAddress> sorted = new ArrayList<InetSocketAddress>(addresses);
+
+		Collections.sort(sorted, new Comparator<InetSocketAddress>()
+		{
+			@Override
+			public int compare(final InetSocketAddress lhs, final InetSocketAddress rhs)
+			{
+				final Entry lhsEntry = entries.get(lhs);
+				final Entry rhsEntry = entries.get(rhs);
+				final long lhsScore = (lhsEntry != null ? lhsEntry : unknown).score();
+				final long rhsScore = (rhsEntry != null ? rhsEntry : unknown).score();
+
+				return lhsScore < rhsScore ? -1 : (lhsScore > rhsScore ? 1 : 0);
+			}
+		});
+
+		return sorted;
+	}
+
+	private Entry entry(final InetSocketAddress address)
+	{
+		final Map<InetSocketAddress, Entry> entries = entries();
+		Entry entry = entries.get(address);
+		if (entry == null)
+		{
+			entry = new Entry();
+			entries.put(address, entry);
+		}
+		return entry;
+	}
+
+	private Map<InetSocketAddress, Entry> entries()
+	{
+		if (entries == null)
+		{
+			entries = new LinkedHashMap<InetSocketAddress, Entry>(64, 0.75f, true)
+			{
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<InetSocketAddress, Entry> eldest)
+				{
+					return size() > MAX_ENTRIES;
+				}
+			};
+
+			if (file.exists())
+				load();
+		}
+
+		return entries;
+	}
+
+	private void load()
+	{
+		DataInputStream is = null;
+
+		try
+		{
+			is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			if (is.readInt() != FILE_VERSION)
+				return;
+
+			final int numEntries = is.readInt();
+			for (int i = 0; i < numEntries; i++)
+			{
+				final byte[] addressBytes = new byte[is.readUnsignedByte()];
+				is.readFully(addressBytes);
+				final InetSocketAddress address = new InetSocketAddress(InetAddress.getByAddress(addressBytes), is.readUnsignedShort());
+
+				final Entry entry = new Entry();
+				entry.numConnects = is.readInt();
+				entry.numFailures = is.readInt();
+				entry.connectMs = is.readLong();
+				entry.pingMs = is.readLong();
+				entry.blocksServed = is.readInt();
+				entry.lastSeenMs = is.readLong();
+				entries.put(address, entry);
+			}
+
+			log.info("loaded stats of {} peers", entries.size());
+		}
+		catch (final IOException x)
+		{
+			log.info("problem loading peer stats, starting over", x);
+			entries.clear();
+		}
+		finally
+		{
+			if (is != null)
+			{
+				try
+				{
+					is.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	public synchronized void save()
+	{
+		if (entries == null)
+			return; // never loaded, so nothing changed
+
+		final File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream os = null;
+
+		try
+		{
+			os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+			final List<Map.Entry<InetSocketAddress, Entry>> resolved = new ArrayList<Map.Entry<InetSocketAddress, Entry>>(entries.size());
+			for (final Map.Entry<InetSocketAddress, Entry> mapEntry : entries.entrySet())
+				if (mapEntry.getKey().getAddress() != null)
+					resolved.add(mapEntry);
+
+			os.writeInt(FILE_VERSION);
+			os.writeInt(resolved.size());
+			for (final Map.Entry<InetSocketAddress, Entry> mapEntry : resolved)
+			{
+				final byte[] addressBytes = mapEntry.getKey().getAddress().getAddress();
+				os.writeByte(addressBytes.length);
+				os.write(addressBytes);
+				os.writeShort(mapEntry.getKey().getPort());
+
+				final Entry entry = mapEntry.getValue();
+				os.writeInt(entry.numConnects);
+				os.writeInt(entry.numFailures);
+				os.writeLong(entry.connectMs);
+				os.writeLong(entry.pingMs);
+				os.writeInt(entry.blocksServed);
+				os.writeLong(entry.lastSeenMs);
+			}
+
+			os.close();
+			os = null;
+
+			if (!tempFile.renameTo(file))
+				log.info("cannot rename {} to {}", tempFile, file);
+		}
+		catch (final IOException x)
+		{
+			log.info("problem saving peer stats", x);
+		}
+		finally
+		{
+			if (os != null)
+			{
+				try
+				{
+					os.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+}
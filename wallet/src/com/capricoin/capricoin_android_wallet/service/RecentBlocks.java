@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import com.capricoinj.core.StoredBlock;
+import com.capricoinj.store.BlockStore;
+import com.capricoinj.store.BlockStoreException;
+
+/**
+ * Ring of the most recent blocks of the best chain, newest last. Kept up to date as the chain head moves, so that listing the recent
+ * blocks is a copy rather than a walk through the block store. When the head moves to a different branch, the blocks that are no
+ * longer part of the best chain are dropped and the new branch is read from the store, back to where it joins the ring.
+ *
+ * @author Andreas Schildbach
+ */
+public final class RecentBlocks
+{
+	private final StoredBlock[] ring;
+	private int newest = -1;
+	private int size = 0;
+
+	public RecentBlocks(final int capacity)
+	{
+		this.ring = new StoredBlock[capacity];
+	}
+
+	public int capacity()
+	{
+		return ring.length;
+	}
+
+	public synchronized void clear()
+	{
+		for (int i = 0; i < ring.length; i++)
+			ring[i] = null;
+		newest = -1;
+		size = 0;
+	}
+
+	public synchronized void onChainHead(@Nonnull final StoredBlock head, @Nonnull final BlockStore blockStore) throws BlockStoreException
+	{
+		if (size > 0)
+		{
+			final StoredBlock top = ring[newest];
+
+			if (top.getHeader().getHash().equals(head.getHeader().getHash()))
+				return;
+
+			// common case: the head moved on by one block
+			if (top.getHeader().getHash().equals(head.getHeader().getPrevBlockHash()))
+			{
+				push(head);
+				return;
+			}
+		}
+
+		final LinkedList<StoredBlock> branch = new LinkedList<StoredBlock>();
+		StoredBlock block = head;
+
+		while (block != null && branch.size() < ring.length)
+		{
+			// drop what is above the block, or at its height but on the old branch
+			while (size > 0 && ring[newest].getHeight() > block.getHeight())
+				pop();
+
+			if (size > 0 && ring[newest].getHeight() == block.getHeight())
+			{
+				if (ring[newest].getHeader().getHash().equals(block.getHeader().getHash()))
+					break;
+
+				pop();
+			}
+
+			branch.addFirst(block);
+			block = block.getPrev(blockStore);
+		}
+
+		for (final StoredBlock b : branch)
+			push(b);
+	}
+
+	/**
+	 * @return up to maxBlocks of the most recent blocks, newest first
+	 */
+	public synchronized List<StoredBlock> get(final int maxBlocks)
+	{
+		final int num = Math.min(maxBlocks, size);
+		final List<StoredBlock> blocks = new ArrayList<StoredBlock>(num);
+
+		for (int i = 0; i < num; i++)
+			blocks.add(ring[(newest - i + ring.length) % ring.length]);
+
+		return blocks;
+	}
+
+	private void push(final StoredBlock block)
+	{
+		newest = (newest + 1) % ring.length;
+		ring[newest] = block;
+		if (size < ring.length)
+			size++;
+	}
+
+	private void pop()
+	{
+		ring[newest] = null;
+		newest = (newest - 1 + ring.length) % ring.length;
+		size--;
+	}
+}
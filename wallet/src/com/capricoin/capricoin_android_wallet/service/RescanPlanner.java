@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.capricoinj.core.StoredBlock;
+import com.capricoinj.core.Wallet;
+import com.capricoinj.store.BlockStore;
+import com.capricoinj.store.BlockStoreException;
+
+/**
+ * Works out how far the block store needs to be rewound so that a wallet with freshly imported keys sees all of its transactions,
+ * without throwing away the whole chain.
+ *
+ * @author Andreas Schildbach
+ */
+public final class RescanPlanner
+{
+	/** Safety margin for clock drift and inaccurate key creation times, same as used for checkpointing. */
+	private static final long MARGIN_SECS = 7 * 24 * 60 * 60;
+
+	private static final Logger log = LoggerFactory.getLogger(RescanPlanner.class);
+
+	private RescanPlanner()
+	{
+	}
+
+	/**
+	 * @return time in seconds from which blocks need to be replayed for the given wallet, or 0 if the whole chain is needed
+	 */
+	public static long rescanTimeSecs(@Nonnull final Wallet wallet)
+	{
+		final long earliestKeyCreationTime = wallet.getEarliestKeyCreationTime();
+
+		if (earliestKeyCreationTime <= MARGIN_SECS)
+			return 0;
+
+		return earliestKeyCreationTime - MARGIN_SECS;
+	}
+
+	/**
+	 * Walks back from the chain head to the newest stored block that is older than the given time.
+	 *
+	 * @return block to rewind to, or null if the block store does not reach back far enough
+	 */
+	@CheckForNull
+	public static StoredBlock findRewindTarget(@Nonnull final BlockStore blockStore, final long timeSecs) throws BlockStoreException
+	{
+		if (timeSecs <= 0)
+			return null;
+
+		StoredBlock block = blockStore.getChainHead();
+
+		while (block != null)
+		{
+			if (block.getHeader().getTimeSeconds() <= timeSecs)
+				return block;
+
+			block = block.getPrev(blockStore);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Rewinds the block store and the wallet to the given block. Headers stay in the store, only the chain head is moved.
+	 */
+	public static void rewind(@Nonnull final BlockStore blockStore, @Nonnull final Wallet wallet, @Nonnull final StoredBlock target)
+			throws BlockStoreException
+	{
+		final StoredBlock chainHead = blockStore.getChainHead();
+
+		log.info("rewinding chain from height {} to {}, {} blocks to replay", chainHead.getHeight(), target.getHeight(), chainHead.getHeight()
+				- target.getHeight());
+
+		blockStore.setChainHead(target);
+
+		wallet.clearTransactions(0);
+		wallet.setLastBlockSeenHeight(target.getHeight());
+		wallet.setLastBlockSeenHash(target.getHeader().getHash());
+		wallet.setLastBlockSeenTimeSecs(target.getHeader().getTimeSeconds());
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import com.capricoinj.net.discovery.PeerDiscovery;
+import com.capricoinj.net.discovery.PeerDiscoveryException;
+
+/**
+ * Orders the candidates of another discovery by their {@link PeerStats} score and only offers the best ones. The peer group does not keep
+ * the order of what it gets, so handing out a short list is what makes reconnects reach the fast peers first. Candidates that fail to
+ * connect score worse and make room on the next round.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ScoredPeerDiscovery implements PeerDiscovery
+{
+	private final PeerDiscovery delegate;
+	private final PeerStats peerStats;
+	private final int maxCandidates;
+	private final long connectTimeoutMs;
+
+	public ScoredPeerDiscovery(@Nonnull final PeerDiscovery delegate, @Nonnull final PeerStats peerStats, final int maxCandidates,
+			final long connectTimeoutMs)
+	{
+		this.delegate = delegate;
+		this.peerStats = peerStats;
+		this.maxCandidates = maxCandidates;
+		this.connectTimeoutMs = connectTimeoutMs;
+	}
+
+	@Override
+	public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit) throws PeerDiscoveryException
+	{
+		final long now = System.currentTimeMillis();
+		peerStats.expireHandedOut(now, connectTimeoutMs);
+
+		final List<InetSocketAddress> sorted = peerStats.sort(Arrays.asList(delegate.getPeers(timeoutValue, timeoutUnit)));
+		final List<InetSocketAddress> candidates = sorted.subList(0, Math.min(sorted.size(), maxCandidates));
+
+		for (final InetSocketAddress candidate : candidates)
+			peerStats.onHandedOut(candidate, now);
+
+		return candidates.toArray(new InetSocketAddress[0]);
+	}
+
+	@Override
+	public void shutdown()
+	{
+		delegate.shutdown();
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last successful resolution of each DNS seed, persisted so that a cold start on a flaky network still has addresses to try.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SeedCache
+{
+	private static final int FILE_VERSION = 1;
+
+	private final File file;
+	private Map<String, Resolution> resolutions = null;
+	private boolean dirty = false;
+
+	private static final Logger log = LoggerFactory.getLogger(SeedCache.class);
+
+	private static final class Resolution
+	{
+		final long timeMs;
+		final InetAddress[] addresses;
+
+		Resolution(final long timeMs, final InetAddress[] addresses)
+		{
+			this.timeMs = timeMs;
+			this.addresses = addresses;
+		}
+	}
+
+	public SeedCache(@Nonnull final File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * @return addresses the seed resolved to no longer than maxAgeMs ago, or null
+	 */
+	@CheckForNull
+	public synchronized InetAddress[] get(@Nonnull final String seed, final long maxAgeMs, final long nowMs)
+	{
+		final Resolution resolution = resolutions().get(seed);
+		if (resolution == null || nowMs - resolution.timeMs > maxAgeMs)
+			return null;
+
+		return resolution.addresses;
+	}
+
+	public synchronized void put(@Nonnull final String seed, @Nonnull final InetAddress[] addresses, final long nowMs)
+	{
+		resolutions().put(seed, new Resolution(nowMs, addresses));
+		dirty = true;
+	}
+
+	private Map<String, Resolution> resolutions()
+	{
+		if (resolutions == null)
+		{
+			resolutions = new HashMap<String, Resolution>();
+
+			if (file.exists())
+				load();
+		}
+
+		return resolutions;
+	}
+
+	private void load()
+	{
+		DataInputStream is = null;
+
+		try
+		{
+			is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			if (is.readInt() != FILE_VERSION)
+				return;
+
+			final int numSeeds = is.readInt();
+			for (int i = 0; i < numSeeds; i++)
+			{
+				final String seed = is.readUTF();
+				final long timeMs = is.readLong();
+				final InetAddress[] addresses = new InetAddress[is.readInt()];
+				for (int j = 0; j < addresses.length; j++)
+				{
+					final byte[] addressBytes = new byte[is.readUnsignedByte()];
+					is.readFully(addressBytes);
+					addresses[j] = InetAddress.getByAddress(addressBytes);
+				}
+				resolutions.put(seed, new Resolution(timeMs, addresses));
+			}
+		}
+		catch (final IOException x)
+		{
+			log.info("problem loading seed cache, starting over", x);
+			resolutions.clear();
+		}
+		finally
+		{
+			if (is != null)
+			{
+				try
+				{
+					is.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	public synchronized void save()
+	{
+		if (!dirty)
+			return;
+
+		final File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream os = null;
+
+		try
+		{
+			os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+			os.writeInt(FILE_VERSION);
+			os.writeInt(resolutions.size());
+			for (final Map.Entry<String, Resolution> entry : resolutions.entrySet())
+			{
+				os.writeUTF(entry.getKey());
+				os.writeLong(entry.getValue().timeMs);
+				os.writeInt(entry.getValue().addresses.length);
+				for (final InetAddress address : entry.getValue().addresses)
+				{
+					final byte[] addressBytes = address.getAddress();
+					os.writeByte(addressBytes.length);
+					os.write(addressBytes);
+				}
+			}
+
+			os.close();
+			os = null;
+
+			if (tempFile.renameTo(file))
+				dirty = false;
+			else
+				log.info("cannot rename {} to {}", tempFile, file);
+		}
+		catch (final IOException x)
+		{
+			log.info("problem saving seed cache", x);
+		}
+		finally
+		{
+			if (os != null)
+			{
+				try
+				{
+					os.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+}
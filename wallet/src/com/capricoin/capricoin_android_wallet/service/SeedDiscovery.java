@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.text.format.DateUtils;
+
+import com.capricoinj.net.discovery.PeerDiscovery;
+import com.capricoinj.net.discovery.PeerDiscoveryException;
+
+/**
+ * Resolves all DNS seeds at once under a single deadline, rather than one after the other. Seeds resolved recently are taken from the
+ * {@link SeedCache} without a lookup, and seeds that fail or miss the deadline fall back to older cached results.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SeedDiscovery implements PeerDiscovery
+{
+	/** cached results this young are used without asking DNS again */
+	private static final long FRESH_MS = DateUtils.HOUR_IN_MILLIS;
+	/** cached results up to this age are used if DNS fails */
+	private static final long STALE_MS = DateUtils.WEEK_IN_MILLIS;
+
+	private final String[] seeds;
+	private final int port;
+	private final SeedCache cache;
+	private final ExecutorService executor;
+
+	private static final Logger log = LoggerFactory.getLogger(SeedDiscovery.class);
+
+	public SeedDiscovery(@Nonnull final String[] seeds, final int port, @Nonnull final SeedCache cache)
+	{
+		this.seeds = seeds;
+		this.port = port;
+		this.cache = cache;
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(final Runnable r)
+			{
+				final Thread thread = new Thread(r, "seed resolver");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public InetSocketAddress[] getPeers(final long timeoutValue, final TimeUnit timeoutUnit) throws PeerDiscoveryException
+	{
+		final long start = System.currentTimeMillis();
+		final long deadline = start + timeoutUnit.toMillis(timeoutValue);
+
+		final List<String> toResolve = new ArrayList<String>(seeds.length);
+		final List<Future<InetAddress[]>> futures = new ArrayList<Future<InetAddress[]>>(seeds.length);
+		final List<InetSocketAddress> peers = new ArrayList<InetSocketAddress>();
+
+		for (final String seed : seeds)
+		{
+			final InetAddress[] fresh = cache.get(seed, FRESH_MS, start);
+			if (fresh != null)
+			{
+				addAll(peers, fresh);
+				continue;
+			}
+
+			toResolve.add(seed);
+			futures.add(executor.submit(new Callable<InetAddress[]>()
+			{
+				@Override
+				public InetAddress[] call() throws Exception
+				{
+					return InetAddress.getAllByName(seed);
+				}
+			}));
+		}
+
+		int numResolved = 0, numFromCache = seeds.length - toResolve.size();
+		for (int i = 0; i < toResolve.size(); i++)
+		{
+			final String seed = toResolve.get(i);
+			final Future<InetAddress[]> future = futures.get(i);
+
+			try
+			{
+				final InetAddress[] addresses = future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+				cache.put(seed, addresses, System.currentTimeMillis());
+				addAll(peers, addresses);
+				numResolved++;
+				continue;
+			}
+			catch (final ExecutionException x)
+			{
+				log.info("seed {} failed: {}", seed, x.getCause().toString());
+			}
+			catch (final TimeoutException x)
+			{
+				log.info("seed {} missed the deadline", seed);
+				future.cancel(true);
+			}
+			catch (final InterruptedException x)
+			{
+				future.cancel(true);
+				Thread.currentThread().interrupt();
+			}
+
+			final InetAddress[] stale = cache.get(seed, STALE_MS, System.currentTimeMillis());
+			if (stale != null)
+			{
+				addAll(peers, stale);
+				numFromCache++;
+			}
+		}
+
+		cache.save();
+
+		log.info("{} seeds resolved, {} from cache, {} peers, took {} ms", numResolved, numFromCache, peers.size(),
+				System.currentTimeMillis() - start);
+
+		if (peers.isEmpty())
+			throw new PeerDiscoveryException("no seed could be resolved");
+
+		// seeds often list their best nodes first, don't let one seed dominate
+		Collections.shuffle(peers);
+
+		return peers.toArray(new InetSocketAddress[0]);
+	}
+
+	private void addAll(final List<InetSocketAddress> peers, final InetAddress[] addresses)
+	{
+		for (final InetAddress address : addresses)
+			peers.add(new InetSocketAddress(address, port));
+	}
+
+	@Override
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import javax.annotation.Nonnull;
+
+import android.text.format.DateUtils;
+
+import com.capricoin.capricoin_android_wallet.Constants;
+
+/**
+ * Decides when the blockchain service should run next. What matters is passed in as {@link Conditions}, and the decision is made by a
+ * {@link Policy}, which can be swapped. Time comes from a {@link Clock}, so that the scheduler and {@link ActivityTracker} can be driven
+ * by a simulated clock in tests.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SyncScheduler
+{
+	public interface Clock
+	{
+		long currentTimeMillis();
+	}
+
+	public static final Clock SYSTEM_CLOCK = new Clock()
+	{
+		@Override
+		public long currentTimeMillis()
+		{
+			return System.currentTimeMillis();
+		}
+	};
+
+	public static final class Conditions
+	{
+		/** time since the user last opened the app */
+		public long lastUsedAgoMs;
+		/** outgoing transactions not yet propagated */
+		public int numQueuedBroadcasts;
+		/** for example open invoices in merchant mode */
+		public boolean expectingPayment;
+		public boolean charging;
+		public boolean unmeteredNetwork;
+		/** blocks arriving at the tip as last observed by the service, or -1 if unknown */
+		public float blocksPerHour = -1;
+	}
+
+	public static final class Decision
+	{
+		public final long delayMs;
+		public final String reason;
+
+		public Decision(final long delayMs, @Nonnull final String reason)
+		{
+			this.delayMs = delayMs;
+			this.reason = reason;
+		}
+
+		@Override
+		public String toString()
+		{
+			return delayMs / DateUtils.SECOND_IN_MILLIS + " s: " + reason;
+		}
+	}
+
+	public interface Policy
+	{
+		@Nonnull
+		Decision decide(@Nonnull Conditions conditions);
+	}
+
+	/**
+	 * Backs off with usage recency as before, then lets urgent work pull the next sync in, cheap power and network stretch or shorten
+	 * it, and never polls faster than blocks arrive unless something is urgent.
+	 */
+	public static final Policy DEFAULT_POLICY = new Policy()
+	{
+		private static final long URGENT_MS = 30 * DateUtils.SECOND_IN_MILLIS;
+		private static final long EXPECTING_PAYMENT_MS = DateUtils.MINUTE_IN_MILLIS;
+		private static final long MAX_MS = DateUtils.HOUR_IN_MILLIS;
+
+		@Override
+		public Decision decide(final Conditions conditions)
+		{
+			final StringBuilder reason = new StringBuilder();
+
+			long delay;
+			if (conditions.lastUsedAgoMs < Constants.LAST_USAGE_THRESHOLD_JUST_MS)
+			{
+				delay = 30 * DateUtils.SECOND_IN_MILLIS;
+				reason.append("just used");
+			}
+			else if (conditions.lastUsedAgoMs < Constants.LAST_USAGE_THRESHOLD_RECENTLY_MS)
+			{
+				delay = 10 * DateUtils.MINUTE_IN_MILLIS;
+				reason.append("used recently");
+			}
+			else
+			{
+				delay = 30 * DateUtils.MINUTE_IN_MILLIS;
+				reason.append("not used recently");
+			}
+
+			if (conditions.numQueuedBroadcasts > 0)
+			{
+				delay = Math.min(delay, URGENT_MS);
+				reason.append(", ").append(conditions.numQueuedBroadcasts).append(" transactions to broadcast");
+				return new Decision(delay, reason.toString());
+			}
+
+			if (conditions.expectingPayment)
+			{
+				delay = Math.min(delay, EXPECTING_PAYMENT_MS);
+				reason.append(", expecting payment");
+				return new Decision(delay, reason.toString());
+			}
+
+			if (conditions.charging && conditions.unmeteredNetwork)
+			{
+				delay /= 2;
+				reason.append(", charging on unmetered network");
+			}
+			else if (!conditions.charging && !conditions.unmeteredNetwork)
+			{
+				delay = Math.min(delay * 2, MAX_MS);
+				reason.append(", on battery and metered network");
+			}
+
+			if (conditions.blocksPerHour > 0)
+			{
+				// syncing more often than every other block finds nothing new most of the time
+				final long halfBlockIntervalMs = (long) (DateUtils.HOUR_IN_MILLIS / conditions.blocksPerHour / 2);
+				if (halfBlockIntervalMs > delay)
+				{
+					delay = Math.min(halfBlockIntervalMs, MAX_MS);
+					reason.append(", ").append(String.format("%.1f", conditions.blocksPerHour)).append(" blocks per hour");
+				}
+			}
+
+			return new Decision(delay, reason.toString());
+		}
+	};
+
+	private final Clock clock;
+	private Policy policy;
+	private volatile float observedBlocksPerHour = -1;
+
+	public SyncScheduler(@Nonnull final Clock clock, @Nonnull final Policy policy)
+	{
+		this.clock = clock;
+		this.policy = policy;
+	}
+
+	public Clock getClock()
+	{
+		return clock;
+	}
+
+	public synchronized void setPolicy(@Nonnull final Policy policy)
+	{
+		this.policy = policy;
+	}
+
+	/** to be reported by the service before it stops, so that the next schedule can take it into account */
+	public void setObservedBlocksPerHour(final float blocksPerHour)
+	{
+		this.observedBlocksPerHour = blocksPerHour;
+	}
+
+	public float getObservedBlocksPerHour()
+	{
+		return observedBlocksPerHour;
+	}
+
+	/**
+	 * @return the decision, with {@link Decision#delayMs} relative to the clock's current time
+	 */
+	public synchronized Decision schedule(@Nonnull final Conditions conditions)
+	{
+		if (conditions.blocksPerHour < 0)
+			conditions.blocksPerHour = observedBlocksPerHour;
+
+		return policy.decide(conditions);
+	}
+
+	/** @return absolute time on the clock at which to run next */
+	public long nextRunAt(@Nonnull final Decision decision)
+	{
+		return clock.currentTimeMillis() + decision.delayMs;
+	}
+}
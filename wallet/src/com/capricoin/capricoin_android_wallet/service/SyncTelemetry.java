@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window over the blocks downloaded in the last {@link #WINDOW_SECS} seconds, in one-second buckets. Gives the download rate in
+ * blocks and bytes and, together with the number of blocks the peer said are left, an estimate of the time until the chain is synced.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SyncTelemetry
+{
+	public static final int WINDOW_SECS = 30;
+
+	private final long[] bucketSecs = new long[WINDOW_SECS];
+	private final int[] bucketBlocks = new int[WINDOW_SECS];
+	private final long[] bucketBytes = new long[WINDOW_SECS];
+	private long firstSampleMs = 0;
+	private int blocksLeft = 0;
+
+	public synchronized void onBlockDownloaded(final long nowMs, final int numBytes, final int blocksLeft)
+	{
+		if (firstSampleMs == 0 || blocksLeft > this.blocksLeft)
+		{
+			// a new download started, rates of the previous one do not apply
+			Arrays.fill(bucketSecs, 0);
+			firstSampleMs = nowMs;
+		}
+		this.blocksLeft = blocksLeft;
+
+		final long sec = nowMs / 1000;
+		final int index = (int) (sec % WINDOW_SECS);
+
+		if (bucketSecs[index] != sec)
+		{
+			bucketSecs[index] = sec;
+			bucketBlocks[index] = 0;
+			bucketBytes[index] = 0;
+		}
+
+		bucketBlocks[index]++;
+		bucketBytes[index] += numBytes;
+	}
+
+	public synchronized float getBlocksPerSecond(final long nowMs)
+	{
+		long blocks = 0;
+		final long sec = nowMs / 1000;
+		for (int i = 0; i < WINDOW_SECS; i++)
+			if (sec - bucketSecs[i] < WINDOW_SECS)
+				blocks += bucketBlocks[i];
+
+		return blocks / windowSecs(nowMs);
+	}
+
+	public synchronized long getBytesPerSecond(final long nowMs)
+	{
+		long bytes = 0;
+		final long sec = nowMs / 1000;
+		for (int i = 0; i < WINDOW_SECS; i++)
+			if (sec - bucketSecs[i] < WINDOW_SECS)
+				bytes += bucketBytes[i];
+
+		return (long) (bytes / windowSecs(nowMs));
+	}
+
+	public synchronized int getBlocksLeft()
+	{
+		return blocksLeft;
+	}
+
+	/**
+	 * @return estimated milliseconds until no blocks are left, or -1 if there is no current download to base an estimate on
+	 */
+	public long getEtaMs(final long nowMs)
+	{
+		final int blocksLeft = getBlocksLeft();
+		if (blocksLeft == 0)
+			return 0;
+
+		final float blocksPerSecond = getBlocksPerSecond(nowMs);
+		if (blocksPerSecond <= 0)
+			return -1;
+
+		return (long) (blocksLeft / blocksPerSecond * 1000);
+	}
+
+	/** the window is shorter while a download has only just started, which would otherwise underestimate the rate */
+	private float windowSecs(final long nowMs)
+	{
+		final float sinceFirstSample = (nowMs - firstSampleMs) / 1000f;
+		return Math.max(1, Math.min(WINDOW_SECS, sinceFirstSample));
+	}
+}
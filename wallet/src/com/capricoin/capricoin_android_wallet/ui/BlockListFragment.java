@@ -32,7 +32,6 @@ import android.content.ServiceConnection;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.format.DateUtils;
 import android.view.ActionMode;
 import android.view.LayoutInflater;
@@ -51,9 +50,11 @@ import com.capricoin.capricoin_android_wallet.R;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.service.BlockchainService;
 import com.capricoin.capricoin_android_wallet.service.BlockchainServiceImpl;
+import com.capricoin.capricoin_android_wallet.service.BlockchainState;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
 import com.capricoin.capricoin_android_wallet.util.WalletUtils;
+import com.capricoin.capricoin_android_wallet.util.WalletTransactions;
 import com.capricoinj.core.Block;
-import com.capricoinj.core.Sha256Hash;
 import com.capricoinj.core.StoredBlock;
 import com.capricoinj.core.Transaction;
 import com.capricoinj.core.Wallet;
@@ -63,9 +64,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -383,14 +382,14 @@ public final class BlockListFragment extends ListFragment
 
 	private static class BlockLoader extends AsyncTaskLoader<List<StoredBlock>>
 	{
-		private LocalBroadcastManager broadcastManager;
+		private final WalletApplication application;
 		private BlockchainService service;
 
 		private BlockLoader(final Context context, final BlockchainService service)
 		{
 			super(context);
 
-			this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+			this.application = (WalletApplication) context.getApplicationContext();
 			this.service = service;
 		}
 
@@ -399,7 +398,7 @@ public final class BlockListFragment extends ListFragment
 		{
 			super.onStartLoading();
 
-			broadcastManager.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+			application.getBlockchainState().subscribe(blockchainStateObserver, ObservableState.MAIN_THREAD);
 
 			forceLoad();
 		}
@@ -407,7 +406,7 @@ public final class BlockListFragment extends ListFragment
 		@Override
 		protected void onStopLoading()
 		{
-			broadcastManager.unregisterReceiver(broadcastReceiver);
+			application.getBlockchainState().unsubscribe(blockchainStateObserver);
 
 			super.onStopLoading();
 		}
@@ -418,10 +417,10 @@ public final class BlockListFragment extends ListFragment
 			return service.getRecentBlocks(MAX_BLOCKS);
 		}
 
-		private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+		private final ObservableState.Observer<BlockchainState> blockchainStateObserver = new ObservableState.Observer<BlockchainState>()
 		{
 			@Override
-			public void onReceive(final Context context, final Intent intent)
+			public void onStateChanged(final BlockchainState blockchainState)
 			{
 				try
 				{
@@ -474,17 +473,7 @@ public final class BlockListFragment extends ListFragment
 		@Override
 		public Set<Transaction> loadInBackground()
 		{
-			final Set<Transaction> transactions = wallet.getTransactions(true);
-
-			final Set<Transaction> filteredTransactions = new HashSet<Transaction>(transactions.size());
-			for (final Transaction tx : transactions)
-			{
-				final Map<Sha256Hash, Integer> appearsIn = tx.getAppearsInHashes();
-				if (appearsIn != null && !appearsIn.isEmpty()) // TODO filter by updateTime
-					filteredTransactions.add(tx);
-			}
-
-			return filteredTransactions;
+			return WalletTransactions.inBlocks(wallet);
 		}
 	}
 
@@ -26,12 +26,16 @@ import org.slf4j.LoggerFactory;
 
 import com.capricoinj.core.BlockChain;
 import com.capricoinj.core.CheckpointManager;
+import com.capricoinj.core.StoredBlock;
 import com.capricoinj.core.Wallet;
 import com.capricoinj.store.BlockStoreException;
 import com.capricoinj.store.SPVBlockStore;
 import com.capricoinj.store.ValidHashStore;
+import com.capricoin.capricoin_android_wallet.Configuration;
 import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
+import com.capricoin.capricoin_android_wallet.service.RescanPlanner;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
@@ -63,10 +67,17 @@ public class BlockchainLoader extends AsyncTaskLoader<BlockchainData> {
 	@Override
 	public BlockchainData loadInBackground() {
 		
+		final long loadStart = System.currentTimeMillis();
 		final Wallet wallet = application.getWallet();
+		final Configuration config = application.getConfiguration();
 		final boolean blockChainFileExists = bcd.blockChainFile.exists();
 
-		if (!blockChainFileExists) {
+		if (blockChainFileExists && config.hasPendingRescan())
+			rewindForRescan(wallet, config.getPendingRescanTime());
+
+		config.clearPendingRescan();
+
+		if (!bcd.blockChainFile.exists()) {
 			log.info("blockchain does not exist, resetting wallet");
 
 			wallet.clearTransactions(0);
@@ -107,6 +118,7 @@ public class BlockchainLoader extends AsyncTaskLoader<BlockchainData> {
 				long start = System.currentTimeMillis();
 				final InputStream checkpointsInputStream = this.context.getAssets().open(Constants.CHECKPOINTS_FILENAME);
 				CheckpointManager.checkpoint(Constants.NETWORK_PARAMETERS, checkpointsInputStream, bcd.blockStore, this.application.getWallet().getEarliestKeyCreationTime());
+				Metrics.histogram("blockchain.checkpoints_load_ms").recordSince(start);
 				log.info("##########################################################################checkpoints loaded from '{}', took {}ms", Constants.CHECKPOINTS_FILENAME, System.currentTimeMillis() - start);
 			}
 		} catch (IOException io) {
@@ -135,10 +147,46 @@ public class BlockchainLoader extends AsyncTaskLoader<BlockchainData> {
 			throw new Error("blockchain cannot be created", x);
 		}
 		
+		Metrics.histogram("blockchain.load_ms").recordSince(loadStart);
+
 		return bcd;
 		
 	}
         
+	private void rewindForRescan(final Wallet wallet, final long rescanTimeSecs) {
+
+		SPVBlockStore blockStore = null;
+
+		try {
+			blockStore = new SPVBlockStore(Constants.NETWORK_PARAMETERS, bcd.blockChainFile);
+
+			final StoredBlock target = RescanPlanner.findRewindTarget(blockStore, rescanTimeSecs);
+
+			if (target != null) {
+				RescanPlanner.rewind(blockStore, wallet, target);
+				blockStore.close();
+				return;
+			}
+
+			log.info("block store does not reach back to {}, replaying whole chain", rescanTimeSecs);
+			blockStore.close();
+		} catch (final BlockStoreException x) {
+			log.warn("cannot rewind block store, replaying whole chain", x);
+
+			if (blockStore != null) {
+				try {
+					blockStore.close();
+				} catch (final BlockStoreException x2) {
+					// swallow
+				}
+			}
+		}
+
+		// fall back to a full reset, the checkpoints will still skip everything before the earliest key
+		bcd.blockChainFile.delete();
+		bcd.validHashStoreFile.delete();
+	}
+        
         public void stopLoading(boolean resetBlockchain) {
 		this.resetBlockchain = resetBlockchain;
 		super.stopLoading();
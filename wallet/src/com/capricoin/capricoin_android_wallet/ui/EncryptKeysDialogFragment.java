@@ -276,6 +276,7 @@ public class EncryptKeysDialogFragment extends DialogFragment
 							if (newKey != null)
 								wallet.encrypt(keyCrypter, newKey);
 
+							application.getEncryptionKeyCache().wipe();
 							application.backupWallet();
 							
 							state = State.DONE;
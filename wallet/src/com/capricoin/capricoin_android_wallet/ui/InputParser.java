@@ -30,7 +30,6 @@ import com.capricoinj.core.Transaction;
 import com.capricoinj.core.VerificationException;
 import com.capricoinj.core.VersionedChecksummedBytes;
 import com.capricoinj.crypto.BIP38PrivateKey;
-import com.capricoinj.crypto.TrustStoreLoader;
 import com.capricoinj.protocols.payments.PaymentProtocol;
 import com.capricoinj.protocols.payments.PaymentProtocolException;
 import com.capricoinj.protocols.payments.PaymentSession;
@@ -43,6 +42,7 @@ import com.google.protobuf.UninitializedMessageException;
 import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.R;
 import com.capricoin.capricoin_android_wallet.data.PaymentIntent;
+import com.capricoin.capricoin_android_wallet.data.PaymentRequestCache;
 import com.capricoin.capricoin_android_wallet.util.Io;
 import com.capricoin.capricoin_android_wallet.util.Qr;
 
@@ -50,11 +50,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.regex.Pattern;
@@ -358,19 +355,30 @@ public abstract class InputParser
 			if (serializedPaymentRequest.length > 50000)
 				throw new PaymentProtocolException("payment request too big: " + serializedPaymentRequest.length);
 
+			final byte[] paymentRequestHash = Hashing.sha256().hashBytes(serializedPaymentRequest).asBytes();
+
+			final PaymentIntent verifiedPaymentIntent = PaymentRequestCache.getVerifiedRequest(paymentRequestHash);
+			if (verifiedPaymentIntent != null)
+			{
+				log.info("payment request already verified");
+
+				return verifiedPaymentIntent;
+			}
+
 			final Protos.PaymentRequest paymentRequest = Protos.PaymentRequest.parseFrom(serializedPaymentRequest);
 
+			final PaymentRequestCache.VerifiedChain verifiedChain;
 			final String pkiName;
 			final String pkiCaName;
 			if (!"none".equals(paymentRequest.getPkiType()))
 			{
-				final KeyStore keystore = new TrustStoreLoader.DefaultTrustStoreLoader().getKeyStore();
-				final PaymentProtocol.PkiVerificationData verificationData = PaymentProtocol.verifyPaymentRequestPki(paymentRequest, keystore);
-				pkiName = verificationData.displayName;
-				pkiCaName = verificationData.rootAuthorityName;
+				verifiedChain = PaymentRequestCache.verifyPki(paymentRequest);
+				pkiName = verifiedChain.displayName;
+				pkiCaName = verifiedChain.rootAuthorityName;
 			}
 			else
 			{
+				verifiedChain = null;
 				pkiName = null;
 				pkiCaName = null;
 			}
@@ -394,14 +402,14 @@ public abstract class InputParser
 
 			final byte[] merchantData = paymentSession.getMerchantData();
 
-			final byte[] paymentRequestHash = Hashing.sha256().hashBytes(serializedPaymentRequest).asBytes();
-
 			final PaymentIntent paymentIntent = new PaymentIntent(PaymentIntent.Standard.BIP70, pkiName, pkiCaName,
 					outputs.toArray(new PaymentIntent.Output[0]), memo, paymentUrl, merchantData, null, paymentRequestHash);
 
 			if (paymentIntent.hasPaymentUrl() && !paymentIntent.isSupportedPaymentUrl())
 				throw new PaymentProtocolException.InvalidPaymentURL("cannot handle payment url: " + paymentIntent.paymentUrl);
 
+			PaymentRequestCache.putVerifiedRequest(paymentIntent, paymentSession.getExpires(), verifiedChain);
+
 			return paymentIntent;
 		}
 		catch (final InvalidProtocolBufferException x)
@@ -412,14 +420,6 @@ public abstract class InputParser
 		{
 			throw new PaymentProtocolException(x);
 		}
-		catch (final FileNotFoundException x)
-		{
-			throw new RuntimeException(x);
-		}
-		catch (final KeyStoreException x)
-		{
-			throw new RuntimeException(x);
-		}
 	}
 
 	protected abstract void handlePaymentIntent(@Nonnull PaymentIntent paymentIntent);
@@ -23,21 +23,16 @@ import java.util.List;
 import android.app.Activity;
 import android.app.Fragment;
 import android.app.FragmentManager;
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Bundle;
-import android.support.v4.content.LocalBroadcastManager;
 
 import com.capricoinj.core.Transaction;
 import com.capricoinj.wallet.DeterministicUpgradeRequiresPassword;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import com.capricoin.capricoin_android_wallet.service.BlockchainService;
 import com.capricoin.capricoin_android_wallet.service.BlockchainState;
 import com.capricoin.capricoin_android_wallet.ui.send.MaintenanceDialogFragment;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
 
 /**
  * @author Andreas Schildbach
@@ -58,7 +53,6 @@ public class MaybeMaintenanceFragment extends Fragment
 
 	private WalletActivity activity;
 	private WalletApplication application;
-	private LocalBroadcastManager broadcastManager;
 	private boolean dialogWasShown = false;
 
 	@Override
@@ -68,7 +62,6 @@ public class MaybeMaintenanceFragment extends Fragment
 
 		this.activity = (WalletActivity) activity;
 		application = this.activity.getWalletApplication();
-		broadcastManager = LocalBroadcastManager.getInstance(activity);
 	}
 
 	@Override
@@ -88,7 +81,7 @@ public class MaybeMaintenanceFragment extends Fragment
 
 		    @Override
 		    public void run() {
-			broadcastManager.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_BLOCKCHAIN_STATE));
+			application.getBlockchainState().subscribe(blockchainStateObserver, ObservableState.MAIN_THREAD);
 		    }
 		    
 		});
@@ -98,18 +91,16 @@ public class MaybeMaintenanceFragment extends Fragment
 	@Override
 	public void onPause()
 	{
-		broadcastManager.unregisterReceiver(broadcastReceiver);
+		application.getBlockchainState().unsubscribe(blockchainStateObserver);
 
 		super.onPause();
 	}
 
-	private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+	private final ObservableState.Observer<BlockchainState> blockchainStateObserver = new ObservableState.Observer<BlockchainState>()
 	{
 		@Override
-		public void onReceive(final Context context, final Intent broadcast)
+		public void onStateChanged(final BlockchainState blockchainState)
 		{
-			final BlockchainState blockchainState = BlockchainState.fromIntent(broadcast);
-
 			if (!dialogWasShown && blockchainState.loaded && !blockchainState.replaying && maintenanceRecommended())
 			{
 				MaintenanceDialogFragment.show(getFragmentManager());
@@ -32,18 +32,15 @@ import android.app.Activity;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.AsyncTaskLoader;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.Loader;
 import android.content.ServiceConnection;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -53,8 +50,10 @@ import android.widget.TextView;
 
 import com.capricoinj.core.Peer;
 import com.capricoinj.core.VersionMessage;
+import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.service.BlockchainService;
 import com.capricoin.capricoin_android_wallet.service.BlockchainServiceImpl;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
 import com.capricoin.capricoin_android_wallet.util.WholeStringBuilder;
 import com.capricoin.capricoin_android_wallet.R;
 
@@ -238,14 +237,14 @@ public final class PeerListFragment extends FancyListFragment
 
 	private static class PeerLoader extends AsyncTaskLoader<List<Peer>>
 	{
-		private LocalBroadcastManager broadcastManager;
+		private final WalletApplication application;
 		private BlockchainService service;
 
 		private PeerLoader(final Context context, @Nonnull final BlockchainService service)
 		{
 			super(context);
 
-			this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+			this.application = (WalletApplication) context.getApplicationContext();
 			this.service = service;
 		}
 
@@ -254,7 +253,7 @@ public final class PeerListFragment extends FancyListFragment
 		{
 			super.onStartLoading();
 
-			broadcastManager.registerReceiver(broadcastReceiver, new IntentFilter(BlockchainService.ACTION_PEER_STATE));
+			application.getPeerState().subscribe(peerStateObserver, ObservableState.MAIN_THREAD);
 
 			forceLoad();
 		}
@@ -262,7 +261,7 @@ public final class PeerListFragment extends FancyListFragment
 		@Override
 		protected void onStopLoading()
 		{
-			broadcastManager.unregisterReceiver(broadcastReceiver);
+			application.getPeerState().unsubscribe(peerStateObserver);
 
 			super.onStopLoading();
 		}
@@ -273,10 +272,10 @@ public final class PeerListFragment extends FancyListFragment
 			return service.getConnectedPeers();
 		}
 
-		private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+		private final ObservableState.Observer<Integer> peerStateObserver = new ObservableState.Observer<Integer>()
 		{
 			@Override
-			public void onReceive(final Context context, final Intent intent)
+			public void onStateChanged(final Integer numPeers)
 			{
 				try
 				{
@@ -64,6 +64,7 @@ import android.widget.TextView;
 
 import com.capricoinj.core.Address;
 import com.capricoinj.core.Coin;
+import com.capricoinj.core.Transaction;
 import com.capricoinj.core.Wallet;
 import com.capricoinj.protocols.payments.PaymentProtocol;
 import com.capricoinj.uri.PeercoinURI;
@@ -71,6 +72,7 @@ import com.capricoin.capricoin_android_wallet.Configuration;
 import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.ExchangeRatesProvider;
 import com.capricoin.capricoin_android_wallet.ExchangeRatesProvider.WalletExchangeRate;
+import com.capricoin.capricoin_android_wallet.InvoicePool;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.offline.AcceptBluetoothService;
 import com.capricoin.capricoin_android_wallet.ui.send.SendCoinsActivity;
@@ -110,6 +112,8 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 	private static final int REQUEST_CODE_ENABLE_BLUETOOTH = 0;
 
 	private Address address;
+	@CheckForNull
+	private InvoicePool.Invoice invoice;
 	private CurrencyCalculatorLink amountCalculatorLink;
 
 	private static final int ID_RATE_LOADER = 0;
@@ -183,7 +187,10 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 
 				@Override
 				public void run() {
-					address = wallet.freshReceiveAddress();
+					if (config.getMerchantModeEnabled())
+						issueInvoice();
+					else
+						address = wallet.freshReceiveAddress();
 				}
 
 			});
@@ -305,6 +312,9 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 			@Override
 			public void run() {
 				loaderManager.initLoader(ID_RATE_LOADER, null, rateLoaderCallbacks);
+				final InvoicePool invoicePool = application.peekInvoicePool();
+				if (invoice != null && invoicePool != null)
+					invoicePool.addListener(invoiceListener);
 				updateView();
 			}
 			
@@ -325,6 +335,10 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 	{
 		loaderManager.destroyLoader(ID_RATE_LOADER);
 
+		final InvoicePool invoicePool = application.peekInvoicePool();
+		if (invoicePool != null)
+			invoicePool.removeListener(invoiceListener);
+
 		amountCalculatorLink.setListener(null);
 
 		super.onPause();
@@ -346,8 +360,40 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 	private void restoreInstanceState(final Bundle savedInstanceState)
 	{
 		address = new Address(Constants.NETWORK_PARAMETERS, savedInstanceState.getByteArray("receive_address"));
+
+		activity.runAfterLoad(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (config.getMerchantModeEnabled())
+					invoice = application.getInvoicePool().getOpenInvoice(address);
+			}
+		});
+	}
+
+	private void issueInvoice()
+	{
+		invoice = application.getInvoicePool().issue(null);
+		address = invoice.address;
 	}
 
+	private final InvoicePool.Listener invoiceListener = new InvoicePool.Listener()
+	{
+		@Override
+		public void onInvoicePaid(final InvoicePool.Invoice paidInvoice, final Transaction tx)
+		{
+			if (paidInvoice != invoice)
+				return;
+
+			activity.toast(R.string.request_coins_invoice_paid_msg, paidInvoice.address.toString());
+
+			// hand out the next prepared request right away
+			issueInvoice();
+			updateView();
+		}
+	};
+
 	@Override
 	public void onActivityResult(final int requestCode, final int resultCode, final Intent data)
 	{
@@ -459,14 +505,25 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 		final String capricoinjRequest = determinePeercoinRequestStr(true);
 		final byte[] paymentRequest = determinePaymentRequest(true);
 
+		if (invoice != null)
+			invoice.setAmount(amountCalculatorLink.getAmount());
+
 		// update qr-code
-		final int size = getResources().getDimensionPixelSize(R.dimen.bitmap_dialog_qr_size);
-		final String qrContent;
-		if (config.getQrPaymentRequestEnabled())
-			qrContent = "capricoin:-" + Qr.encodeBinary(paymentRequest);
+		if (invoice != null && !config.getQrPaymentRequestEnabled() && amountCalculatorLink.getAmount() == null && bluetoothMac == null)
+		{
+			// plain request as prepared by the invoice pool
+			qrCodeBitmap = invoice.qrCodeBitmap;
+		}
 		else
-			qrContent = capricoinjRequest;
-		qrCodeBitmap = Qr.bitmap(qrContent, size);
+		{
+			final int size = getResources().getDimensionPixelSize(R.dimen.bitmap_dialog_qr_size);
+			final String qrContent;
+			if (config.getQrPaymentRequestEnabled())
+				qrContent = "capricoin:-" + Qr.encodeBinary(paymentRequest);
+			else
+				qrContent = capricoinjRequest;
+			qrCodeBitmap = Qr.bitmap(qrContent, size);
+		}
 		qrView.setImageBitmap(qrCodeBitmap);
 
 		// update initiate request message
@@ -29,7 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
-public class RestoreWalletTask extends AsyncTask<Void, Void, IOException> {
+public class RestoreWalletTask extends AsyncTask<Void, Integer, IOException> {
 
 	private enum WalletType {
 		WALLET_TYPE_ENCRYPTED_FILE,
@@ -71,7 +71,7 @@ public class RestoreWalletTask extends AsyncTask<Void, Void, IOException> {
 				final byte[] plainText = Crypto.decryptBytes(cipherText.toString(), password.toCharArray());
 				final InputStream is = new ByteArrayInputStream(plainText);
 
-				wallet = WalletUtils.restoreWalletFromProtobufOrBase58(is);
+				wallet = WalletUtils.restoreWalletFromProtobufOrBase58(is, keysReadListener);
 
 			}catch (final IOException x) {
 				return x;
@@ -88,7 +88,7 @@ public class RestoreWalletTask extends AsyncTask<Void, Void, IOException> {
 				if (type == WalletType.WALLET_TYPE_PROTOBUF)
 					wallet = WalletUtils.restoreWalletFromProtobuf(is);
 				else
-					wallet = WalletUtils.restorePrivateKeysFromBase58(is);
+					wallet = WalletUtils.restorePrivateKeysFromBase58(is, keysReadListener);
 
 			}catch (final IOException x) {
 				return x;
@@ -110,6 +110,19 @@ public class RestoreWalletTask extends AsyncTask<Void, Void, IOException> {
 		return null;
 	}
 	
+	private final WalletUtils.KeysReadListener keysReadListener = new WalletUtils.KeysReadListener() {
+		@Override
+		public void onKeysRead(int numKeys) {
+			publishProgress(numKeys);
+		}
+	};
+	
+	@Override
+	protected void onProgressUpdate(Integer... numKeys) {
+		if (activity.progressDialog != null)
+			activity.progressDialog.setMessage("Please wait whilst the backup is loaded and restored... (" + numKeys[0] + " keys read)");
+	}
+	
 	@Override
 	protected void onPostExecute(IOException exception) {
 		
@@ -128,7 +141,6 @@ public class RestoreWalletTask extends AsyncTask<Void, Void, IOException> {
 			dialog.setNeutralButton(R.string.button_ok, new DialogInterface.OnClickListener() {
 				@Override
 				public void onClick(final DialogInterface dialog, final int id) {
-					activity.getWalletApplication().resetBlockchain();
 					activity.finish();
 				}
 			});
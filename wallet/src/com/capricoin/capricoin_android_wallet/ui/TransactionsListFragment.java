@@ -18,12 +18,8 @@
 package com.capricoin.capricoin_android_wallet.ui;
 
 import java.text.DateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.CheckForNull;
@@ -38,11 +34,9 @@ import android.app.Activity;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.AsyncTaskLoader;
-import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
@@ -52,7 +46,6 @@ import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.SpannableStringBuilder;
 import android.text.format.DateUtils;
 import android.text.style.StyleSpan;
@@ -67,16 +60,16 @@ import com.capricoinj.core.Address;
 import com.capricoinj.core.Coin;
 import com.capricoinj.core.ScriptException;
 import com.capricoinj.core.Transaction;
-import com.capricoinj.core.TransactionConfidence;
 import com.capricoinj.core.Wallet;
-import com.capricoinj.utils.Threading;
 import com.capricoin.capricoin_android_wallet.util.Qr;
 import com.capricoin.capricoin_android_wallet.AddressBookProvider;
 import com.capricoin.capricoin_android_wallet.Configuration;
 import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.util.BitmapFragment;
-import com.capricoin.capricoin_android_wallet.util.ThrottlingWalletChangeListener;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
+import com.capricoin.capricoin_android_wallet.util.WalletEventHub;
+import com.capricoin.capricoin_android_wallet.util.WalletTransactions;
 import com.capricoin.capricoin_android_wallet.util.WalletUtils;
 import com.capricoin.capricoin_android_wallet.R;
 
@@ -184,7 +177,7 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
             public void run() {
                 loaderManager.initLoader(0, null, TransactionsListFragment.this);
                 config.registerOnSharedPreferenceChangeListener(TransactionsListFragment.this);
-                wallet.addEventListener(transactionChangeListener, Threading.SAME_THREAD);
+                application.getWalletEventHub().subscribe(transactionChangeListener, WalletEventHub.CHANGE_TRANSACTIONS, THROTTLE_MS);
                 updateView();
             }
 
@@ -195,7 +188,6 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
     @Override
     public void onPause() {
 
-        transactionChangeListener.removeCallbacks();
         loaderManager.destroyLoader(0);
         resolver.unregisterContentObserver(addressBookObserver);
 
@@ -204,7 +196,7 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
             @Override
             public void run() {
 
-                wallet.removeEventListener(transactionChangeListener);
+                application.getWalletEventHub().unsubscribe(transactionChangeListener);
                 config.unregisterOnSharedPreferenceChangeListener(TransactionsListFragment.this);
 
             }
@@ -388,10 +380,10 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
         // don't clear the adapter, because it will confuse users
     }
 
-    private final ThrottlingWalletChangeListener transactionChangeListener = new ThrottlingWalletChangeListener(THROTTLE_MS)
+    private final WalletEventHub.Subscriber transactionChangeListener = new WalletEventHub.Subscriber()
     {
         @Override
-        public void onThrottledWalletChanged()
+        public void onWalletChanged(final int changes)
         {
             adapter.notifyDataSetChanged();
         }
@@ -399,7 +391,7 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
 
     private static class TransactionsLoader extends AsyncTaskLoader<List<Transaction>>
     {
-        private LocalBroadcastManager broadcastManager;
+        private final WalletApplication application;
         private final Wallet wallet;
         @CheckForNull
         private final Direction direction;
@@ -408,7 +400,7 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
         {
             super(context);
 
-            this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+            this.application = (WalletApplication) context.getApplicationContext();
             this.wallet = wallet;
             this.direction = direction;
         }
@@ -418,9 +410,8 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
         {
             super.onStartLoading();
 
-            wallet.addEventListener(transactionAddRemoveListener, Threading.SAME_THREAD);
-            broadcastManager.registerReceiver(walletChangeReceiver, new IntentFilter(WalletApplication.ACTION_WALLET_CHANGED));
-            transactionAddRemoveListener.onReorganize(null); // trigger at least one reload
+            application.getWalletEventHub().subscribe(transactionAddRemoveListener, WalletEventHub.CHANGE_COINS | WalletEventHub.CHANGE_REORGANIZE, THROTTLE_MS);
+            application.getWalletState().subscribe(walletStateObserver, ObservableState.MAIN_THREAD);
 
             safeForceLoad();
         }
@@ -428,9 +419,8 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
         @Override
         protected void onStopLoading()
         {
-            broadcastManager.unregisterReceiver(walletChangeReceiver);
-            wallet.removeEventListener(transactionAddRemoveListener);
-            transactionAddRemoveListener.removeCallbacks();
+            application.getWalletState().unsubscribe(walletStateObserver);
+            application.getWalletEventHub().unsubscribe(transactionAddRemoveListener);
 
             super.onStopLoading();
         }
@@ -438,9 +428,8 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
         @Override
         protected void onReset()
         {
-            broadcastManager.unregisterReceiver(walletChangeReceiver);
-            wallet.removeEventListener(transactionAddRemoveListener);
-            transactionAddRemoveListener.removeCallbacks();
+            application.getWalletState().unsubscribe(walletStateObserver);
+            application.getWalletEventHub().unsubscribe(transactionAddRemoveListener);
 
             super.onReset();
         }
@@ -448,37 +437,22 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
         @Override
         public List<Transaction> loadInBackground()
         {
-            final Set<Transaction> transactions = wallet.getTransactions(true);
-            final List<Transaction> filteredTransactions = new ArrayList<Transaction>(transactions.size());
-
-            for (final Transaction tx : transactions)
-            {
-                final boolean sent = tx.getValue(wallet).signum() < 0;
-                final boolean isInternal = tx.getPurpose() == Transaction.Purpose.KEY_ROTATION;
-
-                if ((direction == Direction.RECEIVED && !sent && !isInternal) || direction == null
-                        || (direction == Direction.SENT && sent && !isInternal))
-                    filteredTransactions.add(tx);
-            }
-
-            Collections.sort(filteredTransactions, TRANSACTION_COMPARATOR);
-
-            return filteredTransactions;
+            return WalletTransactions.filterAndSort(wallet, direction != Direction.SENT, direction != Direction.RECEIVED);
         }
 
-        private final ThrottlingWalletChangeListener transactionAddRemoveListener = new ThrottlingWalletChangeListener(THROTTLE_MS, true, true, false)
+        private final WalletEventHub.Subscriber transactionAddRemoveListener = new WalletEventHub.Subscriber()
         {
             @Override
-            public void onThrottledWalletChanged()
+            public void onWalletChanged(final int changes)
             {
                 safeForceLoad();
             }
         };
 
-        private final BroadcastReceiver walletChangeReceiver = new BroadcastReceiver()
+        private final ObservableState.Observer<Wallet> walletStateObserver = new ObservableState.Observer<Wallet>()
         {
             @Override
-            public void onReceive(final Context context, final Intent intent)
+            public void onStateChanged(final Wallet newWallet)
             {
                 safeForceLoad();
             }
@@ -495,29 +469,6 @@ public class TransactionsListFragment extends FancyListFragment implements Loade
                 log.info("rejected execution: " + TransactionsLoader.this.toString());
             }
         }
-
-        private static final Comparator<Transaction> TRANSACTION_COMPARATOR = new Comparator<Transaction>()
-        {
-            @Override
-            public int compare(final Transaction tx1, final Transaction tx2)
-            {
-                final boolean pending1 = tx1.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.PENDING;
-                final boolean pending2 = tx2.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.PENDING;
-
-                if (pending1 != pending2)
-                    return pending1 ? -1 : 1;
-
-                final Date updateTime1 = tx1.getUpdateTime();
-                final long time1 = updateTime1 != null ? updateTime1.getTime() : 0;
-                final Date updateTime2 = tx2.getUpdateTime();
-                final long time2 = updateTime2 != null ? updateTime2.getTime() : 0;
-
-                if (time1 != time2)
-                    return time1 > time2 ? -1 : 1;
-
-                return tx1.getHash().compareTo(tx2.getHash());
-            }
-        };
     }
 
     @Override
@@ -31,6 +31,7 @@ import android.content.res.Resources;
 import android.net.Uri;
 import android.nfc.NdefMessage;
 import android.nfc.NfcAdapter;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
@@ -58,6 +59,7 @@ import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.data.PaymentIntent;
 import com.capricoin.capricoin_android_wallet.ui.preference.PreferenceActivity;
 import com.capricoin.capricoin_android_wallet.ui.send.SendCoinsActivity;
+import com.capricoin.capricoin_android_wallet.util.BackupFileClassifier;
 import com.capricoin.capricoin_android_wallet.util.Crypto;
 import com.capricoin.capricoin_android_wallet.util.HttpGetThread;
 import com.capricoin.capricoin_android_wallet.util.WholeStringBuilder;
@@ -66,7 +68,6 @@ import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.util.CrashReporter;
 import com.capricoin.capricoin_android_wallet.util.Iso8601Format;
 import com.capricoin.capricoin_android_wallet.util.Nfc;
-import com.capricoin.capricoin_android_wallet.util.WalletUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -397,11 +398,13 @@ public final class WalletActivity extends AbstractWalletActivity
 				final String password = passwordView.getText().toString().trim();
 				passwordView.setText(null); // get rid of it asap
 
-				if (WalletUtils.BACKUP_FILE_FILTER.accept(file))
+				final BackupFileClassifier.Type type = BackupFileClassifier.classify(file);
+
+				if (type == BackupFileClassifier.Type.PROTOBUF)
 					restoreWalletFromProtobuf(file);
-				else if (WalletUtils.KEYS_FILE_FILTER.accept(file))
+				else if (type == BackupFileClassifier.Type.KEYS)
 					restorePrivateKeysFromBase58(file);
-				else if (Crypto.OPENSSL_FILE_FILTER.accept(file))
+				else if (type == BackupFileClassifier.Type.ENCRYPTED)
 					restoreWalletFromEncrypted(file, password);
 			}
 		});
@@ -459,10 +462,8 @@ public final class WalletActivity extends AbstractWalletActivity
 		return dialog.create();
 	}
 
-	private void prepareRestoreWalletDialog(final Dialog dialog)
+	private List<File> findRestorableFiles()
 	{
-		final AlertDialog alertDialog = (AlertDialog) dialog;
-
 		final List<File> files = new LinkedList<File>();
 
 		// external storage
@@ -472,8 +473,7 @@ public final class WalletActivity extends AbstractWalletActivity
 				if (!file.getName().contains("capricoinj"))
 					continue;
 				
-				if (WalletUtils.BACKUP_FILE_FILTER.accept(file) || WalletUtils.KEYS_FILE_FILTER.accept(file)
-						|| Crypto.OPENSSL_FILE_FILTER.accept(file))
+				if (BackupFileClassifier.classify(file) != BackupFileClassifier.Type.UNKNOWN)
 					files.add(file);
 			}
 
@@ -492,14 +492,38 @@ public final class WalletActivity extends AbstractWalletActivity
 			}
 		});
 
+		return files;
+	}
+
+	private void prepareRestoreWalletDialog(final Dialog dialog)
+	{
+		final AlertDialog alertDialog = (AlertDialog) dialog;
+
 		final View replaceWarningView = alertDialog.findViewById(R.id.restore_wallet_from_storage_dialog_replace_warning);
 		final boolean hasCoins = application.getWallet().getBalance(Wallet.BalanceType.ESTIMATED).signum() > 0;
 		replaceWarningView.setVisibility(hasCoins ? View.VISIBLE : View.GONE);
 
 		final Spinner fileView = (Spinner) alertDialog.findViewById(R.id.import_keys_from_storage_file);
 		final FileAdapter adapter = (FileAdapter) fileView.getAdapter();
-		adapter.setFiles(files);
-		fileView.setEnabled(!adapter.isEmpty());
+		adapter.setFiles(new LinkedList<File>());
+		fileView.setEnabled(false);
+
+		// looking into the files can take a while, so keep it off the UI thread
+		new AsyncTask<Void, Void, List<File>>()
+		{
+			@Override
+			protected List<File> doInBackground(final Void... params)
+			{
+				return findRestorableFiles();
+			}
+
+			@Override
+			protected void onPostExecute(final List<File> files)
+			{
+				adapter.setFiles(files);
+				fileView.setEnabled(!adapter.isEmpty());
+			}
+		}.execute();
 
 		final EditText passwordView = (EditText) alertDialog.findViewById(R.id.import_keys_from_storage_password);
 		passwordView.setText(null);
@@ -26,7 +26,6 @@ import javax.annotation.Nonnull;
 import com.capricoinj.core.Address;
 import com.capricoinj.core.Wallet;
 import com.capricoinj.uri.PeercoinURI;
-import com.capricoinj.utils.Threading;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,10 +34,7 @@ import android.app.Fragment;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.AsyncTaskLoader;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.Loader;
 import android.graphics.Bitmap;
 import android.nfc.NdefMessage;
@@ -47,7 +43,6 @@ import android.nfc.NfcAdapter;
 import android.nfc.NfcEvent;
 import android.nfc.NfcManager;
 import android.os.Bundle;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.Spanned;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -59,7 +54,8 @@ import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.util.BitmapFragment;
 import com.capricoin.capricoin_android_wallet.util.Qr;
-import com.capricoin.capricoin_android_wallet.util.ThrottlingWalletChangeListener;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
+import com.capricoin.capricoin_android_wallet.util.WalletEventHub;
 import com.capricoin.capricoin_android_wallet.util.WalletUtils;
 import com.capricoin.capricoin_android_wallet.R;
 
@@ -165,7 +161,7 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
 	
 	public static class CurrentAddressLoader extends AsyncTaskLoader<AddressData>
 	{
-		private LocalBroadcastManager broadcastManager;
+		private final WalletApplication application;
 		private final Wallet wallet;
 		private final int size;
 
@@ -175,7 +171,7 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
 		{
 			super(context);
 
-			this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+			this.application = (WalletApplication) context.getApplicationContext();
 			this.wallet = wallet;
 			this.size = size;
 		}
@@ -185,8 +181,8 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
 		{
 			super.onStartLoading();
 
-			wallet.addEventListener(walletChangeListener, Threading.SAME_THREAD);
-			broadcastManager.registerReceiver(walletChangeReceiver, new IntentFilter(WalletApplication.ACTION_WALLET_CHANGED));
+			application.getWalletEventHub().subscribe(walletChangeListener, WalletEventHub.CHANGE_TRANSACTIONS, WalletEventHub.DEFAULT_THROTTLE_MS);
+			application.getWalletState().subscribe(walletStateObserver, ObservableState.MAIN_THREAD);
 
 			safeForceLoad();
 		}
@@ -194,9 +190,8 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
 		@Override
 		protected void onStopLoading()
 		{
-			broadcastManager.unregisterReceiver(walletChangeReceiver);
-			wallet.removeEventListener(walletChangeListener);
-			walletChangeListener.removeCallbacks();
+			application.getWalletState().unsubscribe(walletStateObserver);
+			application.getWalletEventHub().unsubscribe(walletChangeListener);
 
 			super.onStopLoading();
 		}
@@ -204,9 +199,8 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
 		@Override
 		protected void onReset()
 		{
-			broadcastManager.unregisterReceiver(walletChangeReceiver);
-			wallet.removeEventListener(walletChangeListener);
-			walletChangeListener.removeCallbacks();
+			application.getWalletState().unsubscribe(walletStateObserver);
+			application.getWalletEventHub().unsubscribe(walletChangeListener);
 
 			super.onReset();
 		}
@@ -224,19 +218,19 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
 			
 		}
 
-		private final ThrottlingWalletChangeListener walletChangeListener = new ThrottlingWalletChangeListener()
+		private final WalletEventHub.Subscriber walletChangeListener = new WalletEventHub.Subscriber()
 		{
 			@Override
-			public void onThrottledWalletChanged()
+			public void onWalletChanged(final int changes)
 			{
 				safeForceLoad();
 			}
 		};
 
-		private final BroadcastReceiver walletChangeReceiver = new BroadcastReceiver()
+		private final ObservableState.Observer<Wallet> walletStateObserver = new ObservableState.Observer<Wallet>()
 		{
 			@Override
-			public void onReceive(final Context context, final Intent intent)
+			public void onStateChanged(final Wallet newWallet)
 			{
 				safeForceLoad();
 			}
@@ -17,9 +17,8 @@
 
 package com.capricoin.capricoin_android_wallet.ui;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Nonnull;
 
@@ -27,11 +26,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.app.Activity;
+import android.app.LoaderManager;
+import android.app.LoaderManager.LoaderCallbacks;
 import android.content.ClipData;
+import android.content.AsyncTaskLoader;
 import android.content.ClipboardManager;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.Loader;
 import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Bundle;
@@ -45,17 +48,17 @@ import android.widget.BaseAdapter;
 import android.widget.ListAdapter;
 import android.widget.ListView;
 
-import com.capricoinj.core.AbstractWalletEventListener;
 import com.capricoinj.core.Address;
 import com.capricoinj.core.ECKey;
 import com.capricoinj.core.Wallet;
-import com.capricoinj.core.WalletEventListener;
 import com.capricoinj.uri.PeercoinURI;
-import com.capricoinj.utils.Threading;
 import com.capricoin.capricoin_android_wallet.Constants;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.util.BitmapFragment;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
 import com.capricoin.capricoin_android_wallet.util.Qr;
+import com.capricoin.capricoin_android_wallet.util.WalletEventHub;
+import com.capricoin.capricoin_android_wallet.util.WalletTransactions;
 import com.capricoin.capricoin_android_wallet.util.WholeStringBuilder;
 import com.capricoin.capricoin_android_wallet.AddressBookProvider;
 import com.capricoin.capricoin_android_wallet.util.WalletUtils;
@@ -71,9 +74,12 @@ public final class WalletAddressesFragment extends FancyListFragment
 	private Wallet wallet;
 	private ClipboardManager clipboardManager;
 	private ContentResolver contentResolver;
+	private LoaderManager loaderManager;
 
 	private WalletAddressesAdapter adapter;
 
+	private static final int ID_KEYS_LOADER = 0;
+
 	private static final Logger log = LoggerFactory.getLogger(WalletAddressesFragment.class);
 
 	@Override
@@ -85,6 +91,7 @@ public final class WalletAddressesFragment extends FancyListFragment
 		this.application = (WalletApplication) activity.getApplication();
 		this.clipboardManager = (ClipboardManager) activity.getSystemService(Context.CLIPBOARD_SERVICE);
 		this.contentResolver = activity.getContentResolver();
+		this.loaderManager = getLoaderManager();
 		
 		this.activity.runAfterLoad(new Runnable() {
 
@@ -135,8 +142,7 @@ public final class WalletAddressesFragment extends FancyListFragment
 
 			@Override
 			public void run() {
-				wallet.addEventListener(walletListener, Threading.SAME_THREAD);
-				walletListener.onKeysAdded(null); // trigger initial load of keys
+				loaderManager.initLoader(ID_KEYS_LOADER, null, keysLoaderCallbacks);
 			}
 			
 		});
@@ -147,7 +153,7 @@ public final class WalletAddressesFragment extends FancyListFragment
 	@Override
 	public void onPause()
 	{
-		wallet.removeEventListener(walletListener);
+		loaderManager.destroyLoader(ID_KEYS_LOADER);
 
 		contentResolver.unregisterContentObserver(contentObserver);
 
@@ -277,39 +283,102 @@ public final class WalletAddressesFragment extends FancyListFragment
 		}
 	};
 
-	private final WalletEventListener walletListener = new AbstractWalletEventListener()
+	private final LoaderCallbacks<List<ECKey>> keysLoaderCallbacks = new LoaderCallbacks<List<ECKey>>()
 	{
 		@Override
-		public void onKeysAdded(final List<ECKey> keysAdded)
+		public Loader<List<ECKey>> onCreateLoader(final int id, final Bundle args)
 		{
-			final List<ECKey> keys = wallet.getImportedKeys();
+			return new KeysLoader(activity, wallet);
+		}
 
-			Collections.sort(keys, new Comparator<ECKey>()
-			{
-				@Override
-				public int compare(final ECKey lhs, final ECKey rhs)
-				{
-					final boolean lhsRotating = wallet.isKeyRotating(lhs);
-					final boolean rhsRotating = wallet.isKeyRotating(rhs);
+		@Override
+		public void onLoadFinished(final Loader<List<ECKey>> loader, final List<ECKey> keys)
+		{
+			adapter.replace(keys);
+		}
 
-					if (lhsRotating != rhsRotating)
-						return lhsRotating ? 1 : -1;
+		@Override
+		public void onLoaderReset(final Loader<List<ECKey>> loader)
+		{
+		}
+	};
 
-					if (lhs.getCreationTimeSeconds() != rhs.getCreationTimeSeconds())
-						return lhs.getCreationTimeSeconds() > rhs.getCreationTimeSeconds() ? 1 : -1;
+	private static class KeysLoader extends AsyncTaskLoader<List<ECKey>>
+	{
+		private final WalletApplication application;
+		private final Wallet wallet;
 
-					return 0;
-				}
-			});
+		private KeysLoader(final Context context, @Nonnull final Wallet wallet)
+		{
+			super(context);
+
+			this.application = (WalletApplication) context.getApplicationContext();
+			this.wallet = wallet;
+		}
+
+		@Override
+		protected void onStartLoading()
+		{
+			super.onStartLoading();
+
+			application.getWalletEventHub().subscribe(walletChangeListener, WalletEventHub.CHANGE_KEYS, WalletEventHub.DEFAULT_THROTTLE_MS);
+			application.getWalletState().subscribe(walletStateObserver, ObservableState.MAIN_THREAD);
+
+			safeForceLoad();
+		}
+
+		@Override
+		protected void onStopLoading()
+		{
+			application.getWalletState().unsubscribe(walletStateObserver);
+			application.getWalletEventHub().unsubscribe(walletChangeListener);
+
+			super.onStopLoading();
+		}
 
-			handler.post(new Runnable()
+		@Override
+		protected void onReset()
+		{
+			application.getWalletState().unsubscribe(walletStateObserver);
+			application.getWalletEventHub().unsubscribe(walletChangeListener);
+
+			super.onReset();
+		}
+
+		@Override
+		public List<ECKey> loadInBackground()
+		{
+			return WalletTransactions.sortedImportedKeys(wallet);
+		}
+
+		private final WalletEventHub.Subscriber walletChangeListener = new WalletEventHub.Subscriber()
+		{
+			@Override
+			public void onWalletChanged(final int changes)
 			{
-				@Override
-				public void run()
-				{
-					adapter.replace(keys);
-				}
-			});
+				safeForceLoad();
+			}
+		};
+
+		private final ObservableState.Observer<Wallet> walletStateObserver = new ObservableState.Observer<Wallet>()
+		{
+			@Override
+			public void onStateChanged(final Wallet newWallet)
+			{
+				safeForceLoad();
+			}
+		};
+
+		private void safeForceLoad()
+		{
+			try
+			{
+				forceLoad();
+			}
+			catch (final RejectedExecutionException x)
+			{
+				log.info("rejected execution: " + KeysLoader.this.toString());
+			}
 		}
-	};
+	}
 }
@@ -179,7 +179,12 @@ public final class WalletBalanceFragment extends Fragment
 			final String downloading = getString(noImpediments ? R.string.blockchain_state_progress_downloading
 					: R.string.blockchain_state_progress_stalled);
 
-			if (blockchainLag < 2 * DateUtils.DAY_IN_MILLIS)
+			if (noImpediments && blockchainState.blocksLeft > 0 && blockchainState.etaMs >= 0)
+			{
+				final String eta = DateUtils.formatElapsedTime(blockchainState.etaMs / DateUtils.SECOND_IN_MILLIS);
+				viewProgress.setText(getString(R.string.blockchain_state_progress_blocks_left, downloading, blockchainState.blocksLeft, eta));
+			}
+			else if (blockchainLag < 2 * DateUtils.DAY_IN_MILLIS)
 			{
 				final long hours = blockchainLag / DateUtils.HOUR_IN_MILLIS;
 				viewProgress.setText(getString(R.string.blockchain_state_progress_hours, downloading, hours));
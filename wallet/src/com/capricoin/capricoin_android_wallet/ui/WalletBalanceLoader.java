@@ -25,25 +25,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import android.content.AsyncTaskLoader;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.support.v4.content.LocalBroadcastManager;
 
 
 import com.capricoinj.core.Coin;
 import com.capricoinj.core.Wallet;
-import com.capricoinj.utils.Threading;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
-import com.capricoin.capricoin_android_wallet.util.ThrottlingWalletChangeListener;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
+import com.capricoin.capricoin_android_wallet.util.ObservableState;
+import com.capricoin.capricoin_android_wallet.util.WalletEventHub;
 
 /**
  * @author Andreas Schildbach
  */
 public final class WalletBalanceLoader extends AsyncTaskLoader<Coin>
 {
-	private LocalBroadcastManager broadcastManager;
+	private final WalletApplication application;
 	private final Wallet wallet;
 
 	private static final Logger log = LoggerFactory.getLogger(WalletBalanceLoader.class);
@@ -52,7 +49,7 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<Coin>
 	{
 		super(context);
 
-		this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
+		this.application = (WalletApplication) context.getApplicationContext();
 		this.wallet = wallet;
 	}
 
@@ -61,8 +58,8 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<Coin>
 	{
 		super.onStartLoading();
 
-		wallet.addEventListener(walletChangeListener, Threading.SAME_THREAD);
-		broadcastManager.registerReceiver(walletChangeReceiver, new IntentFilter(WalletApplication.ACTION_WALLET_CHANGED));
+		application.getWalletEventHub().subscribe(walletChangeListener, WalletEventHub.CHANGE_TRANSACTIONS, WalletEventHub.DEFAULT_THROTTLE_MS);
+		application.getWalletState().subscribe(walletStateObserver, ObservableState.MAIN_THREAD);
 
 		safeForceLoad();
 	}
@@ -70,9 +67,8 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<Coin>
 	@Override
 	protected void onStopLoading()
 	{
-		broadcastManager.unregisterReceiver(walletChangeReceiver);
-		wallet.removeEventListener(walletChangeListener);
-		walletChangeListener.removeCallbacks();
+		application.getWalletState().unsubscribe(walletStateObserver);
+		application.getWalletEventHub().unsubscribe(walletChangeListener);
 
 		super.onStopLoading();
 	}
@@ -80,9 +76,8 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<Coin>
 	@Override
 	protected void onReset()
 	{
-		broadcastManager.unregisterReceiver(walletChangeReceiver);
-		wallet.removeEventListener(walletChangeListener);
-		walletChangeListener.removeCallbacks();
+		application.getWalletState().unsubscribe(walletStateObserver);
+		application.getWalletEventHub().unsubscribe(walletChangeListener);
 
 		super.onReset();
 	}
@@ -90,22 +85,28 @@ public final class WalletBalanceLoader extends AsyncTaskLoader<Coin>
 	@Override
 	public Coin loadInBackground()
 	{
-		return wallet.getBalance(Wallet.BalanceType.ESTIMATED);
+		final long start = System.currentTimeMillis();
+
+		final Coin balance = wallet.getBalance(Wallet.BalanceType.ESTIMATED);
+
+		Metrics.histogram("wallet.balance_ms").recordSince(start);
+
+		return balance;
 	}
 
-	private final ThrottlingWalletChangeListener walletChangeListener = new ThrottlingWalletChangeListener()
+	private final WalletEventHub.Subscriber walletChangeListener = new WalletEventHub.Subscriber()
 	{
 		@Override
-		public void onThrottledWalletChanged()
+		public void onWalletChanged(final int changes)
 		{
 			safeForceLoad();
 		}
 	};
 
-	private final BroadcastReceiver walletChangeReceiver = new BroadcastReceiver()
+	private final ObservableState.Observer<Wallet> walletStateObserver = new ObservableState.Observer<Wallet>()
 	{
 		@Override
-		public void onReceive(final Context context, final Intent intent)
+		public void onStateChanged(final Wallet newWallet)
 		{
 			safeForceLoad();
 		}
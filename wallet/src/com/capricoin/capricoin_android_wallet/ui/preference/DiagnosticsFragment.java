@@ -17,7 +17,13 @@
 
 package com.capricoin.capricoin_android_wallet.ui.preference;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,15 +31,21 @@ import org.slf4j.LoggerFactory;
 import android.app.Activity;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
+import android.content.Intent;
 import android.os.Bundle;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceScreen;
+
+import com.google.common.base.Charsets;
+
 import com.capricoin.capricoin_android_wallet.Constants;
+import com.capricoin.capricoin_android_wallet.FileAttachmentProvider;
 import com.capricoin.capricoin_android_wallet.WalletApplication;
 import com.capricoin.capricoin_android_wallet.ui.DialogBuilder;
 import com.capricoin.capricoin_android_wallet.ui.ReportIssueDialogBuilder;
 import com.capricoin.capricoin_android_wallet.util.CrashReporter;
+import com.capricoin.capricoin_android_wallet.util.Metrics;
 import com.capricoin.capricoin_android_wallet.R;
 
 /**
@@ -46,6 +58,7 @@ public final class DiagnosticsFragment extends PreferenceFragment
 
 	private static final String PREFS_KEY_REPORT_ISSUE = "report_issue";
 	private static final String PREFS_KEY_INITIATE_RESET = "initiate_reset";
+	private static final String PREFS_KEY_METRICS = "metrics";
 
 	private static final Logger log = LoggerFactory.getLogger(DiagnosticsFragment.class);
 
@@ -81,6 +94,11 @@ public final class DiagnosticsFragment extends PreferenceFragment
 			handleInitiateReset();
 			return true;
 		}
+		else if (PREFS_KEY_METRICS.equals(key))
+		{
+			handleMetrics();
+			return true;
+		}
 
 		return false;
 	}
@@ -127,6 +145,50 @@ public final class DiagnosticsFragment extends PreferenceFragment
 		dialog.show();
 	}
 
+	private void handleMetrics()
+	{
+		final StringBuilder metrics = new StringBuilder();
+		Metrics.dump(metrics);
+		metrics.append("log events dropped: ").append(application.getAsyncLogAppender().getNumDropped()).append('\n');
+
+		final DialogBuilder dialog = new DialogBuilder(activity);
+		dialog.setTitle(R.string.preferences_metrics_title);
+		dialog.setMessage(metrics);
+		dialog.setPositiveButton(R.string.preferences_metrics_dialog_share, new OnClickListener()
+		{
+			@Override
+			public void onClick(final DialogInterface dialog, final int which)
+			{
+				shareMetrics(metrics);
+			}
+		});
+		dialog.setNegativeButton(R.string.button_dismiss, null);
+		dialog.show();
+	}
+
+	private void shareMetrics(@Nonnull final CharSequence metrics)
+	{
+		try
+		{
+			final File file = File.createTempFile("metrics.", ".txt", activity.getCacheDir());
+
+			final Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+			writer.write(metrics.toString());
+			writer.close();
+
+			final Intent intent = new Intent(Intent.ACTION_SEND);
+			intent.setType("text/plain");
+			intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.app_name) + " metrics " + application.packageInfo().versionName);
+			intent.putExtra(Intent.EXTRA_STREAM, FileAttachmentProvider.contentUri(activity.getPackageName(), file));
+			intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+			startActivity(Intent.createChooser(intent, getString(R.string.preferences_metrics_title)));
+		}
+		catch (final IOException x)
+		{
+			log.info("problem writing metrics", x);
+		}
+	}
+
 	public void handleInitiateReset()
 	{
 		final DialogBuilder dialog = new DialogBuilder(activity);
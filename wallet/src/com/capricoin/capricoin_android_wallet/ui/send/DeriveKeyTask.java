@@ -25,6 +25,9 @@ import com.capricoinj.crypto.KeyCrypter;
 import org.spongycastle.crypto.params.KeyParameter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.capricoin.capricoin_android_wallet.util.EncryptionKeyCache;
 
 /**
  * @author Andreas Schildbach
@@ -33,11 +36,19 @@ public abstract class DeriveKeyTask
 {
 	private final Handler backgroundHandler;
 	private final Handler callbackHandler;
+	@Nullable
+	private final EncryptionKeyCache keyCache;
 
 	public DeriveKeyTask(@Nonnull final Handler backgroundHandler)
+	{
+		this(backgroundHandler, null);
+	}
+
+	public DeriveKeyTask(@Nonnull final Handler backgroundHandler, @Nullable final EncryptionKeyCache keyCache)
 	{
 		this.backgroundHandler = backgroundHandler;
 		this.callbackHandler = new Handler(Looper.myLooper());
+		this.keyCache = keyCache;
 	}
 
 	public final void deriveKey(@Nonnull final KeyCrypter keyCrypter, @Nonnull final String password)
@@ -47,7 +58,20 @@ public abstract class DeriveKeyTask
 			@Override
 			public void run()
 			{
-				final KeyParameter encryptionKey = keyCrypter.deriveKey(password); // takes time
+				final KeyParameter cachedKey = keyCache != null ? keyCache.get(keyCrypter, password) : null;
+				final KeyParameter encryptionKey;
+
+				if (cachedKey != null)
+				{
+					encryptionKey = cachedKey;
+				}
+				else
+				{
+					encryptionKey = keyCrypter.deriveKey(password); // takes time
+
+					if (keyCache != null)
+						keyCache.put(keyCrypter, password, encryptionKey);
+				}
 
 				callbackHandler.post(new Runnable()
 				{
@@ -230,7 +230,7 @@ public class MaintenanceDialogFragment extends DialogFragment
 
 		if (wallet.isEncrypted())
 		{
-			new DeriveKeyTask(backgroundHandler)
+			new DeriveKeyTask(backgroundHandler, application.getEncryptionKeyCache())
 			{
 				@Override
 				protected void onSuccess(@Nonnull KeyParameter encryptionKey)
@@ -272,6 +272,8 @@ public class MaintenanceDialogFragment extends DialogFragment
 				}
 				catch (final KeyCrypterException x)
 				{
+					application.getEncryptionKeyCache().wipe();
+
 					handler.post(new Runnable()
 					{
 						@Override
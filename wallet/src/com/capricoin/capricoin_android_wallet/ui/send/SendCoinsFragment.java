@@ -161,6 +161,12 @@ public final class SendCoinsFragment extends Fragment
 
 	private Transaction sentTransaction = null;
 	private Boolean directPaymentAck = null;
+	@CheckForNull
+	private DirectPaymentTask directPaymentTask = null;
+	@CheckForNull
+	private String directPaymentUrl = null;
+	@CheckForNull
+	private Protos.Payment directPayment = null;
 
 	private Transaction dryrunTransaction;
 	private Exception dryrunException;
@@ -724,7 +730,18 @@ public final class SendCoinsFragment extends Fragment
 	@Override
 	public void onDestroy()
 	{
-		backgroundThread.getLooper().quit();
+		if (directPaymentTask != null)
+			directPaymentTask.close();
+
+		// quit only after the connection to the merchant has been released
+		backgroundHandler.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				backgroundThread.getLooper().quit();
+			}
+		});
 
 		if (sentTransaction != null)
 			sentTransaction.getConfidence().removeEventListener(sentTransactionConfidenceListener);
@@ -937,7 +954,7 @@ public final class SendCoinsFragment extends Fragment
 
 		if (wallet.isEncrypted())
 		{
-			new DeriveKeyTask(backgroundHandler)
+			new DeriveKeyTask(backgroundHandler, application.getEncryptionKeyCache())
 			{
 				@Override
 				protected void onSuccess(@Nonnull KeyParameter encryptionKey)
@@ -1003,52 +1020,6 @@ public final class SendCoinsFragment extends Fragment
 				}
 			}
 
-			private void directPay(final Protos.Payment payment)
-			{
-				final DirectPaymentTask.ResultCallback callback = new DirectPaymentTask.ResultCallback()
-				{
-					@Override
-					public void onResult(final boolean ack)
-					{
-						directPaymentAck = ack;
-
-						if (state == State.SENDING)
-							setState(State.SENT);
-
-						updateView();
-					}
-
-					@Override
-					public void onFail(final int messageResId, final Object... messageArgs)
-					{
-						final DialogBuilder dialog = DialogBuilder.warn(activity, R.string.send_coins_fragment_direct_payment_failed_title);
-						dialog.setMessage(paymentIntent.paymentUrl + "\n" + getString(messageResId, messageArgs) + "\n\n"
-								+ getString(R.string.send_coins_fragment_direct_payment_failed_msg));
-						dialog.setPositiveButton(R.string.button_retry, new DialogInterface.OnClickListener()
-						{
-							@Override
-							public void onClick(final DialogInterface dialog, final int which)
-							{
-								directPay(payment);
-							}
-						});
-						dialog.setNegativeButton(R.string.button_dismiss, null);
-						dialog.show();
-					}
-				};
-
-				if (paymentIntent.isHttpPaymentUrl())
-				{
-					new DirectPaymentTask.HttpPaymentTask(backgroundHandler, callback, paymentIntent.paymentUrl, application.httpUserAgent())
-							.send(payment);
-				}
-				else if (paymentIntent.isBluetoothPaymentUrl() && bluetoothAdapter != null && bluetoothAdapter.isEnabled())
-				{
-					new DirectPaymentTask.BluetoothPaymentTask(backgroundHandler, callback, bluetoothAdapter,
-							Bluetooth.getBluetoothMac(paymentIntent.paymentUrl)).send(payment);
-				}
-			}
-
 			@Override
 			protected void onInsufficientMoney(@Nonnull final Coin missing)
 			{
@@ -1083,6 +1054,8 @@ public final class SendCoinsFragment extends Fragment
 			@Override
 			protected void onInvalidKey()
 			{
+				application.getEncryptionKeyCache().wipe();
+
 				setState(State.INPUT);
 
 				privateKeyBadPasswordView.setVisibility(View.VISIBLE);
@@ -1453,6 +1426,75 @@ public final class SendCoinsFragment extends Fragment
 		}
 	}
 
+	private void directPay(@Nonnull final Protos.Payment payment)
+	{
+		directPayment = payment;
+
+		final DirectPaymentTask task = directPaymentTask(paymentIntent.paymentUrl);
+		if (task != null)
+			task.send(payment);
+	}
+
+	/**
+	 * @return the task for the merchant at the given payment URL, kept so that payments to the same merchant share a connection
+	 */
+	@CheckForNull
+	private DirectPaymentTask directPaymentTask(@Nonnull final String paymentUrl)
+	{
+		if (directPaymentTask != null && paymentUrl.equals(directPaymentUrl))
+			return directPaymentTask;
+
+		if (directPaymentTask != null)
+			directPaymentTask.close();
+		directPaymentTask = null;
+		directPaymentUrl = null;
+
+		if (paymentIntent.isHttpPaymentUrl())
+			directPaymentTask = new DirectPaymentTask.HttpPaymentTask(backgroundHandler, directPaymentCallback, paymentUrl,
+					application.httpUserAgent());
+		else if (paymentIntent.isBluetoothPaymentUrl() && bluetoothAdapter != null && bluetoothAdapter.isEnabled())
+			directPaymentTask = new DirectPaymentTask.BluetoothPaymentTask(backgroundHandler, directPaymentCallback, bluetoothAdapter,
+					Bluetooth.getBluetoothMac(paymentUrl));
+
+		if (directPaymentTask != null)
+			directPaymentUrl = paymentUrl;
+
+		return directPaymentTask;
+	}
+
+	private final DirectPaymentTask.ResultCallback directPaymentCallback = new DirectPaymentTask.ResultCallback()
+	{
+		@Override
+		public void onResult(final boolean ack)
+		{
+			directPaymentAck = ack;
+
+			if (state == State.SENDING)
+				setState(State.SENT);
+
+			updateView();
+		}
+
+		@Override
+		public void onFail(final int messageResId, final Object... messageArgs)
+		{
+			final DialogBuilder dialog = DialogBuilder.warn(activity, R.string.send_coins_fragment_direct_payment_failed_title);
+			dialog.setMessage(directPaymentUrl + "\n" + getString(messageResId, messageArgs) + "\n\n"
+					+ getString(R.string.send_coins_fragment_direct_payment_failed_msg));
+			dialog.setPositiveButton(R.string.button_retry, new DialogInterface.OnClickListener()
+			{
+				@Override
+				public void onClick(final DialogInterface dialog, final int which)
+				{
+					if (directPayment != null)
+						directPay(directPayment);
+				}
+			});
+			dialog.setNegativeButton(R.string.button_dismiss, null);
+			dialog.show();
+		}
+	};
+
 	private void updateStateFrom(final @Nonnull PaymentIntent paymentIntent)
 	{
 		log.info("got {}", paymentIntent);
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Hands log events to a background thread, which passes them on to a slower appender (usually file based). Logging threads never wait
+ * for a lock or for I/O: the queue is lock free and bounded, and if it fills up, events at or below the drop level are discarded first.
+ * Discarded events are counted and reported in the log once the pressure is gone.
+ *
+ * @author Andreas Schildbach
+ */
+public final class AsyncLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+{
+	private Appender<ILoggingEvent> delegate;
+	private int queueSize = 1024;
+	private int discardingThreshold = -1;
+	private Level dropLevel = Level.INFO;
+
+	private final Queue<ILoggingEvent> queue = new ConcurrentLinkedQueue<ILoggingEvent>();
+	private final AtomicInteger queueCount = new AtomicInteger();
+	private final AtomicLong numDropped = new AtomicLong();
+	private final AtomicBoolean workerIdle = new AtomicBoolean();
+	private final Object drainLock = new Object();
+	private long numDroppedReported = 0;
+	private volatile Thread worker;
+
+	private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	public void setDelegate(@Nonnull final Appender<ILoggingEvent> delegate)
+	{
+		this.delegate = delegate;
+	}
+
+	public void setQueueSize(final int queueSize)
+	{
+		this.queueSize = queueSize;
+	}
+
+	/** number of queued events from which on low level events are dropped, defaults to 80% of the queue size */
+	public void setDiscardingThreshold(final int discardingThreshold)
+	{
+		this.discardingThreshold = discardingThreshold;
+	}
+
+	/** events at or below this level are dropped under pressure */
+	public void setDropLevel(@Nonnull final Level dropLevel)
+	{
+		this.dropLevel = dropLevel;
+	}
+
+	public long getNumDropped()
+	{
+		return numDropped.get();
+	}
+
+	@Override
+	public void start()
+	{
+		if (delegate == null)
+		{
+			addError("no delegate appender set for " + name);
+			return;
+		}
+
+		if (discardingThreshold < 0)
+			discardingThreshold = queueSize * 4 / 5;
+
+		worker = new Thread("asyncLogAppender")
+		{
+			@Override
+			public void run()
+			{
+				work();
+			}
+		};
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+
+		super.start();
+		worker.start();
+	}
+
+	@Override
+	public void stop()
+	{
+		if (!isStarted())
+			return;
+
+		super.stop();
+
+		final Thread worker = this.worker;
+		this.worker = null;
+		LockSupport.unpark(worker);
+
+		try
+		{
+			worker.join(1000);
+		}
+		catch (final InterruptedException x)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		flush();
+		delegate.stop();
+	}
+
+	@Override
+	protected void append(final ILoggingEvent event)
+	{
+		final int count = queueCount.incrementAndGet();
+
+		if (count > queueSize || (count > discardingThreshold && event.getLevel().toInt() <= dropLevel.toInt()))
+		{
+			queueCount.decrementAndGet();
+			numDropped.incrementAndGet();
+			return;
+		}
+
+		// capture thread name and formatted message, as they would be wrong or costly to determine later
+		event.prepareForDeferredProcessing();
+		queue.offer(event);
+
+		if (workerIdle.get())
+			LockSupport.unpark(worker);
+	}
+
+	/**
+	 * Writes out all queued events on the calling thread.
+	 */
+	public void flush()
+	{
+		drain();
+	}
+
+	private void work()
+	{
+		while (worker != null)
+		{
+			if (!drain())
+			{
+				workerIdle.set(true);
+
+				// re-check after announcing, so that no wakeup is lost
+				if (queue.isEmpty() && worker != null)
+					LockSupport.parkNanos(this, IDLE_PARK_NS);
+
+				workerIdle.set(false);
+			}
+		}
+	}
+
+	/** @return true if anything was written */
+	private boolean drain()
+	{
+		synchronized (drainLock)
+		{
+			boolean drained = false;
+			ILoggingEvent event;
+
+			while ((event = queue.poll()) != null)
+			{
+				queueCount.decrementAndGet();
+				delegate.doAppend(event);
+				drained = true;
+			}
+
+			final long numDropped = this.numDropped.get();
+			if (drained && numDropped != numDroppedReported)
+			{
+				delegate.doAppend(droppedEvent(numDropped - numDroppedReported));
+				numDroppedReported = numDropped;
+			}
+
+			return drained;
+		}
+	}
+
+	private ILoggingEvent droppedEvent(final long numDropped)
+	{
+		final LoggerContext loggerContext = (LoggerContext) getContext();
+		final LoggingEvent event = new LoggingEvent(AsyncLogAppender.class.getName(), loggerContext.getLogger(AsyncLogAppender.class),
+				Level.WARN, "dropped {} log events because the log queue was full", null, new Object[] { numDropped });
+		event.prepareForDeferredProcessing();
+
+		return event;
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import com.capricoinj.core.AddressFormatException;
+import com.capricoinj.core.DumpedPrivateKey;
+import com.capricoinj.store.WalletProtobufSerializer;
+import com.google.common.base.Charsets;
+
+import com.capricoin.capricoin_android_wallet.Constants;
+
+/**
+ * Tells wallet backups, private key files and encrypted backups apart by looking at the first few hundred bytes of a file only. Results
+ * are cached by path, size and modification time, so listing a directory repeatedly does not touch the files again.
+ *
+ * @author Andreas Schildbach
+ */
+public final class BackupFileClassifier
+{
+	public enum Type
+	{
+		PROTOBUF, KEYS, ENCRYPTED, UNKNOWN
+	}
+
+	private static final int HEADER_SIZE = 512;
+	private static final int MAX_CACHE_ENTRIES = 256;
+
+	private static final Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, CacheEntry> eldest)
+		{
+			return size() > MAX_CACHE_ENTRIES;
+		}
+	};
+
+	private static final class CacheEntry
+	{
+		public final long length;
+		public final long lastModified;
+		public final Type type;
+
+		public CacheEntry(final long length, final long lastModified, final Type type)
+		{
+			this.length = length;
+			this.lastModified = lastModified;
+			this.type = type;
+		}
+	}
+
+	private BackupFileClassifier()
+	{
+	}
+
+	public static Type classify(@Nonnull final File file)
+	{
+		final String path = file.getAbsolutePath();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+
+		synchronized (cache)
+		{
+			final CacheEntry entry = cache.get(path);
+			if (entry != null && entry.length == length && entry.lastModified == lastModified)
+				return entry.type;
+		}
+
+		final Type type = length > 0 ? classifyHeader(readHeader(file)) : Type.UNKNOWN;
+
+		synchronized (cache)
+		{
+			cache.put(path, new CacheEntry(length, lastModified, type));
+		}
+
+		return type;
+	}
+
+	private static byte[] readHeader(@Nonnull final File file)
+	{
+		InputStream is = null;
+
+		try
+		{
+			is = new FileInputStream(file);
+
+			final byte[] buf = new byte[HEADER_SIZE];
+			int count = 0;
+			int n;
+			while (count < buf.length && (n = is.read(buf, count, buf.length - count)) != -1)
+				count += n;
+
+			final byte[] header = new byte[count];
+			System.arraycopy(buf, 0, header, 0, count);
+			return header;
+		}
+		catch (final IOException x)
+		{
+			return new byte[0];
+		}
+		finally
+		{
+			if (is != null)
+			{
+				try
+				{
+					is.close();
+				}
+				catch (final IOException x)
+				{
+					// swallow
+				}
+			}
+		}
+	}
+
+	static Type classifyHeader(@Nonnull final byte[] header)
+	{
+		if (header.length == 0)
+			return Type.UNKNOWN;
+
+		if (Crypto.isOpenSslHeader(header))
+			return Type.ENCRYPTED;
+
+		try
+		{
+			if (WalletProtobufSerializer.isWallet(new ByteArrayInputStream(header)))
+				return Type.PROTOBUF;
+		}
+		catch (final RuntimeException x)
+		{
+			// truncated or not protobuf at all, fall through
+		}
+
+		if (isKeysHeader(new String(header, Charsets.UTF_8), header.length == HEADER_SIZE))
+			return Type.KEYS;
+
+		return Type.UNKNOWN;
+	}
+
+	private static boolean isKeysHeader(@Nonnull final String header, final boolean truncated)
+	{
+		final String[] lines = header.split("\r?\n", -1);
+
+		// the last line might be cut off by the header limit, so it is only looked at if the whole file was read
+		final int numCompleteLines = truncated ? lines.length - 1 : lines.length;
+
+		boolean sawKey = false;
+
+		for (int i = 0; i < numCompleteLines; i++)
+		{
+			final String line = lines[i];
+
+			if (line.trim().isEmpty() || line.charAt(0) == '#')
+				continue; // skip comment
+
+			final String[] parts = line.split(" ");
+
+			try
+			{
+				// decoding checks version and checksum, but does not derive the public key
+				new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, parts[0]);
+
+				if (parts.length >= 2)
+					Iso8601Format.parseDateTimeT(parts[1]);
+
+				sawKey = true;
+			}
+			catch (final AddressFormatException x)
+			{
+				return false;
+			}
+			catch (final ParseException x)
+			{
+				return false;
+			}
+		}
+
+		return sawKey;
+	}
+}
@@ -42,6 +42,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.os.Build;
+import ch.qos.logback.classic.LoggerContext;
 
 import com.capricoinj.core.Transaction;
 import com.capricoinj.core.TransactionOutput;
@@ -327,6 +328,9 @@ public class CrashReporter
 				log.info("problem writing crash trace", x);
 			}
 
+			// the process is about to die, get queued log events out to the log file
+			((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+
 			previousHandler.uncaughtException(t, exception);
 		}
 
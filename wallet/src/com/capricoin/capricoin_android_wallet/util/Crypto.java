@@ -18,10 +18,7 @@ package com.capricoin.capricoin_android_wallet.util;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
@@ -302,41 +299,23 @@ public class Crypto
 		return result;
 	}
 
-	public final static FileFilter OPENSSL_FILE_FILTER = new FileFilter()
+	/**
+	 * @return true if the given bytes start with the Base64 encoded OpenSSL "Salted__" marker
+	 */
+	public static boolean isOpenSslHeader(final byte[] header)
 	{
-		private final char[] buf = new char[OPENSSL_MAGIC_TEXT.length()];
+		if (header.length < OPENSSL_MAGIC_TEXT.length())
+			return false;
 
+		return new String(header, 0, OPENSSL_MAGIC_TEXT.length(), Charsets.US_ASCII).equals(OPENSSL_MAGIC_TEXT);
+	}
+
+	public final static FileFilter OPENSSL_FILE_FILTER = new FileFilter()
+	{
 		@Override
 		public boolean accept(final File file)
 		{
-			Reader in = null;
-			try
-			{
-				in = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
-				if (in.read(buf) == -1)
-					return false;
-				final String str = new String(buf);
-				if (!str.toString().equals(OPENSSL_MAGIC_TEXT))
-					return false;
-				return true;
-			}
-			catch (final IOException x)
-			{
-				return false;
-			}
-			finally
-			{
-				if (in != null)
-				{
-					try
-					{
-						in.close();
-					}
-					catch (final IOException x2)
-					{
-					}
-				}
-			}
+			return BackupFileClassifier.classify(file) == BackupFileClassifier.Type.ENCRYPTED;
 		}
 	};
 }
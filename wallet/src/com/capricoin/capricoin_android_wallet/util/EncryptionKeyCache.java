@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.crypto.params.KeyParameter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.common.base.Charsets;
+
+import com.capricoinj.crypto.KeyCrypter;
+
+/**
+ * Keeps the most recently derived spending key in memory, so that back-to-back sends do not have to run the (deliberately slow) key
+ * derivation again. The key is only handed out if the same password is entered again, and is wiped after a timeout or a number of uses.
+ *
+ * @author Andreas Schildbach
+ */
+public class EncryptionKeyCache
+{
+	private final long timeoutMs;
+	private final int maxUses;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final SecureRandom random = new SecureRandom();
+
+	private boolean enabled = false;
+	private KeyCrypter keyCrypter;
+	private KeyParameter key;
+	private byte[] salt;
+	private byte[] passwordHash;
+	private int usesLeft;
+	private long expiresAt;
+
+	private static final Logger log = LoggerFactory.getLogger(EncryptionKeyCache.class);
+
+	public EncryptionKeyCache(final long timeoutMs, final int maxUses)
+	{
+		this.timeoutMs = timeoutMs;
+		this.maxUses = maxUses;
+	}
+
+	public synchronized void setEnabled(final boolean enabled)
+	{
+		this.enabled = enabled;
+
+		if (!enabled)
+			wipe();
+	}
+
+	public synchronized boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * @return copy of the cached key, or null if there is no valid key for this key crypter and password
+	 */
+	@CheckForNull
+	public synchronized KeyParameter get(@Nonnull final KeyCrypter keyCrypter, @Nonnull final String password)
+	{
+		if (key == null)
+			return null;
+
+		if (System.currentTimeMillis() >= expiresAt)
+		{
+			log.info("cached encryption key timed out");
+			wipe();
+			return null;
+		}
+
+		if (!keyCrypter.equals(this.keyCrypter) || !MessageDigest.isEqual(passwordHash, hash(salt, password)))
+			return null;
+
+		final KeyParameter copy = new KeyParameter(key.getKey());
+
+		if (--usesLeft <= 0)
+		{
+			log.info("cached encryption key used up");
+			wipe();
+		}
+
+		return copy;
+	}
+
+	public synchronized void put(@Nonnull final KeyCrypter keyCrypter, @Nonnull final String password, @Nonnull final KeyParameter key)
+	{
+		if (!enabled)
+			return;
+
+		wipe();
+
+		this.keyCrypter = keyCrypter;
+		this.key = new KeyParameter(key.getKey());
+		this.salt = new byte[16];
+		random.nextBytes(salt);
+		this.passwordHash = hash(salt, password);
+		this.usesLeft = maxUses;
+		this.expiresAt = System.currentTimeMillis() + timeoutMs;
+
+		handler.postDelayed(timeoutRunnable, timeoutMs);
+	}
+
+	public synchronized void wipe()
+	{
+		handler.removeCallbacks(timeoutRunnable);
+
+		if (key != null)
+		{
+			// KeyParameter hands out its internal array, so this clears the key material itself
+			Arrays.fill(key.getKey(), (byte) 0);
+			Arrays.fill(passwordHash, (byte) 0);
+
+			log.debug("cached encryption key wiped");
+		}
+
+		keyCrypter = null;
+		key = null;
+		salt = null;
+		passwordHash = null;
+		usesLeft = 0;
+		expiresAt = 0;
+	}
+
+	private final Runnable timeoutRunnable = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			wipe();
+		}
+	};
+
+	private static byte[] hash(@Nonnull final byte[] salt, @Nonnull final String password)
+	{
+		try
+		{
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(salt);
+			return digest.digest(password.getBytes(Charsets.UTF_8));
+		}
+		catch (final NoSuchAlgorithmException x)
+		{
+			throw new RuntimeException(x);
+		}
+	}
+}
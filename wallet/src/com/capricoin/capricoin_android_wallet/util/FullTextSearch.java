@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.util.Locale;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Text handling of the address book full-text search, kept free of Android classes so that the benchmarks run the same code.
+ *
+ * @author Andreas Schildbach
+ */
+public final class FullTextSearch
+{
+	/**
+	 * Lower-cases the text and replaces everything but letters and digits by single spaces. Labels and addresses go into the full-text
+	 * table in this form, and queries are split the same way. The built-in simple tokenizer then only ever has to split on spaces, which
+	 * it does for any text, whereas on its own it would neither lower-case nor split anything outside of ASCII.
+	 */
+	public static String normalize(@CheckForNull final String text)
+	{
+		if (text == null)
+			return "";
+
+		return text.toLowerCase(Locale.US).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+	}
+
+	public static String[] tokenize(@Nonnull final String query)
+	{
+		final String normalized = normalize(query);
+
+		return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+	}
+
+	/**
+	 * @return full-text match expression, or null if every row matches
+	 */
+	@CheckForNull
+	public static String matchExpression(@Nonnull final String[] tokens, @Nonnull final String labelColumn,
+			@Nonnull final String addressColumn)
+	{
+		if (tokens.length == 0)
+			return null;
+
+		// a single word can be the beginning of a label word or of an address, more words can only be a label
+		if (tokens.length == 1)
+			return labelColumn + ":" + tokens[0] + "* OR " + addressColumn + ":" + tokens[0] + "*";
+
+		final StringBuilder match = new StringBuilder();
+		for (final String token : tokens)
+		{
+			if (match.length() > 0)
+				match.append(' ');
+			match.append(labelColumn).append(':').append(token).append('*');
+		}
+		return match.toString();
+	}
+
+	private FullTextSearch()
+	{
+	}
+}
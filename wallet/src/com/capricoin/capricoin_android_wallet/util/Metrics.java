@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Process wide registry of counters, gauges and histograms for the hot paths of syncing, storage and networking. Recording is lock
+ * free and cheap enough to be done on every block.
+ *
+ * @author Andreas Schildbach
+ */
+public final class Metrics
+{
+	private static final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+	private static final long startedAt = System.currentTimeMillis();
+
+	private Metrics()
+	{
+	}
+
+	public static final class Counter
+	{
+		private final AtomicLong value = new AtomicLong();
+
+		public void inc()
+		{
+			value.incrementAndGet();
+		}
+
+		public void add(final long delta)
+		{
+			value.addAndGet(delta);
+		}
+
+		public long get()
+		{
+			return value.get();
+		}
+	}
+
+	public static final class Gauge
+	{
+		private final AtomicLong value = new AtomicLong();
+
+		public void set(final long value)
+		{
+			this.value.set(value);
+		}
+
+		public long get()
+		{
+			return value.get();
+		}
+	}
+
+	/**
+	 * Records non-negative values into log-linear buckets, in the spirit of HdrHistogram: each power of two is split into 16 buckets, so
+	 * percentiles are accurate to about 6% over the whole range of long.
+	 */
+	public static final class Histogram
+	{
+		private static final int SUB_BUCKETS = 16;
+		private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+		// magnitudes 5 to 62, the highest bit of a non-negative long
+		static final int NUM_BUCKETS = LINEAR_LIMIT + (62 - 5 + 1) * SUB_BUCKETS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+		public void record(long value)
+		{
+			if (value < 0)
+				value = 0;
+
+			buckets.incrementAndGet(bucketIndex(value));
+			count.incrementAndGet();
+			sum.addAndGet(value);
+
+			long current;
+			while (value < (current = min.get()) && !min.compareAndSet(current, value))
+				;
+			while (value > (current = max.get()) && !max.compareAndSet(current, value))
+				;
+		}
+
+		/** records the time passed since the given start, as returned by {@link System#currentTimeMillis()} */
+		public void recordSince(final long startMs)
+		{
+			record(System.currentTimeMillis() - startMs);
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		public long getMin()
+		{
+			return count.get() > 0 ? min.get() : 0;
+		}
+
+		public long getMax()
+		{
+			return count.get() > 0 ? max.get() : 0;
+		}
+
+		public long getMean()
+		{
+			final long count = this.count.get();
+			return count > 0 ? sum.get() / count : 0;
+		}
+
+		/**
+		 * @return value below or at which the given fraction (0..1) of all recorded values lie, rounded up to the bucket boundary
+		 */
+		public long getPercentile(final double fraction)
+		{
+			final long count = this.count.get();
+			if (count == 0)
+				return 0;
+
+			final long target = Math.max(1, (long) Math.ceil(fraction * count));
+			long cumulative = 0;
+
+			for (int i = 0; i < NUM_BUCKETS; i++)
+			{
+				cumulative += buckets.get(i);
+				if (cumulative >= target)
+					return Math.min(bucketUpperBound(i), getMax());
+			}
+
+			return getMax();
+		}
+
+		static int bucketIndex(final long value)
+		{
+			if (value < LINEAR_LIMIT)
+				return (int) value;
+
+			final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+			final int shift = magnitude - 4;
+			final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+
+			return LINEAR_LIMIT + (magnitude - 5) * SUB_BUCKETS + subBucket;
+		}
+
+		static long bucketUpperBound(final int index)
+		{
+			if (index < LINEAR_LIMIT)
+				return index;
+
+			final int magnitude = (index - LINEAR_LIMIT) / SUB_BUCKETS + 5;
+			final long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+			final int shift = magnitude - 4;
+
+			return ((subBucket + 1) << shift) - 1;
+		}
+	}
+
+	public static Counter counter(@Nonnull final String name)
+	{
+		return get(name, Counter.class);
+	}
+
+	public static Gauge gauge(@Nonnull final String name)
+	{
+		return get(name, Gauge.class);
+	}
+
+	public static Histogram histogram(@Nonnull final String name)
+	{
+		return get(name, Histogram.class);
+	}
+
+	private static <T> T get(@Nonnull final String name, @Nonnull final Class<T> type)
+	{
+		Object metric = metrics.get(name);
+
+		if (metric == null)
+		{
+			try
+			{
+				final Object newMetric = type.newInstance();
+				metric = metrics.putIfAbsent(name, newMetric);
+				if (metric == null)
+					metric = newMetric;
+			}
+			catch (final Exception x)
+			{
+				throw new RuntimeException(x);
+			}
+		}
+
+		return type.cast(metric);
+	}
+
+	/**
+	 * Appends a human readable snapshot of all metrics, sorted by name.
+	 */
+	public static void dump(@Nonnull final StringBuilder builder)
+	{
+		builder.append("uptime: ").append((System.currentTimeMillis() - startedAt) / 1000).append(" s\n\n");
+
+		for (final Map.Entry<String, Object> entry : new TreeMap<String, Object>(metrics).entrySet())
+		{
+			final Object metric = entry.getValue();
+
+			builder.append(entry.getKey()).append(": ");
+
+			if (metric instanceof Counter)
+			{
+				builder.append(((Counter) metric).get());
+			}
+			else if (metric instanceof Gauge)
+			{
+				builder.append(((Gauge) metric).get());
+			}
+			else if (metric instanceof Histogram)
+			{
+				final Histogram histogram = (Histogram) metric;
+				builder.append("count=").append(histogram.getCount());
+				builder.append(" min=").append(histogram.getMin());
+				builder.append(" mean=").append(histogram.getMean());
+				builder.append(" p50=").append(histogram.getPercentile(0.5));
+				builder.append(" p90=").append(histogram.getPercentile(0.9));
+				builder.append(" p99=").append(histogram.getPercentile(0.99));
+				builder.append(" max=").append(histogram.getMax());
+			}
+
+			builder.append('\n');
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Holds the latest of a series of immutable snapshots and hands it to observers, each on its own executor, without taking locks.
+ * Updates are conflated: an observer that has not been run yet since the last update sees only the newest snapshot, once.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ObservableState<T>
+{
+	public interface Observer<T>
+	{
+		void onStateChanged(@Nonnull T state);
+	}
+
+	public static final Executor MAIN_THREAD = new Executor()
+	{
+		@Override
+		public void execute(final Runnable runnable)
+		{
+			MainThreadHandler.HANDLER.post(runnable);
+		}
+	};
+
+	/** created on first use, so that states observed on other executors do not need a main looper, for example in tests */
+	private static final class MainThreadHandler
+	{
+		private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+	}
+
+	private final AtomicReference<T> state = new AtomicReference<T>();
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	@CheckForNull
+	public T get()
+	{
+		return state.get();
+	}
+
+	public void set(@Nonnull final T state)
+	{
+		this.state.set(state);
+
+		for (final Subscription subscription : subscriptions)
+			subscription.dispatch();
+	}
+
+	public void subscribe(@Nonnull final Observer<T> observer, @Nonnull final Executor executor)
+	{
+		subscriptions.add(new Subscription(observer, executor));
+	}
+
+	public void unsubscribe(@Nonnull final Observer<T> observer)
+	{
+		for (final Subscription subscription : subscriptions)
+		{
+			if (subscription.observer == observer)
+			{
+				subscription.cancelled = true;
+				subscriptions.remove(subscription);
+			}
+		}
+	}
+
+	private final class Subscription implements Runnable
+	{
+		private final Observer<T> observer;
+		private final Executor executor;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile boolean cancelled = false;
+
+		private Subscription(final Observer<T> observer, final Executor executor)
+		{
+			this.observer = observer;
+			this.executor = executor;
+		}
+
+		private void dispatch()
+		{
+			if (scheduled.compareAndSet(false, true))
+				executor.execute(this);
+		}
+
+		@Override
+		public void run()
+		{
+			// cleared before reading, so that an update racing with this run schedules another one
+			scheduled.set(false);
+
+			final T current = state.get();
+			if (!cancelled && current != null)
+				observer.onStateChanged(current);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.capricoinj.core.AbstractWalletEventListener;
+import com.capricoinj.core.Coin;
+import com.capricoinj.core.ECKey;
+import com.capricoinj.core.Transaction;
+import com.capricoinj.core.Wallet;
+import com.capricoinj.core.WalletEventListener;
+import com.capricoinj.utils.Threading;
+
+/**
+ * The one listener on the wallet for everything that only needs to know that the wallet changed, not how. Events arriving on the
+ * network threads are folded into a mask of changes and handed to the UI thread once per frame, where each subscriber gets the changes
+ * it asked for in a single callback, at most once per its throttle interval.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletEventHub
+{
+	public static final int CHANGE_COINS = 1 << 0;
+	public static final int CHANGE_REORGANIZE = 1 << 1;
+	public static final int CHANGE_CONFIDENCE = 1 << 2;
+	public static final int CHANGE_KEYS = 1 << 3;
+	public static final int CHANGE_TRANSACTIONS = CHANGE_COINS | CHANGE_REORGANIZE | CHANGE_CONFIDENCE;
+
+	public static final long DEFAULT_THROTTLE_MS = 500;
+
+	public interface Subscriber
+	{
+		/** will be called back on UI thread */
+		void onWalletChanged(int changes);
+	}
+
+	/** where frames and delayed deliveries run, the UI thread unless replaced in tests */
+	interface Dispatcher
+	{
+		void post(@Nonnull Runnable runnable);
+
+		void postDelayed(@Nonnull Runnable runnable, long delayMs);
+
+		void removeCallbacks(@Nonnull Runnable runnable);
+
+		long currentTimeMillis();
+	}
+
+	private static final class MainThreadDispatcher implements Dispatcher
+	{
+		private final Handler handler = new Handler(Looper.getMainLooper());
+
+		@Override
+		public void post(final Runnable runnable)
+		{
+			handler.post(runnable);
+		}
+
+		@Override
+		public void postDelayed(final Runnable runnable, final long delayMs)
+		{
+			handler.postDelayed(runnable, delayMs);
+		}
+
+		@Override
+		public void removeCallbacks(final Runnable runnable)
+		{
+			handler.removeCallbacks(runnable);
+		}
+
+		@Override
+		public long currentTimeMillis()
+		{
+			return System.currentTimeMillis();
+		}
+	}
+
+	private final Dispatcher dispatcher;
+	private final AtomicInteger pendingChanges = new AtomicInteger();
+	private final AtomicBoolean framePosted = new AtomicBoolean();
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	@CheckForNull
+	private Wallet wallet;
+
+	public WalletEventHub()
+	{
+		this(new MainThreadDispatcher());
+	}
+
+	WalletEventHub(@Nonnull final Dispatcher dispatcher)
+	{
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Moves the listener over to the given wallet, for when the wallet has been loaded or replaced.
+	 */
+	public synchronized void attach(@Nonnull final Wallet wallet)
+	{
+		if (this.wallet != null)
+			this.wallet.removeEventListener(walletEventListener);
+
+		this.wallet = wallet;
+		wallet.addEventListener(walletEventListener, Threading.SAME_THREAD);
+	}
+
+	public void subscribe(@Nonnull final Subscriber subscriber, final int changes, final long throttleMs)
+	{
+		subscriptions.add(new Subscription(subscriber, changes, throttleMs));
+	}
+
+	public void unsubscribe(@Nonnull final Subscriber subscriber)
+	{
+		for (final Subscription subscription : subscriptions)
+		{
+			if (subscription.subscriber == subscriber)
+			{
+				subscription.cancelled = true;
+				dispatcher.removeCallbacks(subscription);
+				subscriptions.remove(subscription);
+			}
+		}
+	}
+
+	void onChange(final int change)
+	{
+		Metrics.counter("wallet.events").inc();
+
+		int pending;
+		do
+		{
+			pending = pendingChanges.get();
+		}
+		while (!pendingChanges.compareAndSet(pending, pending | change));
+
+		if (framePosted.compareAndSet(false, true))
+			dispatcher.post(frame);
+	}
+
+	private final Runnable frame = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// cleared before taking the changes, so that a change racing with this frame posts another one
+			framePosted.set(false);
+
+			final int changes = pendingChanges.getAndSet(0);
+			final long now = dispatcher.currentTimeMillis();
+
+			Metrics.counter("wallet.event_frames").inc();
+
+			for (final Subscription subscription : subscriptions)
+				subscription.offer(changes, now);
+		}
+	};
+
+	private final class Subscription implements Runnable
+	{
+		private final Subscriber subscriber;
+		private final int mask;
+		private final long throttleMs;
+
+		// only touched on the UI thread
+		private int pending = 0;
+		private long lastDeliveredAt = 0;
+		private boolean delayed = false;
+		private volatile boolean cancelled = false;
+
+		private Subscription(final Subscriber subscriber, final int mask, final long throttleMs)
+		{
+			this.subscriber = subscriber;
+			this.mask = mask;
+			this.throttleMs = throttleMs;
+		}
+
+		private void offer(final int changes, final long now)
+		{
+			pending |= changes & mask;
+
+			if (pending == 0 || delayed)
+				return;
+
+			final long wait = lastDeliveredAt + throttleMs - now;
+			if (wait <= 0)
+			{
+				run();
+			}
+			else
+			{
+				delayed = true;
+				dispatcher.postDelayed(this, wait);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			delayed = false;
+
+			if (cancelled)
+				return;
+
+			final int changes = pending;
+			pending = 0;
+			lastDeliveredAt = dispatcher.currentTimeMillis();
+
+			final long start = System.currentTimeMillis();
+			subscriber.onWalletChanged(changes);
+			Metrics.histogram("wallet.event_dispatch_ms").recordSince(start);
+		}
+	}
+
+	private final WalletEventListener walletEventListener = new AbstractWalletEventListener()
+	{
+		@Override
+		public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance, final Coin newBalance)
+		{
+			onChange(CHANGE_COINS);
+		}
+
+		@Override
+		public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance, final Coin newBalance)
+		{
+			onChange(CHANGE_COINS);
+		}
+
+		@Override
+		public void onReorganize(final Wallet wallet)
+		{
+			onChange(CHANGE_REORGANIZE);
+		}
+
+		@Override
+		public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx)
+		{
+			onChange(CHANGE_CONFIDENCE);
+		}
+
+		@Override
+		public void onKeysAdded(final List<ECKey> keys)
+		{
+			onChange(CHANGE_KEYS);
+		}
+	};
+}
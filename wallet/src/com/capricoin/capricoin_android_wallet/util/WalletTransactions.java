@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.capricoinj.core.ECKey;
+import com.capricoinj.core.Sha256Hash;
+import com.capricoinj.core.Transaction;
+import com.capricoinj.core.TransactionConfidence;
+import com.capricoinj.core.Wallet;
+
+/**
+ * The work behind the transaction, block and address lists, kept free of Android classes so that it can be timed against large wallets
+ * outside of the app.
+ *
+ * @author Andreas Schildbach
+ */
+public final class WalletTransactions
+{
+	public static final Comparator<Transaction> TRANSACTION_COMPARATOR = new Comparator<Transaction>()
+	{
+		@Override
+		public int compare(final Transaction tx1, final Transaction tx2)
+		{
+			final boolean pending1 = tx1.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.PENDING;
+			final boolean pending2 = tx2.getConfidence().getConfidenceType() == TransactionConfidence.ConfidenceType.PENDING;
+
+			if (pending1 != pending2)
+				return pending1 ? -1 : 1;
+
+			final Date updateTime1 = tx1.getUpdateTime();
+			final long time1 = updateTime1 != null ? updateTime1.getTime() : 0;
+			final Date updateTime2 = tx2.getUpdateTime();
+			final long time2 = updateTime2 != null ? updateTime2.getTime() : 0;
+
+			if (time1 != time2)
+				return time1 > time2 ? -1 : 1;
+
+			return tx1.getHash().compareTo(tx2.getHash());
+		}
+	};
+
+	/**
+	 * @return transactions of the wallet in the given directions, pending first and then newest first; key rotations are only included if
+	 *         both directions are asked for
+	 */
+	public static List<Transaction> filterAndSort(@Nonnull final Wallet wallet, final boolean received, final boolean sent)
+	{
+		final Set<Transaction> transactions = wallet.getTransactions(true);
+		final List<Transaction> filteredTransactions = new ArrayList<Transaction>(transactions.size());
+
+		for (final Transaction tx : transactions)
+		{
+			final boolean isSent = tx.getValue(wallet).signum() < 0;
+			final boolean isInternal = tx.getPurpose() == Transaction.Purpose.KEY_ROTATION;
+
+			if ((received && sent) || (received && !isSent && !isInternal) || (sent && isSent && !isInternal))
+				filteredTransactions.add(tx);
+		}
+
+		Collections.sort(filteredTransactions, TRANSACTION_COMPARATOR);
+
+		return filteredTransactions;
+	}
+
+	/**
+	 * @return transactions of the wallet that have been seen in a block
+	 */
+	public static Set<Transaction> inBlocks(@Nonnull final Wallet wallet)
+	{
+		final Set<Transaction> transactions = wallet.getTransactions(true);
+
+		final Set<Transaction> filteredTransactions = new HashSet<Transaction>(transactions.size());
+		for (final Transaction tx : transactions)
+		{
+			final Map<Sha256Hash, Integer> appearsIn = tx.getAppearsInHashes();
+			if (appearsIn != null && !appearsIn.isEmpty()) // TODO filter by updateTime
+				filteredTransactions.add(tx);
+		}
+
+		return filteredTransactions;
+	}
+
+	/**
+	 * @return imported keys of the wallet, rotating keys last and otherwise oldest first
+	 */
+	public static List<ECKey> sortedImportedKeys(@Nonnull final Wallet wallet)
+	{
+		final List<ECKey> keys = wallet.getImportedKeys();
+
+		Collections.sort(keys, new Comparator<ECKey>()
+		{
+			@Override
+			public int compare(final ECKey lhs, final ECKey rhs)
+			{
+				final boolean lhsRotating = wallet.isKeyRotating(lhs);
+				final boolean rhsRotating = wallet.isKeyRotating(rhs);
+
+				if (lhsRotating != rhsRotating)
+					return lhsRotating ? 1 : -1;
+
+				if (lhs.getCreationTimeSeconds() != rhs.getCreationTimeSeconds())
+					return lhs.getCreationTimeSeconds() > rhs.getCreationTimeSeconds() ? 1 : -1;
+
+				return 0;
+			}
+		});
+
+		return keys;
+	}
+
+	private WalletTransactions()
+	{
+	}
+}
@@ -22,16 +22,20 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Writer;
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -158,6 +162,11 @@ public class WalletUtils
 	}
 
 	public static Wallet restoreWalletFromProtobufOrBase58(final InputStream is) throws IOException
+	{
+		return restoreWalletFromProtobufOrBase58(is, null);
+	}
+
+	public static Wallet restoreWalletFromProtobufOrBase58(final InputStream is, @Nullable final KeysReadListener listener) throws IOException
 	{
 		is.mark((int) Constants.BACKUP_MAX_CHARS);
 
@@ -170,7 +179,7 @@ public class WalletUtils
 			try
 			{
 				is.reset();
-				return restorePrivateKeysFromBase58(is);
+				return restorePrivateKeysFromBase58(is, listener);
 			}
 			catch (final IOException x2)
 			{
@@ -197,12 +206,17 @@ public class WalletUtils
 	}
 
 	public static Wallet restorePrivateKeysFromBase58(final InputStream is) throws IOException
+	{
+		return restorePrivateKeysFromBase58(is, null);
+	}
+
+	public static Wallet restorePrivateKeysFromBase58(final InputStream is, @Nullable final KeysReadListener listener) throws IOException
 	{
 		final BufferedReader keyReader = new BufferedReader(new InputStreamReader(is, Charsets.UTF_8));
 
 		// create non-HD wallet
 		final KeyChainGroup group = new KeyChainGroup(Constants.NETWORK_PARAMETERS);
-		group.importKeys(WalletUtils.readKeys(keyReader));
+		group.importKeys(WalletUtils.readKeys(keyReader, listener));
 		return new Wallet(Constants.NETWORK_PARAMETERS, group);
 	}
 
@@ -224,13 +238,29 @@ public class WalletUtils
 		}
 	}
 
+	public interface KeysReadListener
+	{
+		/** will be called back on the reading thread, with the number of keys read so far */
+		void onKeysRead(int numKeys);
+	}
+
+	/** Number of lines parsed as one unit of work, and the threshold above which parsing goes parallel. */
+	private static final int READ_KEYS_CHUNK_SIZE = 256;
+
 	public static List<ECKey> readKeys(@Nonnull final BufferedReader in) throws IOException
 	{
+		return readKeys(in, null);
+	}
+
+	public static List<ECKey> readKeys(@Nonnull final BufferedReader in, @Nullable final KeysReadListener listener) throws IOException
+	{
+		// lines are read in a single streaming pass, while the expensive key derivation is spread across cores
+		ExecutorService executor = null;
+		final List<Future<List<ECKey>>> chunks = new ArrayList<Future<List<ECKey>>>();
+
 		try
 		{
-			final DateFormat format = Iso8601Format.newDateTimeFormatT();
-
-			final List<ECKey> keys = new LinkedList<ECKey>();
+			List<String> lines = new ArrayList<String>(READ_KEYS_CHUNK_SIZE);
 
 			long charCount = 0;
 			while (true)
@@ -244,12 +274,35 @@ public class WalletUtils
 				if (line.trim().isEmpty() || line.charAt(0) == '#')
 					continue; // skip comment
 
-				final String[] parts = line.split(" ");
+				lines.add(line);
 
-				final ECKey key = new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, parts[0]).getKey();
-				key.setCreationTimeSeconds(parts.length >= 2 ? format.parse(parts[1]).getTime() / DateUtils.SECOND_IN_MILLIS : 0);
+				if (lines.size() >= READ_KEYS_CHUNK_SIZE)
+				{
+					if (executor == null)
+						executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
-				keys.add(key);
+					chunks.add(executor.submit(new ParseKeysCallable(lines)));
+					lines = new ArrayList<String>(READ_KEYS_CHUNK_SIZE);
+				}
+			}
+
+			final List<ECKey> keys = new ArrayList<ECKey>(chunks.size() * READ_KEYS_CHUNK_SIZE + lines.size());
+
+			// collect in submission order, so keys keep their file order and the first bad line is the one reported
+			for (final Future<List<ECKey>> chunk : chunks)
+			{
+				keys.addAll(chunk.get());
+
+				if (listener != null)
+					listener.onKeysRead(keys.size());
+			}
+
+			if (!lines.isEmpty())
+			{
+				keys.addAll(new ParseKeysCallable(lines).call());
+
+				if (listener != null)
+					listener.onKeysRead(keys.size());
 			}
 
 			return keys;
@@ -262,40 +315,67 @@ public class WalletUtils
 		{
 			throw new IOException("cannot read keys", x);
 		}
+		catch (final ExecutionException x)
+		{
+			final Throwable cause = x.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+
+			throw new IOException("cannot read keys", cause);
+		}
+		catch (final InterruptedException x)
+		{
+			throw new IOException("interrupted while reading keys", x);
+		}
+		finally
+		{
+			if (executor != null)
+			{
+				for (final Future<List<ECKey>> chunk : chunks)
+					chunk.cancel(false);
+
+				executor.shutdown();
+			}
+		}
 	}
 
-	public static final FileFilter KEYS_FILE_FILTER = new FileFilter()
+	private static final class ParseKeysCallable implements Callable<List<ECKey>>
 	{
+		private final List<String> lines;
+
+		public ParseKeysCallable(@Nonnull final List<String> lines)
+		{
+			this.lines = lines;
+		}
+
 		@Override
-		public boolean accept(final File file)
+		public List<ECKey> call() throws AddressFormatException, ParseException
 		{
-			BufferedReader reader = null;
+			// date formats are not thread safe, so every chunk gets its own
+			final DateFormat format = Iso8601Format.newDateTimeFormatT();
 
-			try
-			{
-				reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
-				WalletUtils.readKeys(reader);
+			final List<ECKey> keys = new ArrayList<ECKey>(lines.size());
 
-				return true;
-			}
-			catch (final IOException x)
+			for (final String line : lines)
 			{
-				return false;
-			}
-			finally
-			{
-				if (reader != null)
-				{
-					try
-					{
-						reader.close();
-					}
-					catch (final IOException x)
-					{
-						// swallow
-					}
-				}
+				final String[] parts = line.split(" ");
+
+				final ECKey key = new DumpedPrivateKey(Constants.NETWORK_PARAMETERS, parts[0]).getKey();
+				key.setCreationTimeSeconds(parts.length >= 2 ? format.parse(parts[1]).getTime() / DateUtils.SECOND_IN_MILLIS : 0);
+
+				keys.add(key);
 			}
+
+			return keys;
+		}
+	}
+
+	public static final FileFilter KEYS_FILE_FILTER = new FileFilter()
+	{
+		@Override
+		public boolean accept(final File file)
+		{
+			return BackupFileClassifier.classify(file) == BackupFileClassifier.Type.KEYS;
 		}
 	};
 
@@ -304,31 +384,7 @@ public class WalletUtils
 		@Override
 		public boolean accept(final File file)
 		{
-			InputStream is = null;
-
-			try
-			{
-				is = new FileInputStream(file);
-				return WalletProtobufSerializer.isWallet(is);
-			}
-			catch (final IOException x)
-			{
-				return false;
-			}
-			finally
-			{
-				if (is != null)
-				{
-					try
-					{
-						is.close();
-					}
-					catch (final IOException x)
-					{
-						// swallow
-					}
-				}
-			}
+			return BackupFileClassifier.classify(file) == BackupFileClassifier.Type.PROTOBUF;
 		}
 	};
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.text.format.DateUtils;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ActivityTrackerTest
+{
+	private SyncSchedulerTest.FakeClock clock;
+	private ActivityTracker tracker;
+
+	@Before
+	public void setup()
+	{
+		clock = new SyncSchedulerTest.FakeClock(1000 * DateUtils.DAY_IN_MILLIS);
+		tracker = new ActivityTracker(clock);
+	}
+
+	@Test
+	public void notIdleBeforeEnoughHistory() throws Exception
+	{
+		assertFalse(tracker.isIdle());
+		advanceMinutes(1);
+		assertFalse(tracker.isIdle());
+		advanceMinutes(1);
+		assertTrue(tracker.isIdle());
+	}
+
+	@Test
+	public void blockKeepsBusyForTwoMinutes() throws Exception
+	{
+		advanceMinutes(5);
+		tracker.onBlock(false);
+
+		for (int i = 0; i <= 2; i++)
+		{
+			assertFalse("minute " + i, tracker.isIdle());
+			advanceMinutes(1);
+		}
+		assertTrue(tracker.isIdle());
+	}
+
+	@Test
+	public void transactionKeepsBusyForNineMinutes() throws Exception
+	{
+		advanceMinutes(5);
+		tracker.onTransaction();
+
+		for (int i = 0; i <= 9; i++)
+		{
+			assertFalse("minute " + i, tracker.isIdle());
+			advanceMinutes(1);
+		}
+		assertTrue(tracker.isIdle());
+	}
+
+	@Test
+	public void idleAfterRingWrapsAround() throws Exception
+	{
+		advanceMinutes(5);
+		tracker.onTransaction();
+		tracker.onBlock(true);
+
+		// same bucket, one hour later
+		advanceMinutes(60);
+		assertTrue(tracker.isIdle());
+
+		tracker.onBlock(false);
+		assertFalse(tracker.isIdle());
+	}
+
+	@Test
+	public void tipBlocksPerHourUnknownAtFirst() throws Exception
+	{
+		tracker.onBlock(true);
+		advanceMinutes(8);
+
+		assertEquals(-1, tracker.getTipBlocksPerHour(), 0);
+	}
+
+	@Test
+	public void tipBlocksPerHourCountsOnlyTipBlocks() throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+		{
+			advanceMinutes(1);
+			tracker.onBlock(true);
+			tracker.onBlock(false);
+		}
+
+		assertEquals(60, tracker.getTipBlocksPerHour(), 0.001);
+	}
+
+	@Test
+	public void tipBlocksPerHourAfterRingWrapsAround() throws Exception
+	{
+		for (int i = 0; i < 150; i++)
+		{
+			advanceMinutes(1);
+			if (i % 2 == 0)
+				tracker.onBlock(true);
+		}
+
+		// only the last hour counts
+		assertEquals(30, tracker.getTipBlocksPerHour(), 0.001);
+	}
+
+	@Test
+	public void tipBlocksPerHourIgnoresStaleBuckets() throws Exception
+	{
+		for (int i = 0; i < 30; i++)
+		{
+			advanceMinutes(1);
+			tracker.onBlock(true);
+		}
+
+		// buckets written an hour ago and longer are not read as current
+		advanceMinutes(70);
+		assertEquals(0, tracker.getTipBlocksPerHour(), 0);
+	}
+
+	private void advanceMinutes(final int minutes)
+	{
+		clock.now += minutes * DateUtils.MINUTE_IN_MILLIS;
+	}
+}
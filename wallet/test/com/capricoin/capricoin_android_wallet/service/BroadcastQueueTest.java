@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.capricoin.capricoin_android_wallet.service.BroadcastQueue.Action;
+import com.capricoin.capricoin_android_wallet.service.BroadcastQueue.Entry;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class BroadcastQueueTest
+{
+	private static final long START = 1000000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void firstAttemptIsImmediate() throws Exception
+	{
+		final Entry entry = new Entry(START);
+
+		assertEquals(Action.ATTEMPT, BroadcastQueue.next(entry, START));
+		assertEquals(1, entry.numAttempts);
+		assertEquals(START, entry.inFlightSince);
+	}
+
+	@Test
+	public void waitsWhileInFlight() throws Exception
+	{
+		final Entry entry = new Entry(START);
+		BroadcastQueue.next(entry, START);
+
+		assertEquals(Action.WAIT, BroadcastQueue.next(entry, START + BroadcastQueue.IN_FLIGHT_TIMEOUT_MS - 1));
+		assertEquals(1, entry.numAttempts);
+	}
+
+	@Test
+	public void inFlightTimeoutCountsAsFailure() throws Exception
+	{
+		final Entry entry = new Entry(START);
+		BroadcastQueue.next(entry, START);
+
+		final long timeout = START + BroadcastQueue.IN_FLIGHT_TIMEOUT_MS;
+		assertEquals(Action.WAIT, BroadcastQueue.next(entry, timeout));
+		assertEquals(0, entry.inFlightSince);
+		assertEquals(timeout + BroadcastQueue.MIN_BACKOFF_MS, entry.nextAttemptAt);
+
+		assertEquals(Action.ATTEMPT, BroadcastQueue.next(entry, entry.nextAttemptAt));
+		assertEquals(2, entry.numAttempts);
+	}
+
+	@Test
+	public void backoffDoublesUpToMaximum() throws Exception
+	{
+		final Entry entry = new Entry(START);
+		long now = START;
+		long expectedBackoff = BroadcastQueue.MIN_BACKOFF_MS;
+
+		for (int attempt = 1; attempt < BroadcastQueue.MAX_ATTEMPTS; attempt++)
+		{
+			assertEquals(Action.ATTEMPT, BroadcastQueue.next(entry, now));
+			BroadcastQueue.failed(entry, now);
+
+			assertEquals(Math.min(expectedBackoff, BroadcastQueue.MAX_BACKOFF_MS), entry.nextAttemptAt - now);
+			assertEquals(Action.WAIT, BroadcastQueue.next(entry, entry.nextAttemptAt - 1));
+
+			now = entry.nextAttemptAt;
+			expectedBackoff *= 2;
+		}
+	}
+
+	@Test
+	public void givesUpAfterMaxAttempts() throws Exception
+	{
+		final Entry entry = new Entry(START);
+		long now = START;
+
+		for (int attempt = 1; attempt <= BroadcastQueue.MAX_ATTEMPTS; attempt++)
+		{
+			assertEquals(Action.ATTEMPT, BroadcastQueue.next(entry, now));
+			BroadcastQueue.failed(entry, now);
+			now = entry.nextAttemptAt;
+		}
+
+		assertEquals(Action.GIVE_UP, BroadcastQueue.next(entry, now));
+		assertEquals(BroadcastQueue.MAX_ATTEMPTS, entry.numAttempts);
+	}
+
+	@Test
+	public void givesUpAfterMaxAgeWhileBackingOff() throws Exception
+	{
+		final Entry entry = new Entry(START);
+		BroadcastQueue.next(entry, START);
+		BroadcastQueue.failed(entry, START + BroadcastQueue.MAX_AGE_MS - 1);
+
+		assertEquals(Action.WAIT, BroadcastQueue.next(entry, START + BroadcastQueue.MAX_AGE_MS - 1));
+		assertEquals(Action.GIVE_UP, BroadcastQueue.next(entry, START + BroadcastQueue.MAX_AGE_MS));
+	}
+
+	@Test
+	public void sizeDropsEntriesQueuedTooLong() throws Exception
+	{
+		final File file = new File(folder.getRoot(), "broadcast-queue");
+		final long now = System.currentTimeMillis();
+		writeQueue(file, now - BroadcastQueue.MAX_AGE_MS - 1, now);
+
+		final BroadcastQueue queue = new BroadcastQueue(file);
+		assertEquals(1, queue.size());
+
+		// dropped for good
+		assertEquals(1, new BroadcastQueue(file).size());
+	}
+
+	private static void writeQueue(final File file, final long... enqueuedAts) throws IOException
+	{
+		final DataOutputStream os = new DataOutputStream(new FileOutputStream(file));
+		os.writeInt(BroadcastQueue.FILE_VERSION);
+		os.writeInt(enqueuedAts.length);
+		for (int i = 0; i < enqueuedAts.length; i++)
+		{
+			final byte[] hash = new byte[32];
+			hash[0] = (byte) (i + 1);
+			os.write(hash);
+			os.writeLong(enqueuedAts[i]);
+			os.writeInt(0);
+		}
+		os.close();
+	}
+}
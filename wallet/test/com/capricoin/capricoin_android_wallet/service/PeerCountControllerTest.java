@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.ComponentCallbacks2;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class PeerCountControllerTest
+{
+	private static final int MAX_PEERS = 6;
+	private static final int BLOCKS_LEFT = 5000;
+	private static final long FAST_PING_MS = 100;
+	private static final long SLOW_PING_MS = 5000;
+
+	private PeerCountController controller;
+
+	@Before
+	public void setup()
+	{
+		controller = new PeerCountController(MAX_PEERS);
+	}
+
+	@Test
+	public void slowDownloadUsesCeiling() throws Exception
+	{
+		controller.update(0, 0, FAST_PING_MS, 0);
+
+		final PeerCountController.Decision decision = controller.update(BLOCKS_LEFT, 2, FAST_PING_MS, 0);
+		assertEquals(MAX_PEERS, decision.target);
+		assertTrue(decision.reason.contains("slow download"));
+	}
+
+	@Test
+	public void stalledDownloadUsesCeiling() throws Exception
+	{
+		controller.update(0, 0, FAST_PING_MS, 0);
+
+		final PeerCountController.Decision decision = controller.update(BLOCKS_LEFT, 0, FAST_PING_MS, 0);
+		assertEquals(MAX_PEERS, decision.target);
+		assertTrue(decision.reason.contains("stalled download"));
+	}
+
+	@Test
+	public void fastDownloadKeepsFewPeers() throws Exception
+	{
+		final PeerCountController.Decision decision = controller.update(BLOCKS_LEFT, 30, FAST_PING_MS, 0);
+		assertEquals(4, decision.target);
+		assertTrue(decision.reason.contains("fast download"));
+	}
+
+	@Test
+	public void mediumDownloadStaysPut() throws Exception
+	{
+		assertNull(controller.update(BLOCKS_LEFT, 10, FAST_PING_MS, 0));
+		assertEquals(MAX_PEERS, controller.getCurrent());
+
+		controller.update(BLOCKS_LEFT, 30, FAST_PING_MS, 0);
+		assertNull(controller.update(BLOCKS_LEFT, 10, FAST_PING_MS, 0));
+		assertEquals(4, controller.getCurrent());
+	}
+
+	@Test
+	public void atTip() throws Exception
+	{
+		final PeerCountController.Decision decision = controller.update(0, 0, FAST_PING_MS, 0);
+		assertEquals(MAX_PEERS, decision.previous);
+		assertEquals(3, decision.target);
+		assertEquals("at tip", decision.reason);
+
+		// a few blocks behind is still at tip, whatever the rate
+		assertNull(controller.update(9, 0, FAST_PING_MS, 0));
+		assertNull(controller.update(9, 30, -1, 0));
+	}
+
+	@Test
+	public void atTipWithSlowPeers() throws Exception
+	{
+		final PeerCountController.Decision decision = controller.update(0, 0, SLOW_PING_MS, 0);
+		assertEquals(4, decision.target);
+		assertTrue(decision.reason.contains("median ping"));
+	}
+
+	@Test
+	public void memoryPressureLowersCeiling() throws Exception
+	{
+		assertEquals(MAX_PEERS - 1, controller.update(BLOCKS_LEFT, 0, FAST_PING_MS, ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE).target);
+		assertEquals(MAX_PEERS / 2, controller.update(BLOCKS_LEFT, 0, FAST_PING_MS, ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW).target);
+		assertEquals(2, controller.update(BLOCKS_LEFT, 0, FAST_PING_MS, ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL).target);
+
+		// the ceiling applies at the tip too
+		final PeerCountController.Decision decision = controller.update(0, 0, SLOW_PING_MS, ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+		assertEquals(MAX_PEERS / 2, decision.target);
+		assertTrue(decision.reason.contains("memory low"));
+	}
+
+	@Test
+	public void unchangedTargetIsNoDecision() throws Exception
+	{
+		assertNull(controller.update(BLOCKS_LEFT, 2, FAST_PING_MS, 0));
+		assertNull(controller.update(BLOCKS_LEFT, 0, FAST_PING_MS, 0));
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class PeerStatsTest
+{
+	private static final long START = 1000000;
+	private static final long TIMEOUT_MS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private PeerStats stats;
+
+	private InetSocketAddress ipv4;
+	private InetSocketAddress ipv6;
+	private InetSocketAddress unknown;
+
+	@Before
+	public void setup() throws Exception
+	{
+		file = new File(folder.getRoot(), "peer-stats");
+		stats = new PeerStats(file);
+
+		ipv4 = new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 }), 9901);
+		ipv6 = new InetSocketAddress(InetAddress.getByName("2001:db8::1"), 50000);
+		unknown = new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 }), 9901);
+	}
+
+	@Test
+	public void failedRanksBelowUnknown() throws Exception
+	{
+		stats.onHandedOut(ipv4, START);
+		stats.onDisconnected(ipv4, Long.MAX_VALUE, START + 1000);
+
+		assertEquals(Arrays.asList(unknown, ipv4), stats.sort(Arrays.asList(ipv4, unknown)));
+	}
+
+	@Test
+	public void fastRanksAboveUnknown() throws Exception
+	{
+		connect(ipv4, 100, 50);
+
+		assertEquals(Arrays.asList(ipv4, unknown), stats.sort(Arrays.asList(unknown, ipv4)));
+	}
+
+	@Test
+	public void expiredHandOutIsNotPenalised() throws Exception
+	{
+		stats.onHandedOut(ipv4, START);
+		stats.onHandedOut(ipv6, START);
+		stats.expireHandedOut(START + TIMEOUT_MS + 1, TIMEOUT_MS);
+
+		// the peer group gives up on addresses it never tried
+		stats.onDisconnected(ipv4, Long.MAX_VALUE, START + TIMEOUT_MS + 2);
+
+		assertEquals(Arrays.asList(ipv4, unknown, ipv6), stats.sort(Arrays.asList(ipv4, unknown, ipv6)));
+		assertEquals(Arrays.asList(ipv6, unknown, ipv4), stats.sort(Arrays.asList(ipv6, unknown, ipv4)));
+	}
+
+	@Test
+	public void pendingHandOutIsPenalised() throws Exception
+	{
+		stats.onHandedOut(ipv4, START);
+		stats.expireHandedOut(START + TIMEOUT_MS, TIMEOUT_MS);
+		stats.onDisconnected(ipv4, Long.MAX_VALUE, START + TIMEOUT_MS);
+
+		assertEquals(Arrays.asList(unknown, ipv4), stats.sort(Arrays.asList(ipv4, unknown)));
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception
+	{
+		final InetSocketAddress unresolved = InetSocketAddress.createUnresolved("peer.example.com", 9901);
+
+		connect(ipv4, 100, 50);
+		stats.onHandedOut(ipv6, START);
+		stats.onDisconnected(ipv6, Long.MAX_VALUE, START + 1000);
+		stats.onHandedOut(unresolved, START);
+		stats.onDisconnected(unresolved, Long.MAX_VALUE, START + 1000);
+		stats.save();
+
+		final PeerStats loaded = new PeerStats(file);
+
+		assertEquals(Arrays.asList(ipv4, unknown, ipv6), loaded.sort(Arrays.asList(ipv6, unknown, ipv4)));
+		// unresolved addresses are not saved, so they come back unknown
+		assertEquals(Arrays.asList(unresolved, unknown), loaded.sort(Arrays.asList(unresolved, unknown)));
+	}
+
+	@Test
+	public void saveWithoutUseWritesNothing() throws Exception
+	{
+		stats.save();
+
+		assertFalse(file.exists());
+	}
+
+	private void connect(final InetSocketAddress address, final long connectMs, final long pingMs)
+	{
+		stats.onHandedOut(address, START);
+		stats.onConnected(address, START + connectMs, TIMEOUT_MS);
+		stats.onDisconnected(address, pingMs, START + connectMs + 60000);
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.capricoinj.core.Address;
+import com.capricoinj.core.ECKey;
+import com.capricoinj.core.NetworkParameters;
+import com.capricoinj.core.Sha256Hash;
+import com.capricoinj.core.StoredBlock;
+import com.capricoinj.params.UnitTestParams;
+import com.capricoinj.store.BlockStore;
+import com.capricoinj.store.MemoryBlockStore;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class RecentBlocksTest
+{
+	private static final NetworkParameters PARAMS = UnitTestParams.get();
+
+	private BlockStore blockStore;
+	private StoredBlock genesis;
+
+	@Before
+	public void setup() throws Exception
+	{
+		blockStore = new MemoryBlockStore(PARAMS);
+		genesis = blockStore.getChainHead();
+	}
+
+	@Test
+	public void headAdvancesByOne() throws Exception
+	{
+		final List<StoredBlock> chain = extend(genesis, 3);
+		final RecentBlocks recentBlocks = new RecentBlocks(8);
+
+		for (final StoredBlock block : chain)
+			recentBlocks.onChainHead(block, blockStore);
+
+		assertEquals(hashes(chain.get(2), chain.get(1), chain.get(0), genesis), hashes(recentBlocks.get(8)));
+		assertEquals(hashes(chain.get(2), chain.get(1)), hashes(recentBlocks.get(2)));
+	}
+
+	@Test
+	public void sameHeadTwice() throws Exception
+	{
+		final List<StoredBlock> chain = extend(genesis, 2);
+		final RecentBlocks recentBlocks = new RecentBlocks(8);
+
+		recentBlocks.onChainHead(chain.get(1), blockStore);
+		recentBlocks.onChainHead(chain.get(1), blockStore);
+
+		assertEquals(hashes(chain.get(1), chain.get(0), genesis), hashes(recentBlocks.get(8)));
+	}
+
+	@Test
+	public void gapWithinCapacity() throws Exception
+	{
+		final List<StoredBlock> chain = extend(genesis, 5);
+		final RecentBlocks recentBlocks = new RecentBlocks(8);
+
+		recentBlocks.onChainHead(chain.get(1), blockStore);
+		recentBlocks.onChainHead(chain.get(4), blockStore);
+
+		assertEquals(hashes(chain.get(4), chain.get(3), chain.get(2), chain.get(1), chain.get(0), genesis), hashes(recentBlocks.get(8)));
+	}
+
+	@Test
+	public void gapBeyondCapacity() throws Exception
+	{
+		final List<StoredBlock> chain = extend(genesis, 10);
+		final RecentBlocks recentBlocks = new RecentBlocks(4);
+
+		recentBlocks.onChainHead(chain.get(0), blockStore);
+		recentBlocks.onChainHead(chain.get(9), blockStore);
+
+		assertEquals(hashes(chain.get(9), chain.get(8), chain.get(7), chain.get(6)), hashes(recentBlocks.get(8)));
+	}
+
+	@Test
+	public void reorgWithinCapacity() throws Exception
+	{
+		final List<StoredBlock> common = extend(genesis, 2);
+		final List<StoredBlock> oldBranch = extend(common.get(1), 3);
+		final List<StoredBlock> newBranch = extend(common.get(1), 4);
+		final RecentBlocks recentBlocks = new RecentBlocks(16);
+
+		for (final StoredBlock block : common)
+			recentBlocks.onChainHead(block, blockStore);
+		for (final StoredBlock block : oldBranch)
+			recentBlocks.onChainHead(block, blockStore);
+
+		recentBlocks.onChainHead(newBranch.get(3), blockStore);
+
+		assertEquals(hashes(newBranch.get(3), newBranch.get(2), newBranch.get(1), newBranch.get(0), common.get(1), common.get(0), genesis),
+				hashes(recentBlocks.get(16)));
+	}
+
+	@Test
+	public void reorgToLowerHead() throws Exception
+	{
+		final List<StoredBlock> common = extend(genesis, 2);
+		final List<StoredBlock> oldBranch = extend(common.get(1), 5);
+		final List<StoredBlock> newBranch = extend(common.get(1), 1);
+		final RecentBlocks recentBlocks = new RecentBlocks(16);
+
+		recentBlocks.onChainHead(oldBranch.get(4), blockStore);
+		recentBlocks.onChainHead(newBranch.get(0), blockStore);
+
+		assertEquals(hashes(newBranch.get(0), common.get(1), common.get(0), genesis), hashes(recentBlocks.get(16)));
+	}
+
+	@Test
+	public void reorgDeeperThanCapacity() throws Exception
+	{
+		final List<StoredBlock> oldBranch = extend(genesis, 10);
+		final List<StoredBlock> newBranch = extend(genesis, 12);
+		final RecentBlocks recentBlocks = new RecentBlocks(4);
+
+		for (final StoredBlock block : oldBranch)
+			recentBlocks.onChainHead(block, blockStore);
+
+		recentBlocks.onChainHead(newBranch.get(11), blockStore);
+
+		// nothing of the old branch is left over
+		assertEquals(hashes(newBranch.get(11), newBranch.get(10), newBranch.get(9), newBranch.get(8)), hashes(recentBlocks.get(16)));
+
+		// and the ring goes on from the new head
+		final List<StoredBlock> next = extend(newBranch.get(11), 1);
+		recentBlocks.onChainHead(next.get(0), blockStore);
+		assertEquals(hashes(next.get(0), newBranch.get(11), newBranch.get(10), newBranch.get(9)), hashes(recentBlocks.get(16)));
+	}
+
+	@Test
+	public void clear() throws Exception
+	{
+		final List<StoredBlock> chain = extend(genesis, 3);
+		final RecentBlocks recentBlocks = new RecentBlocks(8);
+		recentBlocks.onChainHead(chain.get(2), blockStore);
+
+		recentBlocks.clear();
+
+		assertEquals(Collections.emptyList(), recentBlocks.get(8));
+	}
+
+	/** @return numBlocks new blocks on top of the given one, all put into the store, oldest first */
+	private List<StoredBlock> extend(final StoredBlock from, final int numBlocks) throws Exception
+	{
+		// a different coinbase output for each branch, so that branches from the same block differ
+		final Address to = new ECKey().toAddress(PARAMS);
+		final List<StoredBlock> blocks = new ArrayList<StoredBlock>(numBlocks);
+
+		StoredBlock block = from;
+		for (int i = 0; i < numBlocks; i++)
+		{
+			block = block.build(block.getHeader().createNextBlock(to).cloneAsHeader());
+			blockStore.put(block);
+			blocks.add(block);
+		}
+
+		return blocks;
+	}
+
+	private static List<Sha256Hash> hashes(final StoredBlock... blocks)
+	{
+		return hashes(Arrays.asList(blocks));
+	}
+
+	private static List<Sha256Hash> hashes(final List<StoredBlock> blocks)
+	{
+		final List<Sha256Hash> hashes = new ArrayList<Sha256Hash>(blocks.size());
+		for (final StoredBlock block : blocks)
+			hashes.add(block.getHeader().getHash());
+		return hashes;
+	}
+}
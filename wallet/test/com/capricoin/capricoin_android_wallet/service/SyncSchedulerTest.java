@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import android.text.format.DateUtils;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class SyncSchedulerTest
+{
+	private static final long JUST_USED_MS = 0;
+	private static final long USED_RECENTLY_MS = DateUtils.HOUR_IN_MILLIS;
+	private static final long NOT_USED_RECENTLY_MS = 2 * DateUtils.DAY_IN_MILLIS;
+
+	private FakeClock clock;
+	private SyncScheduler scheduler;
+
+	@Before
+	public void setup()
+	{
+		clock = new FakeClock(1000 * DateUtils.DAY_IN_MILLIS);
+		scheduler = new SyncScheduler(clock, SyncScheduler.DEFAULT_POLICY);
+	}
+
+	@Test
+	public void usageTiers() throws Exception
+	{
+		assertEquals(30 * DateUtils.SECOND_IN_MILLIS, schedule(conditions(JUST_USED_MS)));
+		assertEquals(10 * DateUtils.MINUTE_IN_MILLIS, schedule(conditions(USED_RECENTLY_MS)));
+		assertEquals(30 * DateUtils.MINUTE_IN_MILLIS, schedule(conditions(NOT_USED_RECENTLY_MS)));
+	}
+
+	@Test
+	public void queuedBroadcastsAreUrgent() throws Exception
+	{
+		final SyncScheduler.Conditions conditions = conditions(NOT_USED_RECENTLY_MS);
+		conditions.numQueuedBroadcasts = 2;
+
+		final SyncScheduler.Decision decision = scheduler.schedule(conditions);
+		assertEquals(30 * DateUtils.SECOND_IN_MILLIS, decision.delayMs);
+		assertTrue(decision.reason.contains("2 transactions to broadcast"));
+	}
+
+	@Test
+	public void queuedBroadcastsAreNotStretchedOnBattery() throws Exception
+	{
+		final SyncScheduler.Conditions conditions = conditions(NOT_USED_RECENTLY_MS);
+		conditions.numQueuedBroadcasts = 1;
+		conditions.charging = false;
+		conditions.unmeteredNetwork = false;
+		conditions.blocksPerHour = 1;
+
+		assertEquals(30 * DateUtils.SECOND_IN_MILLIS, schedule(conditions));
+	}
+
+	@Test
+	public void expectedPayment() throws Exception
+	{
+		final SyncScheduler.Conditions notUsed = conditions(NOT_USED_RECENTLY_MS);
+		notUsed.expectingPayment = true;
+		assertEquals(DateUtils.MINUTE_IN_MILLIS, schedule(notUsed));
+
+		// never later than without the payment
+		final SyncScheduler.Conditions justUsed = conditions(JUST_USED_MS);
+		justUsed.expectingPayment = true;
+		assertEquals(30 * DateUtils.SECOND_IN_MILLIS, schedule(justUsed));
+	}
+
+	@Test
+	public void chargingOnUnmeteredNetworkHalves() throws Exception
+	{
+		final SyncScheduler.Conditions conditions = conditions(USED_RECENTLY_MS);
+		conditions.charging = true;
+		conditions.unmeteredNetwork = true;
+
+		assertEquals(5 * DateUtils.MINUTE_IN_MILLIS, schedule(conditions));
+	}
+
+	@Test
+	public void batteryAndMeteredNetworkDoubles() throws Exception
+	{
+		final SyncScheduler.Conditions usedRecently = conditions(USED_RECENTLY_MS);
+		usedRecently.charging = false;
+		usedRecently.unmeteredNetwork = false;
+		assertEquals(20 * DateUtils.MINUTE_IN_MILLIS, schedule(usedRecently));
+
+		final SyncScheduler.Conditions notUsed = conditions(NOT_USED_RECENTLY_MS);
+		notUsed.charging = false;
+		notUsed.unmeteredNetwork = false;
+		assertEquals(DateUtils.HOUR_IN_MILLIS, schedule(notUsed));
+	}
+
+	@Test
+	public void blockRateFloor() throws Exception
+	{
+		// one block every ten minutes, so no point in syncing more often than every five
+		final SyncScheduler.Conditions slowBlocks = conditions(JUST_USED_MS);
+		slowBlocks.blocksPerHour = 6;
+		assertEquals(5 * DateUtils.MINUTE_IN_MILLIS, schedule(slowBlocks));
+
+		// fast blocks do not pull the schedule in
+		final SyncScheduler.Conditions fastBlocks = conditions(JUST_USED_MS);
+		fastBlocks.blocksPerHour = 600;
+		assertEquals(30 * DateUtils.SECOND_IN_MILLIS, schedule(fastBlocks));
+
+		// capped at the maximum
+		final SyncScheduler.Conditions rareBlocks = conditions(JUST_USED_MS);
+		rareBlocks.blocksPerHour = 0.25f;
+		assertEquals(DateUtils.HOUR_IN_MILLIS, schedule(rareBlocks));
+	}
+
+	@Test
+	public void blockRateFromLastServiceRun() throws Exception
+	{
+		scheduler.setObservedBlocksPerHour(6);
+
+		assertEquals(5 * DateUtils.MINUTE_IN_MILLIS, schedule(conditions(JUST_USED_MS)));
+	}
+
+	@Test
+	public void nextRunAtIsRelativeToClock() throws Exception
+	{
+		final SyncScheduler.Decision decision = scheduler.schedule(conditions(USED_RECENTLY_MS));
+
+		assertEquals(clock.now + 10 * DateUtils.MINUTE_IN_MILLIS, scheduler.nextRunAt(decision));
+
+		clock.now += DateUtils.MINUTE_IN_MILLIS;
+		assertEquals(clock.now + 10 * DateUtils.MINUTE_IN_MILLIS, scheduler.nextRunAt(decision));
+	}
+
+	private long schedule(final SyncScheduler.Conditions conditions)
+	{
+		return scheduler.schedule(conditions).delayMs;
+	}
+
+	/** charging but metered, which neither stretches nor shortens */
+	private static SyncScheduler.Conditions conditions(final long lastUsedAgoMs)
+	{
+		final SyncScheduler.Conditions conditions = new SyncScheduler.Conditions();
+		conditions.lastUsedAgoMs = lastUsedAgoMs;
+		conditions.charging = true;
+		conditions.unmeteredNetwork = false;
+		return conditions;
+	}
+
+	static final class FakeClock implements SyncScheduler.Clock
+	{
+		long now;
+
+		FakeClock(final long now)
+		{
+			this.now = now;
+		}
+
+		@Override
+		public long currentTimeMillis()
+		{
+			return now;
+		}
+	}
+}
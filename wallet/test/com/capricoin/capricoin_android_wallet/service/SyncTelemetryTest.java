@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class SyncTelemetryTest
+{
+	private static final long T0 = 1000000;
+
+	private SyncTelemetry telemetry;
+
+	@Before
+	public void setup()
+	{
+		telemetry = new SyncTelemetry();
+	}
+
+	@Test
+	public void nothingDownloaded() throws Exception
+	{
+		assertEquals(0, telemetry.getBlocksPerSecond(T0), 0);
+		assertEquals(0, telemetry.getBytesPerSecond(T0));
+		assertEquals(0, telemetry.getBlocksLeft());
+		assertEquals(0, telemetry.getEtaMs(T0));
+	}
+
+	@Test
+	public void rateWhileWindowFillsUp() throws Exception
+	{
+		// two blocks per second for five seconds
+		for (int i = 0; i < 10; i++)
+			telemetry.onBlockDownloaded(T0 + i * 500, 1000, 100 - i);
+
+		final long now = T0 + 5000;
+		assertEquals(2, telemetry.getBlocksPerSecond(now), 0.001);
+		assertEquals(2000, telemetry.getBytesPerSecond(now));
+		assertEquals(91, telemetry.getBlocksLeft());
+		assertEquals(45500, telemetry.getEtaMs(now));
+	}
+
+	@Test
+	public void windowSlides() throws Exception
+	{
+		// one block per second for a minute
+		for (int i = 0; i < 60; i++)
+			telemetry.onBlockDownloaded(T0 + i * 1000, 1000, 1000 - i);
+
+		// only the last 30 seconds count
+		assertEquals(1, telemetry.getBlocksPerSecond(T0 + 59500), 0.001);
+		assertEquals(1000, telemetry.getBytesPerSecond(T0 + 59500));
+
+		// one block left in the window
+		assertEquals(1f / SyncTelemetry.WINDOW_SECS, telemetry.getBlocksPerSecond(T0 + 88000), 0.001);
+	}
+
+	@Test
+	public void stalledDownload() throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+			telemetry.onBlockDownloaded(T0 + i * 1000, 1000, 100 - i);
+
+		// no block within the window
+		final long now = T0 + 9000 + SyncTelemetry.WINDOW_SECS * 1000;
+		assertEquals(0, telemetry.getBlocksPerSecond(now), 0);
+		assertEquals(0, telemetry.getBytesPerSecond(now));
+		assertEquals(91, telemetry.getBlocksLeft());
+		assertEquals(-1, telemetry.getEtaMs(now));
+	}
+
+	@Test
+	public void newDownloadResetsRate() throws Exception
+	{
+		for (int i = 0; i < 10; i++)
+			telemetry.onBlockDownloaded(T0 + i * 500, 1000, 100 - i);
+
+		// more blocks left than before means a new download
+		telemetry.onBlockDownloaded(T0 + 6000, 500, 500);
+
+		assertEquals(1, telemetry.getBlocksPerSecond(T0 + 6000), 0.001);
+		assertEquals(500, telemetry.getBytesPerSecond(T0 + 6000));
+		assertEquals(500, telemetry.getBlocksLeft());
+	}
+
+	@Test
+	public void etaAtTip() throws Exception
+	{
+		telemetry.onBlockDownloaded(T0, 1000, 0);
+
+		assertEquals(0, telemetry.getEtaMs(T0 + 1000));
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class MetricsTest
+{
+	@Test
+	public void linearBuckets() throws Exception
+	{
+		for (long value = 0; value < 32; value++)
+		{
+			assertEquals(value, Metrics.Histogram.bucketIndex(value));
+			assertEquals(value, Metrics.Histogram.bucketUpperBound((int) value));
+		}
+	}
+
+	@Test
+	public void linearToLogBoundary() throws Exception
+	{
+		assertEquals(31, Metrics.Histogram.bucketIndex(31));
+		assertEquals(32, Metrics.Histogram.bucketIndex(32));
+		assertEquals(32, Metrics.Histogram.bucketIndex(33));
+		assertEquals(33, Metrics.Histogram.bucketUpperBound(32));
+
+		assertEquals(47, Metrics.Histogram.bucketIndex(63));
+		assertEquals(63, Metrics.Histogram.bucketUpperBound(47));
+		assertEquals(48, Metrics.Histogram.bucketIndex(64));
+		assertEquals(67, Metrics.Histogram.bucketUpperBound(48));
+	}
+
+	@Test
+	public void maxValue() throws Exception
+	{
+		final int index = Metrics.Histogram.bucketIndex(Long.MAX_VALUE);
+		assertEquals(Metrics.Histogram.NUM_BUCKETS - 1, index);
+		assertEquals(960, Metrics.Histogram.NUM_BUCKETS);
+		assertEquals(Long.MAX_VALUE, Metrics.Histogram.bucketUpperBound(index));
+
+		final Metrics.Histogram histogram = new Metrics.Histogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void bucketsCoverTheirValues() throws Exception
+	{
+		int previousIndex = 0;
+		for (long value = 1; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 / 2 + 1)
+		{
+			final int index = Metrics.Histogram.bucketIndex(value);
+			assertTrue(index >= previousIndex);
+			previousIndex = index;
+
+			final long upperBound = Metrics.Histogram.bucketUpperBound(index);
+			assertTrue(upperBound >= value);
+			assertTrue(index == 0 || Metrics.Histogram.bucketUpperBound(index - 1) < value);
+			// each bucket spans a sixteenth of its power of two
+			assertTrue(upperBound - value <= value / 16);
+		}
+	}
+
+	@Test
+	public void percentiles() throws Exception
+	{
+		final Metrics.Histogram histogram = new Metrics.Histogram();
+		assertEquals(0, histogram.getPercentile(0.5));
+
+		for (long value = 1; value <= 100; value++)
+			histogram.record(value);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(1, histogram.getMin());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50, histogram.getMean());
+
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(10, histogram.getPercentile(0.1));
+		// 50 shares its bucket with 51
+		assertEquals(51, histogram.getPercentile(0.5));
+		// rounded up to the bucket boundary, but never past the maximum
+		assertEquals(100, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void negativeValuesCountAsZero() throws Exception
+	{
+		final Metrics.Histogram histogram = new Metrics.Histogram();
+		histogram.record(-5);
+
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getPercentile(1));
+	}
+}
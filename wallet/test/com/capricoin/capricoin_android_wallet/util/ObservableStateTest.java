@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ObservableStateTest
+{
+	private ObservableState<String> state;
+	private ManualExecutor executor;
+	private RecordingObserver observer;
+
+	@Before
+	public void setup()
+	{
+		state = new ObservableState<String>();
+		executor = new ManualExecutor();
+		observer = new RecordingObserver();
+	}
+
+	@Test
+	public void getReturnsLatest() throws Exception
+	{
+		assertNull(state.get());
+
+		state.set("a");
+		state.set("b");
+
+		assertEquals("b", state.get());
+	}
+
+	@Test
+	public void updatesAreConflated() throws Exception
+	{
+		state.subscribe(observer, executor);
+
+		state.set("a");
+		state.set("b");
+		state.set("c");
+
+		assertEquals(1, executor.size());
+		executor.runAll();
+
+		assertEquals(list("c"), observer.states);
+	}
+
+	@Test
+	public void updateAfterRunIsDispatchedAgain() throws Exception
+	{
+		state.subscribe(observer, executor);
+
+		state.set("a");
+		executor.runAll();
+		state.set("b");
+
+		assertEquals(1, executor.size());
+		executor.runAll();
+
+		assertEquals(list("a", "b"), observer.states);
+	}
+
+	@Test
+	public void updateFromObserverIsNotLost() throws Exception
+	{
+		state.subscribe(new ObservableState.Observer<String>()
+		{
+			@Override
+			public void onStateChanged(final String newState)
+			{
+				observer.onStateChanged(newState);
+				if ("a".equals(newState))
+					state.set("b");
+			}
+		}, executor);
+
+		state.set("a");
+		executor.runAll();
+
+		assertEquals(list("a", "b"), observer.states);
+	}
+
+	@Test
+	public void eachObserverOnItsOwnExecutor() throws Exception
+	{
+		final ManualExecutor otherExecutor = new ManualExecutor();
+		final RecordingObserver otherObserver = new RecordingObserver();
+		state.subscribe(observer, executor);
+		state.subscribe(otherObserver, otherExecutor);
+
+		state.set("a");
+		executor.runAll();
+		state.set("b");
+		executor.runAll();
+		otherExecutor.runAll();
+
+		assertEquals(list("a", "b"), observer.states);
+		assertEquals(list("b"), otherObserver.states);
+	}
+
+	@Test
+	public void unsubscribeCancelsPendingDispatch() throws Exception
+	{
+		state.subscribe(observer, executor);
+
+		state.set("a");
+		state.unsubscribe(observer);
+		executor.runAll();
+		state.set("b");
+
+		assertEquals(0, executor.size());
+		assertEquals(list(), observer.states);
+	}
+
+	private static List<String> list(final String... states)
+	{
+		final List<String> list = new ArrayList<String>();
+		for (final String s : states)
+			list.add(s);
+		return list;
+	}
+
+	private static final class RecordingObserver implements ObservableState.Observer<String>
+	{
+		final List<String> states = new ArrayList<String>();
+
+		@Override
+		public void onStateChanged(final String state)
+		{
+			states.add(state);
+		}
+	}
+
+	/** runs what it was given only when asked to, like a looper that has not come around yet */
+	private static final class ManualExecutor implements Executor
+	{
+		private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+
+		@Override
+		public void execute(final Runnable runnable)
+		{
+			queue.add(runnable);
+		}
+
+		public int size()
+		{
+			return queue.size();
+		}
+
+		public void runAll()
+		{
+			while (!queue.isEmpty())
+				queue.removeFirst().run();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.capricoin.capricoin_android_wallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class WalletEventHubTest
+{
+	private FakeDispatcher dispatcher;
+	private WalletEventHub hub;
+
+	@Before
+	public void setup()
+	{
+		dispatcher = new FakeDispatcher(1000000);
+		hub = new WalletEventHub(dispatcher);
+	}
+
+	@Test
+	public void changesOfOneFrameAreCoalesced() throws Exception
+	{
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		hub.subscribe(subscriber, WalletEventHub.CHANGE_TRANSACTIONS, 0);
+
+		hub.onChange(WalletEventHub.CHANGE_COINS);
+		hub.onChange(WalletEventHub.CHANGE_CONFIDENCE);
+		hub.onChange(WalletEventHub.CHANGE_CONFIDENCE);
+
+		assertEquals(1, dispatcher.numPending());
+		dispatcher.advance(0);
+
+		assertEquals(list(WalletEventHub.CHANGE_COINS | WalletEventHub.CHANGE_CONFIDENCE), subscriber.changes);
+	}
+
+	@Test
+	public void subscribersOnlyGetTheirMask() throws Exception
+	{
+		final RecordingSubscriber transactions = new RecordingSubscriber();
+		final RecordingSubscriber keys = new RecordingSubscriber();
+		hub.subscribe(transactions, WalletEventHub.CHANGE_TRANSACTIONS, 0);
+		hub.subscribe(keys, WalletEventHub.CHANGE_KEYS, 0);
+
+		hub.onChange(WalletEventHub.CHANGE_REORGANIZE);
+		dispatcher.advance(0);
+		hub.onChange(WalletEventHub.CHANGE_KEYS);
+		dispatcher.advance(0);
+
+		assertEquals(list(WalletEventHub.CHANGE_REORGANIZE), transactions.changes);
+		assertEquals(list(WalletEventHub.CHANGE_KEYS), keys.changes);
+	}
+
+	@Test
+	public void throttleDelaysAndMergesDeliveries() throws Exception
+	{
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		hub.subscribe(subscriber, WalletEventHub.CHANGE_TRANSACTIONS, 500);
+
+		// first one goes out right away
+		hub.onChange(WalletEventHub.CHANGE_COINS);
+		dispatcher.advance(0);
+		assertEquals(list(WalletEventHub.CHANGE_COINS), subscriber.changes);
+
+		// the next ones within the interval wait for its end, and are delivered together
+		dispatcher.advance(100);
+		hub.onChange(WalletEventHub.CHANGE_CONFIDENCE);
+		dispatcher.advance(0);
+		dispatcher.advance(100);
+		hub.onChange(WalletEventHub.CHANGE_REORGANIZE);
+		dispatcher.advance(0);
+		assertEquals(1, subscriber.changes.size());
+
+		dispatcher.advance(299);
+		assertEquals(1, subscriber.changes.size());
+
+		dispatcher.advance(1);
+		assertEquals(list(WalletEventHub.CHANGE_COINS, WalletEventHub.CHANGE_CONFIDENCE | WalletEventHub.CHANGE_REORGANIZE),
+				subscriber.changes);
+	}
+
+	@Test
+	public void throttleIsPerSubscriber() throws Exception
+	{
+		final RecordingSubscriber throttled = new RecordingSubscriber();
+		final RecordingSubscriber unthrottled = new RecordingSubscriber();
+		hub.subscribe(throttled, WalletEventHub.CHANGE_TRANSACTIONS, 1000);
+		hub.subscribe(unthrottled, WalletEventHub.CHANGE_TRANSACTIONS, 0);
+
+		for (int i = 0; i < 3; i++)
+		{
+			hub.onChange(WalletEventHub.CHANGE_CONFIDENCE);
+			dispatcher.advance(100);
+		}
+
+		assertEquals(1, throttled.changes.size());
+		assertEquals(3, unthrottled.changes.size());
+	}
+
+	@Test
+	public void unsubscribeCancelsDelayedDelivery() throws Exception
+	{
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		hub.subscribe(subscriber, WalletEventHub.CHANGE_TRANSACTIONS, 500);
+
+		hub.onChange(WalletEventHub.CHANGE_COINS);
+		dispatcher.advance(0);
+		hub.onChange(WalletEventHub.CHANGE_COINS);
+		dispatcher.advance(0);
+
+		hub.unsubscribe(subscriber);
+		dispatcher.advance(1000);
+
+		assertEquals(list(WalletEventHub.CHANGE_COINS), subscriber.changes);
+	}
+
+	private static List<Integer> list(final int... changes)
+	{
+		final List<Integer> list = new ArrayList<Integer>();
+		for (final int change : changes)
+			list.add(change);
+		return list;
+	}
+
+	private static final class RecordingSubscriber implements WalletEventHub.Subscriber
+	{
+		final List<Integer> changes = new ArrayList<Integer>();
+
+		@Override
+		public void onWalletChanged(final int changes)
+		{
+			this.changes.add(changes);
+		}
+	}
+
+	/** a looper on a clock that only moves when told to */
+	private static final class FakeDispatcher implements WalletEventHub.Dispatcher
+	{
+		private static final class Task
+		{
+			final Runnable runnable;
+			final long at;
+
+			Task(final Runnable runnable, final long at)
+			{
+				this.runnable = runnable;
+				this.at = at;
+			}
+		}
+
+		private final List<Task> tasks = new ArrayList<Task>();
+		private long now;
+
+		FakeDispatcher(final long now)
+		{
+			this.now = now;
+		}
+
+		@Override
+		public void post(final Runnable runnable)
+		{
+			postDelayed(runnable, 0);
+		}
+
+		@Override
+		public void postDelayed(final Runnable runnable, final long delayMs)
+		{
+			tasks.add(new Task(runnable, now + delayMs));
+		}
+
+		@Override
+		public void removeCallbacks(final Runnable runnable)
+		{
+			for (final Iterator<Task> i = tasks.iterator(); i.hasNext();)
+				if (i.next().runnable == runnable)
+					i.remove();
+		}
+
+		@Override
+		public long currentTimeMillis()
+		{
+			return now;
+		}
+
+		int numPending()
+		{
+			return tasks.size();
+		}
+
+		/** moves the clock on, running what comes due in order */
+		void advance(final long ms)
+		{
+			final long until = now + ms;
+
+			while (true)
+			{
+				Task next = null;
+				for (final Task task : tasks)
+					if (task.at <= until && (next == null || task.at < next.at))
+						next = task;
+
+				if (next == null)
+					break;
+
+				tasks.remove(next);
+				now = Math.max(now, next.at);
+				next.runnable.run();
+			}
+
+			now = until;
+		}
+	}
+}